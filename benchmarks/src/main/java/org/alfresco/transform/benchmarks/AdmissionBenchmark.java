@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.transform.client.model.TransformRequest;
+import org.alfresco.transform.client.model.config.SupportedSourceAndTarget;
+import org.alfresco.transform.client.model.config.TransformConfig;
+import org.alfresco.transform.client.model.config.Transformer;
+import org.alfresco.transform.client.registry.TransformAdmission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures admitting a backlog of requests with {@link TransformAdmission}, on the calling thread and on a pool of
+ * {@code poolSize} threads. One request in 16 is invalid and one in 16 has no transformer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdmissionBenchmark
+{
+    @Param("16384")
+    public int batchSize;
+
+    @Param({"2", "8"})
+    public int poolSize;
+
+    private BenchmarkTransformRegistry registry;
+    private List<TransformRequest> requests;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp()
+    {
+        final TransformConfig transformConfig = new SyntheticTransformConfig(300, 400, 100, 42)
+            .getTransformConfig();
+        registry = new BenchmarkTransformRegistry(transformConfig);
+        pool = new ForkJoinPool(poolSize);
+
+        final Random random = new Random(7);
+        final List<Transformer> transformers = transformConfig.getTransformers();
+        requests = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++)
+        {
+            final Transformer transformer = transformers.get(random.nextInt(transformers.size()));
+            final List<SupportedSourceAndTarget> pairs = new ArrayList<>(
+                transformer.getSupportedSourceAndTargetList());
+            final SupportedSourceAndTarget pair = pairs.get(random.nextInt(pairs.size()));
+            final Map<String, String> options = new HashMap<>();
+            options.put("timeout", "120000");
+            requests.add(TransformRequest.builder()
+                .withRequestId("request" + i)
+                .withSourceReference("source" + i)
+                .withSourceMediaType(i % 16 == 1 ? "unknown/source" : pair.getSourceMediaType())
+                .withSourceSize((long) random.nextInt(1024 * 1024))
+                .withTargetMediaType(pair.getTargetMediaType())
+                .withTargetExtension("ext")
+                .withClientData(i % 16 == 0 ? null : "client data")
+                .withTransformRequestOptions(options)
+                .build());
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public TransformAdmission.Batch admitAll()
+    {
+        return TransformAdmission.admitAll(registry, requests);
+    }
+
+    @Benchmark
+    public TransformAdmission.Batch admitAllOnPool()
+    {
+        return TransformAdmission.admitAll(registry, requests, pool);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import org.alfresco.transform.client.model.config.TransformConfig;
+import org.alfresco.transform.client.registry.AbstractTransformRegistry;
+import org.alfresco.transform.client.registry.TransformCache;
+
+/**
+ * Minimal {@link AbstractTransformRegistry}, similar to the ones created by T-Engines and the ACS repository.
+ */
+public class BenchmarkTransformRegistry extends AbstractTransformRegistry
+{
+    private final TransformCache data = new TransformCache();
+
+    public BenchmarkTransformRegistry()
+    {
+    }
+
+    public BenchmarkTransformRegistry(final TransformConfig transformConfig)
+    {
+        registerAll(transformConfig);
+    }
+
+    public void registerAll(final TransformConfig transformConfig)
+    {
+        registerAll(transformConfig, null, "benchmark");
+    }
+
+    public void registerAll(final TransformConfig transformConfig, final ForkJoinPool pool)
+    {
+        registerAll(transformConfig, null, "benchmark", pool);
+    }
+
+    public boolean registerSnapshot(final Path file, final long configFingerprint) throws IOException
+    {
+        return super.registerSnapshot(file, configFingerprint);
+    }
+
+    @Override
+    protected void logError(final String msg)
+    {
+        // Unknown transform option names are not expected in the synthetic config.
+        throw new IllegalStateException(msg);
+    }
+
+    @Override
+    public TransformCache getData()
+    {
+        return data;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.benchmarks;
+
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_IMAGE_PNG;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_OPENXML_WORDPROCESSING;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_PDF;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.transform.client.model.InternalContext;
+import org.alfresco.transform.client.model.MultiStep;
+import org.alfresco.transform.client.model.TransformMessageCodec;
+import org.alfresco.transform.client.model.TransformMessageJsonCodec;
+import org.alfresco.transform.client.model.TransformRequest;
+import org.alfresco.transform.client.model.TransformRequestView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the encoding and decoding of a {@link TransformRequest} using {@link TransformMessageCodec}, Java
+ * serialization, Jackson databinding and {@link TransformMessageJsonCodec}. The typical message is a multi-step request
+ * with a few options. The large one has 64KB of clientData and 200 options.<p>
+ *
+ * The forward benchmarks move the request on to the next step of its multi-step transform, as a router does, by
+ * fully decoding and encoding it or by using a {@link TransformRequestView}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCodecBenchmark
+{
+    @Param({"typical", "large"})
+    public String message;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private TransformRequest request;
+    private byte[] binary;
+    private byte[] serialized;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        request = "large".equals(message) ? createRequest(64 * 1024, 200) : createRequest(40, 4);
+        binary = TransformMessageCodec.encode(request);
+        serialized = serialize(request);
+        json = objectMapper.writeValueAsBytes(request);
+    }
+
+    static TransformRequest createRequest(final int clientDataLength, final int optionCount)
+    {
+        final Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < optionCount; i++)
+        {
+            options.put("transformOption" + i, Integer.toString(i * 100));
+        }
+
+        final MultiStep multiStep = new MultiStep();
+        multiStep.setInitialRequestId("e2b8c9b4-7e5e-4ac0-a0d4-2f1e6fb8f1a2");
+        multiStep.setInitialSourceMediaType(MIMETYPE_OPENXML_WORDPROCESSING);
+        multiStep.setTransformsToBeDone(Arrays.asList("libreoffice|" + MIMETYPE_PDF, "pdfrenderer|" + MIMETYPE_IMAGE_PNG));
+
+        final InternalContext context = new InternalContext();
+        context.setMultiStep(multiStep);
+        context.setCurrentSourceMediaType(MIMETYPE_OPENXML_WORDPROCESSING);
+        context.setCurrentTargetMediaType(MIMETYPE_PDF);
+        context.setReplyToDestination("org.alfresco.transform.t-reply");
+        context.setCurrentSourceSize(123456L);
+        context.setTransformRequestOptions(new HashMap<>(options));
+
+        final char[] clientData = new char[clientDataLength];
+        Arrays.fill(clientData, 'x');
+
+        return TransformRequest.builder()
+            .withRequestId("e2b8c9b4-7e5e-4ac0-a0d4-2f1e6fb8f1a2")
+            .withSourceReference("f6f6a8e3-5a1d-4d5f-9b3e-0c1d2e3f4a5b")
+            .withSourceMediaType(MIMETYPE_OPENXML_WORDPROCESSING)
+            .withSourceSize(123456L)
+            .withSourceExtension("docx")
+            .withTargetMediaType(MIMETYPE_IMAGE_PNG)
+            .withTargetExtension("png")
+            .withClientData(new String(clientData))
+            .withSchema(1)
+            .withTransformRequestOptions(options)
+            .withInternalContext(context)
+            .build();
+    }
+
+    private static byte[] serialize(final Object object) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeBinary()
+    {
+        return TransformMessageCodec.encode(request);
+    }
+
+    @Benchmark
+    public TransformRequest decodeBinary()
+    {
+        return TransformMessageCodec.decodeRequest(binary);
+    }
+
+    @Benchmark
+    public byte[] encodeSerialization() throws IOException
+    {
+        return serialize(request);
+    }
+
+    @Benchmark
+    public Object decodeSerialization() throws IOException, ClassNotFoundException
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized)))
+        {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeJackson() throws IOException
+    {
+        return objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public TransformRequest decodeJackson() throws IOException
+    {
+        return objectMapper.readValue(json, TransformRequest.class);
+    }
+
+    @Benchmark
+    public byte[] encodeStreamingJson() throws IOException
+    {
+        return TransformMessageJsonCodec.toJson(request);
+    }
+
+    @Benchmark
+    public TransformRequest decodeStreamingJson() throws IOException
+    {
+        return TransformMessageJsonCodec.readRequest(json);
+    }
+
+    // Reads what a router needs and moves the request on to the next step.
+    private static InternalContext nextStep(final String sourceMediaType, final InternalContext context)
+    {
+        final MultiStep multiStep = context.getMultiStep();
+        final List<String> transformsToBeDone = multiStep.getTransformsToBeDone();
+        multiStep.setTransformsToBeDone(transformsToBeDone.subList(1, transformsToBeDone.size()));
+        context.setCurrentSourceMediaType(sourceMediaType == null ? null : context.getCurrentTargetMediaType());
+        return context;
+    }
+
+    @Benchmark
+    public byte[] forwardBinary()
+    {
+        final TransformRequest decoded = TransformMessageCodec.decodeRequest(binary);
+        nextStep(decoded.getSourceMediaType(), decoded.getInternalContext());
+        return TransformMessageCodec.encode(decoded);
+    }
+
+    @Benchmark
+    public byte[] forwardBinaryView()
+    {
+        final TransformRequestView view = TransformMessageCodec.viewRequest(binary);
+        view.setInternalContext(nextStep(view.getSourceMediaType(), view.getInternalContext()));
+        return view.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] forwardStreamingJson() throws IOException
+    {
+        final TransformRequest decoded = TransformMessageJsonCodec.readRequest(json);
+        nextStep(decoded.getSourceMediaType(), decoded.getInternalContext());
+        return TransformMessageJsonCodec.toJson(decoded);
+    }
+
+    @Benchmark
+    public byte[] forwardJsonView() throws IOException
+    {
+        final TransformRequestView view = TransformMessageJsonCodec.viewRequest(json);
+        view.setInternalContext(nextStep(view.getSourceMediaType(), view.getInternalContext()));
+        return view.toByteArray();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.benchmarks;
+
+import static java.util.Arrays.stream;
+import static java.util.stream.Collectors.toSet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.transform.client.model.Mimetype;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time taken to load and initialise the {@link Mimetype} class, by loading it in a new class loader each
+ * time from bytes that have already been read. {@code initialiseWithReflectiveScan} adds the reflective scan of its fields that its static initialiser used
+ * to perform, for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MimetypeStartupBenchmark
+{
+    private static final String CLASS_NAME = Mimetype.class.getName();
+    private static final byte[] CLASS_BYTES = readClassBytes();
+
+    // Defines the Mimetype class from bytes already read, so that only its loading and initialisation are measured.
+    private static class MimetypeClassLoader extends ClassLoader
+    {
+        private MimetypeClassLoader()
+        {
+            super(MimetypeStartupBenchmark.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException
+        {
+            if (!CLASS_NAME.equals(name))
+            {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name))
+            {
+                final Class<?> loaded = findLoadedClass(name);
+                return loaded != null ? loaded : defineClass(name, CLASS_BYTES, 0, CLASS_BYTES.length);
+            }
+        }
+    }
+
+    private static byte[] readClassBytes()
+    {
+        try (InputStream is = Mimetype.class.getResourceAsStream("Mimetype.class"))
+        {
+            return is.readAllBytes();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Class<?> loadAndInitialise() throws Exception
+    {
+        return Class.forName(CLASS_NAME, true, new MimetypeClassLoader());
+    }
+
+    @Benchmark
+    public Class<?> initialise() throws Exception
+    {
+        return loadAndInitialise();
+    }
+
+    @Benchmark
+    public Set<String> initialiseWithReflectiveScan() throws Exception
+    {
+        return stream(loadAndInitialise().getDeclaredFields())
+            .filter(f -> Modifier.isPublic(f.getModifiers()))
+            .filter(f -> Modifier.isStatic(f.getModifiers()))
+            .filter(f -> Modifier.isFinal(f.getModifiers()))
+            .filter(f -> f.getType().isAssignableFrom(String.class))
+            .filter(f -> f.getName().startsWith("MIMETYPE_"))
+            .peek(f -> f.setAccessible(true))
+            .map(MimetypeStartupBenchmark::getFieldValue)
+            .filter(Objects::nonNull)
+            .collect(toSet());
+    }
+
+    private static String getFieldValue(final Field f)
+    {
+        try
+        {
+            return (String) f.get(null);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
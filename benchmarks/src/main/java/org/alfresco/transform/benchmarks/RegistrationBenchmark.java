@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.transform.client.model.config.TransformConfig;
+import org.alfresco.transform.client.model.config.Transformer;
+import org.alfresco.transform.client.registry.TransformRegistrySnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time taken to populate a registry from a config, one transformer at a time, or from a snapshot file
+ * written from the same config.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistrationBenchmark
+{
+    @Param("300")
+    public int transformerCount;
+
+    @Param("400")
+    public int mimetypeCount;
+
+    @Param("100")
+    public int pairsPerTransformer;
+
+    private static final long FINGERPRINT = TransformRegistrySnapshot.fingerprint("benchmark");
+
+    private TransformConfig transformConfig;
+    private Path snapshot;
+
+    /**
+     * A registry already populated with the config, to which one more transformer is added.
+     */
+    @State(Scope.Thread)
+    public static class PopulatedRegistry
+    {
+        private BenchmarkTransformRegistry registry;
+        private Transformer extraTransformer;
+
+        @Setup(Level.Invocation)
+        public void setUp(final RegistrationBenchmark benchmark)
+        {
+            registry = new BenchmarkTransformRegistry(benchmark.transformConfig);
+            extraTransformer = new SyntheticTransformConfig(1, benchmark.mimetypeCount,
+                benchmark.pairsPerTransformer, 43).getTransformConfig().getTransformers().get(0);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        transformConfig = new SyntheticTransformConfig(transformerCount, mimetypeCount,
+            pairsPerTransformer, 42).getTransformConfig();
+        snapshot = Files.createTempFile("registry", ".snapshot");
+        new BenchmarkTransformRegistry(transformConfig).writeSnapshot(snapshot, FINGERPRINT);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Benchmark
+    public BenchmarkTransformRegistry registerAll()
+    {
+        return new BenchmarkTransformRegistry(transformConfig);
+    }
+
+    @Benchmark
+    public BenchmarkTransformRegistry registerAllInParallel()
+    {
+        final BenchmarkTransformRegistry registry = new BenchmarkTransformRegistry();
+        registry.registerAll(transformConfig, ForkJoinPool.commonPool());
+        return registry;
+    }
+
+    @Benchmark
+    public BenchmarkTransformRegistry registerSnapshot() throws IOException
+    {
+        final BenchmarkTransformRegistry registry = new BenchmarkTransformRegistry();
+        if (!registry.registerSnapshot(snapshot, FINGERPRINT))
+        {
+            throw new IllegalStateException("The snapshot was not registered");
+        }
+        return registry;
+    }
+
+    @Benchmark
+    public BenchmarkTransformRegistry registerOneAtATime()
+    {
+        final BenchmarkTransformRegistry registry = new BenchmarkTransformRegistry();
+        transformConfig.getTransformers().forEach(t ->
+            registry.register(t, transformConfig.getTransformOptions(), null, "benchmark"));
+        return registry;
+    }
+
+    @Benchmark
+    public BenchmarkTransformRegistry register(final PopulatedRegistry populated)
+    {
+        populated.registry.register(populated.extraTransformer, transformConfig.getTransformOptions(),
+            null, "benchmark");
+        return populated.registry;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.transform.client.model.config.SupportedSourceAndTarget;
+import org.alfresco.transform.client.model.config.TransformConfig;
+import org.alfresco.transform.client.model.config.TransformOption;
+import org.alfresco.transform.client.model.config.TransformOptionValue;
+import org.alfresco.transform.client.model.config.Transformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the registry's lookup methods. Each thread cycles through the same fixed set of queries, so after the
+ * first pass the rendition and option name caches are warm, apart from in the cache miss benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistryLookupBenchmark
+{
+    // Must be a power of 2.
+    private static final int QUERY_COUNT = 4096;
+    // Larger than the default size of the rendition cache, so names are evicted before they are reused.
+    private static final int UNCACHED_RENDITION_COUNT = 1 << 16;
+
+    @Param("300")
+    public int transformerCount;
+
+    @Param("400")
+    public int mimetypeCount;
+
+    @Param("100")
+    public int pairsPerTransformer;
+
+    private BenchmarkTransformRegistry registry;
+    private Query[] supportedQueries;
+    private Query[] unsupportedQueries;
+    private String[] uncachedRenditionNames;
+
+    @State(Scope.Thread)
+    public static class Cursor
+    {
+        private int next;
+
+        int next(final int mask)
+        {
+            return next++ & mask;
+        }
+    }
+
+    static class Query
+    {
+        final String sourceMimetype;
+        final long sourceSizeInBytes;
+        final String targetMimetype;
+        final Map<String, String> actualOptions;
+        final String renditionName;
+
+        Query(final String sourceMimetype, final long sourceSizeInBytes, final String targetMimetype,
+            final Map<String, String> actualOptions, final String renditionName)
+        {
+            this.sourceMimetype = sourceMimetype;
+            this.sourceSizeInBytes = sourceSizeInBytes;
+            this.targetMimetype = targetMimetype;
+            this.actualOptions = actualOptions;
+            this.renditionName = renditionName;
+        }
+    }
+
+    @Setup
+    public void setUp()
+    {
+        final SyntheticTransformConfig synthetic = new SyntheticTransformConfig(transformerCount,
+            mimetypeCount, pairsPerTransformer, 42);
+        final TransformConfig transformConfig = synthetic.getTransformConfig();
+        registry = new BenchmarkTransformRegistry(transformConfig);
+
+        // Supported queries use a pair and some of the options of a random transformer.
+        final Random random = new Random(7);
+        final List<Transformer> transformers = transformConfig.getTransformers();
+        supportedQueries = new Query[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++)
+        {
+            final Transformer transformer = transformers.get(random.nextInt(transformers.size()));
+            final List<SupportedSourceAndTarget> pairs = new ArrayList<>(
+                transformer.getSupportedSourceAndTargetList());
+            final SupportedSourceAndTarget pair = pairs.get(random.nextInt(pairs.size()));
+            final Map<String, String> actualOptions = new HashMap<>();
+            for (String optionSetName : transformer.getTransformOptions())
+            {
+                for (TransformOption option : transformConfig.getTransformOptions().get(optionSetName))
+                {
+                    if (option instanceof TransformOptionValue && random.nextInt(3) == 0)
+                    {
+                        actualOptions.put(((TransformOptionValue) option).getName(), "value");
+                    }
+                }
+            }
+            supportedQueries[i] = new Query(pair.getSourceMediaType(), random.nextInt(1024 * 1024),
+                pair.getTargetMediaType(), actualOptions, "rendition" + random.nextInt(32));
+        }
+
+        // Unsupported queries use mimetypes that are never a source or target.
+        unsupportedQueries = new Query[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++)
+        {
+            unsupportedQueries[i] = new Query("unknown/source-" + i, 1024, "unknown/target-" + i,
+                Map.of(), null);
+        }
+
+        uncachedRenditionNames = new String[UNCACHED_RENDITION_COUNT];
+        for (int i = 0; i < UNCACHED_RENDITION_COUNT; i++)
+        {
+            uncachedRenditionNames[i] = "uncached" + i;
+        }
+    }
+
+    @Benchmark
+    public String findTransformerName(final Cursor cursor)
+    {
+        final Query q = supportedQueries[cursor.next(QUERY_COUNT - 1)];
+        return registry.findTransformerName(q.sourceMimetype, q.sourceSizeInBytes, q.targetMimetype,
+            q.actualOptions, null);
+    }
+
+    @Benchmark
+    public long findMaxSize(final Cursor cursor)
+    {
+        final Query q = supportedQueries[cursor.next(QUERY_COUNT - 1)];
+        return registry.findMaxSize(q.sourceMimetype, q.targetMimetype, q.actualOptions, null);
+    }
+
+    @Benchmark
+    public boolean isSupported(final Cursor cursor)
+    {
+        final Query q = supportedQueries[cursor.next(QUERY_COUNT - 1)];
+        return registry.isSupported(q.sourceMimetype, q.sourceSizeInBytes, q.targetMimetype,
+            q.actualOptions, null);
+    }
+
+    @Benchmark
+    public boolean isSupportedUnsupportedPair(final Cursor cursor)
+    {
+        final Query q = unsupportedQueries[cursor.next(QUERY_COUNT - 1)];
+        return registry.isSupported(q.sourceMimetype, q.sourceSizeInBytes, q.targetMimetype,
+            q.actualOptions, null);
+    }
+
+    @Benchmark
+    public String renditionCacheHit(final Cursor cursor)
+    {
+        final Query q = supportedQueries[cursor.next(QUERY_COUNT - 1)];
+        return registry.findTransformerName(q.sourceMimetype, q.sourceSizeInBytes, q.targetMimetype,
+            q.actualOptions, q.renditionName);
+    }
+
+    @Benchmark
+    public String renditionCacheMiss(final Cursor cursor)
+    {
+        final int i = cursor.next(UNCACHED_RENDITION_COUNT - 1);
+        final Query q = supportedQueries[i & (QUERY_COUNT - 1)];
+        return registry.findTransformerName(q.sourceMimetype, q.sourceSizeInBytes, q.targetMimetype,
+            q.actualOptions, uncachedRenditionNames[i]);
+    }
+}
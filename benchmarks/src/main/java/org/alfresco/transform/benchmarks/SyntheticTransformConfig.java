@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.alfresco.transform.client.model.config.SupportedSourceAndTarget;
+import org.alfresco.transform.client.model.config.TransformConfig;
+import org.alfresco.transform.client.model.config.TransformOption;
+import org.alfresco.transform.client.model.config.TransformOptionGroup;
+import org.alfresco.transform.client.model.config.TransformOptionValue;
+import org.alfresco.transform.client.model.config.Transformer;
+
+/**
+ * Builds a repeatable, randomly generated {@link TransformConfig}, similar in shape to the aggregated config of a
+ * large deployment. Transformers share a pool of transform option sets (some with nested optional groups), and each
+ * supports a number of source and target pairs with a mix of size limits and priorities.
+ */
+public class SyntheticTransformConfig
+{
+    static final int OPTION_NAME_COUNT = 80;
+    static final int OPTION_SET_COUNT = 30;
+    static final long[] MAX_SOURCE_SIZES = {-1, 1024 * 1024, 10 * 1024 * 1024, 100 * 1024 * 1024};
+
+    private final List<String> mimetypes = new ArrayList<>();
+    private final List<String> optionNames = new ArrayList<>();
+    private final TransformConfig transformConfig;
+
+    public SyntheticTransformConfig(final int transformerCount, final int mimetypeCount,
+        final int pairsPerTransformer, final long seed)
+    {
+        final Random random = new Random(seed);
+        for (int i = 0; i < mimetypeCount; i++)
+        {
+            mimetypes.add("type" + (i % 8) + "/synthetic-" + i);
+        }
+        for (int i = 0; i < OPTION_NAME_COUNT; i++)
+        {
+            optionNames.add("option" + i);
+        }
+
+        final Map<String, Set<TransformOption>> transformOptions = new HashMap<>();
+        for (int i = 0; i < OPTION_SET_COUNT; i++)
+        {
+            final Set<TransformOption> options = new HashSet<>();
+            final int valueCount = 2 + random.nextInt(6);
+            for (int j = 0; j < valueCount; j++)
+            {
+                options.add(new TransformOptionValue(random.nextInt(10) == 0, randomOptionName(random)));
+            }
+            if (random.nextBoolean())
+            {
+                options.add(new TransformOptionGroup(false, Set.of(
+                    new TransformOptionValue(false, randomOptionName(random)),
+                    new TransformOptionValue(true, randomOptionName(random) + "-required"))));
+            }
+            transformOptions.put("options" + i, options);
+        }
+
+        final List<Transformer> transformers = new ArrayList<>();
+        for (int i = 0; i < transformerCount; i++)
+        {
+            final Set<String> optionSetNames = new HashSet<>();
+            final int optionSetCount = random.nextInt(3);
+            for (int j = 0; j < optionSetCount; j++)
+            {
+                optionSetNames.add("options" + random.nextInt(OPTION_SET_COUNT));
+            }
+
+            final Set<SupportedSourceAndTarget> supportedSourceAndTargetList = new HashSet<>();
+            for (int j = 0; j < pairsPerTransformer; j++)
+            {
+                supportedSourceAndTargetList.add(new SupportedSourceAndTarget(
+                    randomMimetype(random), randomMimetype(random),
+                    MAX_SOURCE_SIZES[random.nextInt(MAX_SOURCE_SIZES.length)],
+                    40 + random.nextInt(5) * 5));
+            }
+            transformers.add(new Transformer("transformer" + i, optionSetNames,
+                supportedSourceAndTargetList));
+        }
+
+        transformConfig = TransformConfig
+            .builder()
+            .withTransformOptions(transformOptions)
+            .withTransformers(transformers)
+            .build();
+    }
+
+    public TransformConfig getTransformConfig()
+    {
+        return transformConfig;
+    }
+
+    public List<String> getMimetypes()
+    {
+        return mimetypes;
+    }
+
+    public List<String> getOptionNames()
+    {
+        return optionNames;
+    }
+
+    private String randomMimetype(final Random random)
+    {
+        return mimetypes.get(random.nextInt(mimetypes.size()));
+    }
+
+    private String randomOptionName(final Random random)
+    {
+        return optionNames.get(random.nextInt(optionNames.size()));
+    }
+}
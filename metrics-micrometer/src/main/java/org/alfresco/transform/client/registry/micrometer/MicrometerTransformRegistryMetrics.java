@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry.micrometer;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.transform.client.registry.AbstractTransformRegistry;
+import org.alfresco.transform.client.registry.TransformRegistryMetrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records the {@link TransformRegistryMetrics} of an {@link AbstractTransformRegistry} in a Micrometer
+ * {@link MeterRegistry}:
+ * <ul>
+ *     <li>{@code transform.registry.lookup} timer</li>
+ *     <li>{@code transform.registry.cache} counter, tagged with a {@code result} of {@code hit} or {@code miss}</li>
+ *     <li>{@code transform.registry.unsupported} counter, tagged with the {@code source} and {@code target}
+ *     mimetypes. Once the maximum number of distinct pairs have been seen, further pairs are counted with the
+ *     tag values {@code other}, so that badly behaved clients cannot create an unbounded number of meters.</li>
+ *     <li>{@code transform.registry.registration} timer</li>
+ *     <li>{@code transform.registry.transformers} and {@code transform.registry.transforms} gauges</li>
+ * </ul>
+ *
+ * Meters are created up front or once per unsupported pair, so recording does not normally allocate.
+ */
+public class MicrometerTransformRegistryMetrics implements TransformRegistryMetrics
+{
+    public static final int DEFAULT_MAX_UNSUPPORTED_PAIRS = 1000;
+
+    static final String OTHER = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final int maxUnsupportedPairs;
+
+    private final Timer lookupTimer;
+    private final Counter cacheHitCounter;
+    private final Counter cacheMissCounter;
+    private final Counter otherUnsupportedCounter;
+    private final Timer registrationTimer;
+    private final AtomicLong transformerCount = new AtomicLong();
+    private final AtomicLong transformCount = new AtomicLong();
+
+    // Unsupported counters by source and then target mimetype, so no key needs to be created to find one.
+    private final ConcurrentMap<String, ConcurrentMap<String, Counter>> unsupportedCounters =
+        new ConcurrentHashMap<>();
+    private final AtomicInteger unsupportedPairCount = new AtomicInteger();
+
+    public MicrometerTransformRegistryMetrics(final MeterRegistry meterRegistry)
+    {
+        this(meterRegistry, DEFAULT_MAX_UNSUPPORTED_PAIRS);
+    }
+
+    public MicrometerTransformRegistryMetrics(final MeterRegistry meterRegistry,
+        final int maxUnsupportedPairs)
+    {
+        this.meterRegistry = meterRegistry;
+        this.maxUnsupportedPairs = maxUnsupportedPairs;
+
+        lookupTimer = Timer
+            .builder("transform.registry.lookup")
+            .description("Time taken to find a transformer")
+            .register(meterRegistry);
+        cacheHitCounter = cacheCounter("hit");
+        cacheMissCounter = cacheCounter("miss");
+        otherUnsupportedCounter = unsupportedCounter(OTHER, OTHER);
+        registrationTimer = Timer
+            .builder("transform.registry.registration")
+            .description("Time taken to register transformers")
+            .register(meterRegistry);
+        Gauge
+            .builder("transform.registry.transformers", transformerCount, AtomicLong::get)
+            .description("Number of registered transformers")
+            .register(meterRegistry);
+        Gauge
+            .builder("transform.registry.transforms", transformCount, AtomicLong::get)
+            .description("Number of registered source and target pairs")
+            .register(meterRegistry);
+    }
+
+    private Counter cacheCounter(final String result)
+    {
+        return Counter
+            .builder("transform.registry.cache")
+            .description("Rendition cache lookups")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private Counter unsupportedCounter(final String sourceMimetype, final String targetMimetype)
+    {
+        return Counter
+            .builder("transform.registry.unsupported")
+            .description("Lookups that found no supported transformer")
+            .tag("source", sourceMimetype)
+            .tag("target", targetMimetype)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void lookupCompleted(final long durationNanos)
+    {
+        lookupTimer.record(durationNanos, NANOSECONDS);
+    }
+
+    @Override
+    public void cacheHit()
+    {
+        cacheHitCounter.increment();
+    }
+
+    @Override
+    public void cacheMiss()
+    {
+        cacheMissCounter.increment();
+    }
+
+    @Override
+    public void unsupported(final String sourceMimetype, final String targetMimetype)
+    {
+        if (sourceMimetype == null || targetMimetype == null)
+        {
+            otherUnsupportedCounter.increment();
+            return;
+        }
+        final ConcurrentMap<String, Counter> countersByTarget = unsupportedCounters.get(sourceMimetype);
+        Counter counter = countersByTarget == null ? null : countersByTarget.get(targetMimetype);
+        if (counter == null)
+        {
+            counter = newUnsupportedCounter(sourceMimetype, targetMimetype);
+        }
+        counter.increment();
+    }
+
+    // A place is reserved for the pair before anything is added to either map, so once the maximum is reached
+    // unsupported lookups for new sources do not grow the map of sources either.
+    private Counter newUnsupportedCounter(final String sourceMimetype, final String targetMimetype)
+    {
+        if (unsupportedPairCount.incrementAndGet() > maxUnsupportedPairs)
+        {
+            unsupportedPairCount.decrementAndGet();
+            // Another thread may have added the pair since it was looked up.
+            final ConcurrentMap<String, Counter> countersByTarget = unsupportedCounters.get(sourceMimetype);
+            final Counter counter = countersByTarget == null ? null : countersByTarget.get(targetMimetype);
+            return counter == null ? otherUnsupportedCounter : counter;
+        }
+        final ConcurrentMap<String, Counter> countersByTarget =
+            unsupportedCounters.computeIfAbsent(sourceMimetype, k -> new ConcurrentHashMap<>());
+        // Registering the same meter twice returns the same one, so a race only wastes the reservation.
+        final Counter counter = unsupportedCounter(sourceMimetype, targetMimetype);
+        final Counter existing = countersByTarget.putIfAbsent(targetMimetype, counter);
+        if (existing != null)
+        {
+            unsupportedPairCount.decrementAndGet();
+            return existing;
+        }
+        return counter;
+    }
+
+    @Override
+    public void registrationCompleted(final long durationNanos, final long transformerCount,
+        final long transformCount)
+    {
+        registrationTimer.record(durationNanos, NANOSECONDS);
+        this.transformerCount.set(transformerCount);
+        this.transformCount.set(transformCount);
+    }
+}
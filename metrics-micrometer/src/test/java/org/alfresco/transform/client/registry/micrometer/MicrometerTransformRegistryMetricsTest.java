@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry.micrometer;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.Set.of;
+import static org.alfresco.transform.client.registry.micrometer.MicrometerTransformRegistryMetrics.OTHER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.alfresco.transform.client.model.config.SupportedSourceAndTarget;
+import org.alfresco.transform.client.model.config.TransformConfig;
+import org.alfresco.transform.client.model.config.Transformer;
+import org.alfresco.transform.client.registry.AbstractTransformRegistry;
+import org.alfresco.transform.client.registry.TransformCache;
+import org.alfresco.transform.client.registry.TransformQuery;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Test the MicrometerTransformRegistryMetrics, using a registry with a single transformer.
+ */
+public class MicrometerTransformRegistryMetricsTest
+{
+    private static final String DOC = "application/msword";
+    private static final String GIF = "image/gif";
+    private static final String PDF = "application/pdf";
+    private static final String TXT = "text/plain";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TestTransformRegistry registry = new TestTransformRegistry();
+
+    private static class TestTransformRegistry extends AbstractTransformRegistry
+    {
+        private final TransformCache data = new TransformCache();
+
+        @Override
+        protected void logError(final String msg)
+        {
+            throw new IllegalStateException(msg);
+        }
+
+        @Override
+        public TransformCache getData()
+        {
+            return data;
+        }
+
+        private void registerAll(final TransformConfig transformConfig)
+        {
+            registerAll(transformConfig, null, getClass().getName());
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        registry.setMetrics(new MicrometerTransformRegistryMetrics(meterRegistry, 2));
+        registry.registerAll(TransformConfig
+            .builder()
+            .withTransformOptions(emptyMap())
+            .withTransformers(singletonList(new Transformer("transformer1", null, of(
+                new SupportedSourceAndTarget(DOC, GIF, -1),
+                new SupportedSourceAndTarget(DOC, PDF, -1)))))
+            .build());
+    }
+
+    @Test
+    public void testRegistration()
+    {
+        assertEquals(1, meterRegistry.get("transform.registry.registration").timer().count());
+        assertEquals(1.0, meterRegistry.get("transform.registry.transformers").gauge().value(), 0);
+        assertEquals(2.0, meterRegistry.get("transform.registry.transforms").gauge().value(), 0);
+    }
+
+    @Test
+    public void testLookups()
+    {
+        assertEquals("transformer1", registry.findTransformerName(DOC, 1024, GIF, emptyMap(), "doclib"));
+        assertEquals("transformer1", registry.findTransformerName(DOC, 1024, GIF, emptyMap(), "doclib"));
+        assertTrue(registry.isSupported(DOC, 1024, PDF, emptyMap(), null));
+
+        assertEquals(3, meterRegistry.get("transform.registry.lookup").timer().count());
+        assertEquals(1.0, meterRegistry.get("transform.registry.cache").tag("result", "hit").counter().count(), 0);
+        assertEquals(1.0, meterRegistry.get("transform.registry.cache").tag("result", "miss").counter().count(), 0);
+    }
+
+    @Test
+    public void testBatchLookups()
+    {
+        registry.findTransformers(asList(
+            new TransformQuery(DOC, 1024, GIF, emptyMap(), "doclib"),
+            new TransformQuery(DOC, 2048, GIF, emptyMap(), "doclib"),
+            new TransformQuery(PDF, 1024, GIF, emptyMap(), null)));
+
+        assertEquals(3, meterRegistry.get("transform.registry.lookup").timer().count());
+        assertEquals(1.0, meterRegistry.get("transform.registry.cache").tag("result", "miss").counter().count(), 0);
+        assertEquals(1.0, unsupportedCount(PDF, GIF), 0);
+    }
+
+    @Test
+    public void testUnsupportedPairsAreLimited()
+    {
+        assertNull(registry.findTransformerName(PDF, 1024, GIF, emptyMap(), null));
+        assertNull(registry.findTransformerName(PDF, 1024, GIF, emptyMap(), null));
+        assertNull(registry.findTransformerName(PDF, 1024, TXT, emptyMap(), null));
+        assertNull(registry.findTransformerName(DOC, 1024, TXT, emptyMap(), null));
+        assertNull(registry.findTransformerName(GIF, 1024, TXT, emptyMap(), null));
+
+        assertEquals(2.0, unsupportedCount(PDF, GIF), 0);
+        assertEquals(1.0, unsupportedCount(PDF, TXT), 0);
+        assertEquals(2.0, unsupportedCount(OTHER, OTHER), 0);
+        assertEquals(3, meterRegistry.get("transform.registry.unsupported").counters().size());
+    }
+
+    private double unsupportedCount(final String sourceMimetype, final String targetMimetype)
+    {
+        return meterRegistry
+            .get("transform.registry.unsupported")
+            .tag("source", sourceMimetype)
+            .tag("target", targetMimetype)
+            .counter()
+            .count();
+    }
+}
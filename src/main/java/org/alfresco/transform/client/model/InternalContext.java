@@ -22,7 +22,6 @@
 package org.alfresco.transform.client.model;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -39,7 +38,7 @@ public class InternalContext implements Serializable
     private String currentTargetMediaType;
     private String replyToDestination;
     private Long currentSourceSize;
-    private Map<String, String> transformRequestOptions = new HashMap<>();
+    private Map<String, String> transformRequestOptions = new TransformRequestOptions();
 
     public MultiStep getMultiStep()
     {
@@ -21,14 +21,24 @@
  */
 package org.alfresco.transform.client.model;
 
-import static java.util.Arrays.stream;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableNavigableSet;
 import static java.util.Collections.unmodifiableSet;
 import static java.util.stream.Collectors.toSet;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 /**
  * Mimetype
@@ -326,39 +336,274 @@ public class Mimetype
     public static final String MIMETYPE_OGG = "application/ogg";
     //endregion
 
+    // Limits the number of matchMimetypes results held, as callers may supply any regex.
+    private static final int MAX_MATCHED_MIMETYPES = 1000;
+
+    // Each of the MIMETYPE_ constants, followed by its file extensions, the first of which is the default. Must be
+    // updated when a MIMETYPE_ constant is added. Where more than one mimetype has the same extension, the first is
+    // used when looking up a mimetype from it. New rows must be added at the end, as TransformMessageCodec
+    // identifies mimetypes by their position.
+    private static final String[][] MIMETYPE_EXTENSIONS = {
+        {MIMETYPE_MULTIPART_ALTERNATIVE},
+        {MIMETYPE_TEXT_PLAIN, "txt"},
+        {MIMETYPE_TEXT_MEDIAWIKI, "mw"},
+        {MIMETYPE_TEXT_CSS, "css"},
+        {MIMETYPE_TEXT_CSV, "csv"},
+        {MIMETYPE_JAVASCRIPT, "js"},
+        {MIMETYPE_TEXT_JAVASCRIPT},
+        {MIMETYPE_XML, "xml"},
+        {MIMETYPE_HTML, "html", "htm"},
+        {MIMETYPE_XHTML, "xhtml"},
+        {MIMETYPE_PDF, "pdf"},
+        {MIMETYPE_JSON, "json"},
+        {MIMETYPE_WORD, "doc"},
+        {MIMETYPE_EXCEL, "xls"},
+        {MIMETYPE_BINARY, "bin"},
+        {MIMETYPE_PPT, "ppt"},
+        {MIMETYPE_APP_DWG},
+        {MIMETYPE_IMG_DWG, "dwg"},
+        {MIMETYPE_VIDEO_AVI, "avi"},
+        {MIMETYPE_VIDEO_QUICKTIME, "mov", "qt"},
+        {MIMETYPE_VIDEO_WMV, "wmv"},
+        {MIMETYPE_VIDEO_3GP, "3gp"},
+        {MIMETYPE_VIDEO_3GP2, "3g2"},
+        {MIMETYPE_DITA, "dita"},
+        {MIMETYPE_FLASH, "swf"},
+        {MIMETYPE_VIDEO_FLV, "flv"},
+        {MIMETYPE_APPLICATION_FLA, "fla"},
+        {MIMETYPE_VIDEO_MPG, "mpg", "mpeg", "mpe"},
+        {MIMETYPE_VIDEO_MP4, "mp4"},
+        {MIMETYPE_IMAGE_GIF, "gif"},
+        {MIMETYPE_IMAGE_JPEG, "jpg", "jpeg", "jpe"},
+        {MIMETYPE_IMAGE_RGB, "rgb"},
+        {MIMETYPE_IMAGE_SVG, "svg"},
+        {MIMETYPE_IMAGE_PNG, "png"},
+        {MIMETYPE_IMAGE_TIFF, "tiff", "tif"},
+        {MIMETYPE_IMAGE_RAW_DNG, "dng"},
+        {MIMETYPE_IMAGE_RAW_3FR, "3fr"},
+        {MIMETYPE_IMAGE_RAW_RAF, "raf"},
+        {MIMETYPE_IMAGE_RAW_CR2, "cr2"},
+        {MIMETYPE_IMAGE_RAW_K25, "k25"},
+        {MIMETYPE_IMAGE_RAW_MRW, "mrw"},
+        {MIMETYPE_IMAGE_RAW_NEF, "nef"},
+        {MIMETYPE_IMAGE_RAW_ORF, "orf"},
+        {MIMETYPE_IMAGE_RAW_PEF, "pef"},
+        {MIMETYPE_IMAGE_RAW_ARW, "arw"},
+        {MIMETYPE_IMAGE_RAW_X3F, "x3f"},
+        {MIMETYPE_IMAGE_RAW_RW2, "rw2"},
+        {MIMETYPE_IMAGE_RAW_RWL, "rwl"},
+        {MIMETYPE_IMAGE_RAW_R3D, "r3d"},
+        {MIMETYPE_IMAGE_DWT, "dwt"},
+        {MIMETYPE_APPLICATION_EPS, "eps"},
+        {MIMETYPE_APPLICATION_PS, "ps"},
+        {MIMETYPE_ZIP, "zip"},
+        {MIMETYPE_OPENSEARCH_DESCRIPTION, "osdx"},
+        {MIMETYPE_ATOM, "atom"},
+        {MIMETYPE_RSS, "rss"},
+        {MIMETYPE_RFC822, "eml"},
+        {MIMETYPE_OUTLOOK_MSG, "msg"},
+        {MIMETYPE_VISIO, "vsd"},
+        {MIMETYPE_VISIO_2013, "vsdx"},
+        {MIMETYPE_APPLICATION_ILLUSTRATOR, "ai"},
+        {MIMETYPE_APPLICATION_PHOTOSHOP, "psd"},
+        {MIMETYPE_ENCRYPTED_OFFICE},
+        {MIMETYPE_OPENDOCUMENT_TEXT, "odt"},
+        {MIMETYPE_OPENDOCUMENT_TEXT_TEMPLATE, "ott"},
+        {MIMETYPE_OPENDOCUMENT_GRAPHICS, "odg"},
+        {MIMETYPE_OPENDOCUMENT_GRAPHICS_TEMPLATE, "otg"},
+        {MIMETYPE_OPENDOCUMENT_PRESENTATION, "odp"},
+        {MIMETYPE_OPENDOCUMENT_PRESENTATION_TEMPLATE, "otp"},
+        {MIMETYPE_OPENDOCUMENT_SPREADSHEET, "ods"},
+        {MIMETYPE_OPENDOCUMENT_SPREADSHEET_TEMPLATE, "ots"},
+        {MIMETYPE_OPENDOCUMENT_CHART, "odc"},
+        {MIMETYPE_OPENDOCUMENT_CHART_TEMPLATE, "otc"},
+        {MIMETYPE_OPENDOCUMENT_IMAGE, "odi"},
+        {MIMETYPE_OPENDOCUMENT_IMAGE_TEMPLATE, "oti"},
+        {MIMETYPE_OPENDOCUMENT_FORMULA, "odf"},
+        {MIMETYPE_OPENDOCUMENT_FORMULA_TEMPLATE, "otf"},
+        {MIMETYPE_OPENDOCUMENT_TEXT_MASTER, "odm"},
+        {MIMETYPE_OPENDOCUMENT_TEXT_WEB, "oth"},
+        {MIMETYPE_OPENDOCUMENT_DATABASE, "odb"},
+        {MIMETYPE_OPENOFFICE1_WRITER, "sxw"},
+        {MIMETYPE_OPENOFFICE1_CALC, "sxc"},
+        {MIMETYPE_OPENOFFICE1_DRAW, "sxd"},
+        {MIMETYPE_OPENOFFICE1_IMPRESS, "sxi"},
+        {MIMETYPE_OPENXML_WORDPROCESSING, "docx"},
+        {MIMETYPE_OPENXML_WORDPROCESSING_MACRO, "docm"},
+        {MIMETYPE_OPENXML_WORD_TEMPLATE, "dotx"},
+        {MIMETYPE_OPENXML_WORD_TEMPLATE_MACRO, "dotm"},
+        {MIMETYPE_OPENXML_SPREADSHEET, "xlsx"},
+        {MIMETYPE_OPENXML_SPREADSHEET_TEMPLATE, "xltx"},
+        {MIMETYPE_OPENXML_SPREADSHEET_MACRO, "xlsm"},
+        {MIMETYPE_OPENXML_SPREADSHEET_TEMPLATE_MACRO, "xltm"},
+        {MIMETYPE_OPENXML_SPREADSHEET_ADDIN_MACRO, "xlam"},
+        {MIMETYPE_OPENXML_SPREADSHEET_BINARY_MACRO, "xlsb"},
+        {MIMETYPE_OPENXML_PRESENTATION, "pptx"},
+        {MIMETYPE_OPENXML_PRESENTATION_MACRO, "pptm"},
+        {MIMETYPE_OPENXML_PRESENTATION_SLIDESHOW, "ppsx"},
+        {MIMETYPE_OPENXML_PRESENTATION_SLIDESHOW_MACRO, "ppsm"},
+        {MIMETYPE_OPENXML_PRESENTATION_TEMPLATE, "potx"},
+        {MIMETYPE_OPENXML_PRESENTATION_TEMPLATE_MACRO, "potm"},
+        {MIMETYPE_OPENXML_PRESENTATION_ADDIN, "ppam"},
+        {MIMETYPE_OPENXML_PRESENTATION_SLIDE, "sldx"},
+        {MIMETYPE_OPENXML_PRESENTATION_SLIDE_MACRO, "sldm"},
+        {MIMETYPE_STAROFFICE5_DRAW, "sda"},
+        {MIMETYPE_STAROFFICE5_CALC, "sdc"},
+        {MIMETYPE_STAROFFICE5_IMPRESS, "sdd"},
+        {MIMETYPE_STAROFFICE5_IMPRESS_PACKED, "sdp"},
+        {MIMETYPE_STAROFFICE5_CHART, "sds"},
+        {MIMETYPE_STAROFFICE5_WRITER, "sdw"},
+        {MIMETYPE_STAROFFICE5_WRITER_GLOBAL, "sgl"},
+        {MIMETYPE_STAROFFICE5_MATH, "smf"},
+        {MIMETYPE_IWORK_KEYNOTE, "key"},
+        {MIMETYPE_IWORK_NUMBERS, "numbers"},
+        {MIMETYPE_IWORK_PAGES, "pages"},
+        {MIMETYPE_APPLEFILE},
+        {MIMETYPE_WORDPERFECT, "wpd"},
+        {MIMETYPE_MP3, "mp3"},
+        {MIMETYPE_AUDIO_MP4, "m4a"},
+        {MIMETYPE_VORBIS, "oga"},
+        {MIMETYPE_FLAC, "flac"},
+        {MIMETYPE_ACP, "acp"},
+        {MIMETYPE_PBM, "pbm"},
+        {MIMETYPE_PNM, "pnm"},
+        {MIMETYPE_XBM, "xbm"},
+        {MIMETYPE_XPM, "xpm"},
+        {MIMETYPE_Z, "z"},
+        {MIMETYPE_PPM, "ppm"},
+        {MIMETYPE_TAR, "tar"},
+        {MIMETYPE_OGG, "ogg"}
+    };
+
     private static final Set<String> ALL_MIMETYPES;
 
+    // ALL_MIMETYPES in the order of MIMETYPE_EXTENSIONS.
+    private static final List<String> ORDERED_MIMETYPES;
+
+    // ALL_MIMETYPES in order, so that those starting with a prefix may be found as a range.
+    private static final NavigableSet<String> SORTED_MIMETYPES;
+
+    private static final Map<String, String> EXTENSIONS_BY_MIMETYPE;
+    private static final Map<String, String> MIMETYPES_BY_EXTENSION;
+
+    // Previous matchMimetypes results, keyed on the regex.
+    private static final Map<String, Set<String>> MATCHED_MIMETYPES = new ConcurrentHashMap<>();
+
     static
     {
-        ALL_MIMETYPES = unmodifiableSet(stream(Mimetype.class.getDeclaredFields())
-            .filter(f -> Modifier.isPublic(f.getModifiers()))
-            .filter(f -> Modifier.isStatic(f.getModifiers()))
-            .filter(f -> Modifier.isFinal(f.getModifiers()))
-            .filter(f -> f.getType().isAssignableFrom(String.class))
-            .filter(f -> f.getName().startsWith("MIMETYPE_"))
-            .peek(f -> f.setAccessible(true))
-            .map(Mimetype::getFieldValue)
-            .filter(Objects::nonNull)
-            .collect(toSet()));
+        final Set<String> mimetypes = new HashSet<>();
+        final List<String> orderedMimetypes = new ArrayList<>(MIMETYPE_EXTENSIONS.length);
+        final Map<String, String> extensionsByMimetype = new HashMap<>();
+        final Map<String, String> mimetypesByExtension = new HashMap<>();
+        for (String[] row : MIMETYPE_EXTENSIONS)
+        {
+            final String mimetype = row[0];
+            mimetypes.add(mimetype);
+            orderedMimetypes.add(mimetype);
+            if (row.length > 1)
+            {
+                extensionsByMimetype.put(mimetype, row[1]);
+            }
+            for (int i = 1; i < row.length; i++)
+            {
+                mimetypesByExtension.putIfAbsent(row[i], mimetype);
+            }
+        }
+        ALL_MIMETYPES = unmodifiableSet(mimetypes);
+        ORDERED_MIMETYPES = unmodifiableList(orderedMimetypes);
+        SORTED_MIMETYPES = unmodifiableNavigableSet(new TreeSet<>(mimetypes));
+        EXTENSIONS_BY_MIMETYPE = extensionsByMimetype;
+        MIMETYPES_BY_EXTENSION = mimetypesByExtension;
+    }
+
+    /**
+     * @return the known mimetypes in a fixed order, to which new mimetypes are only ever appended.
+     */
+    static List<String> getOrderedMimetypes()
+    {
+        return ORDERED_MIMETYPES;
+    }
+
+    /**
+     * @return the default file extension (without a dot) of a mimetype or {@code null} if there is none.
+     */
+    public static String getExtension(final String mimetype)
+    {
+        return mimetype == null ? null : EXTENSIONS_BY_MIMETYPE.get(mimetype);
     }
 
-    private static String getFieldValue(final Field f)
+    /**
+     * @return the mimetype of a file extension (without a dot, in any case) or {@code null} if it is not known.
+     */
+    public static String getMimetype(final String extension)
     {
-        try
+        return extension == null ? null : MIMETYPES_BY_EXTENSION.get(extension.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return the known mimetypes that match the regex. Regexes that are just a literal, or a literal followed by
+     * {@code .*} (such as {@code image/.*}), are answered without using a regex.
+     */
+    public static Set<String> matchMimetypes(final String regex)
+    {
+        Set<String> matched = MATCHED_MIMETYPES.get(regex);
+        if (matched == null)
+        {
+            matched = unmodifiableSet(findMimetypes(regex));
+            if (MATCHED_MIMETYPES.size() < MAX_MATCHED_MIMETYPES)
+            {
+                MATCHED_MIMETYPES.put(regex, matched);
+            }
+        }
+        return matched;
+    }
+
+    private static Set<String> findMimetypes(final String regex)
+    {
+        final boolean anySuffix = regex.endsWith(".*") && !regex.endsWith("\\.*");
+        final String literal = literalPrefix(anySuffix ? regex.substring(0, regex.length() - 2) : regex);
+        if (literal == null)
         {
-            return (String) f.get(null);
+            final Pattern pattern = Pattern.compile(regex);
+            return ALL_MIMETYPES
+                .stream()
+                .filter(t -> pattern.matcher(t).matches())
+                .collect(toSet());
         }
-        catch (Exception e)
+        if (anySuffix)
         {
-            throw new RuntimeException(e);
+            return new HashSet<>(SORTED_MIMETYPES.subSet(literal, true, literal + Character.MAX_VALUE, false));
         }
+        return ALL_MIMETYPES.contains(literal) ? singleton(literal) : emptySet();
     }
 
-    public static Set<String> matchMimetypes(final String regex)
+    // Returns the text matched by the regex, if it only matches a single string, otherwise null. Metacharacters
+    // escaped with a backslash are treated as literals.
+    private static String literalPrefix(final String regex)
     {
-        return unmodifiableSet(ALL_MIMETYPES
-            .stream()
-            .filter(t -> t.matches(regex))
-            .collect(toSet()));
+        final StringBuilder literal = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++)
+        {
+            char c = regex.charAt(i);
+            if (c == '\\')
+            {
+                if (++i == regex.length())
+                {
+                    return null;
+                }
+                c = regex.charAt(i);
+                if (Character.isLetterOrDigit(c))
+                {
+                    // A character class such as \d or an escape such as \t
+                    return null;
+                }
+            }
+            else if (".[]()*+?{}|^$".indexOf(c) >= 0)
+            {
+                return null;
+            }
+            literal.append(c);
+        }
+        return literal.toString();
     }
 }
@@ -25,17 +25,34 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 /**
- * Holds required contextual information for a multi-step transform.
+ * Holds required contextual information for a multi-step transform.<p/>
+ *
+ * The transforms still to be done may be listed explicitly in {@code transformsToBeDone}, or identified by a compact
+ * route handle: a {@code routeId} that is only meaningful to a transform registry with the same
+ * {@code routeGeneration}, together with a {@code stepIndex} counting the steps already done. A receiver whose registry
+ * has a different generation falls back to the explicit list, so senders should only omit it when every node shares
+ * the same registry. The handle fields are not written as JSON while unset, so existing readers are unaffected.
  *
  * @author Lucian Tuca
  * created on 19/12/2018
  */
 public class MultiStep implements Serializable
 {
+    // The UID computed for the class before the route handle fields were added, so older nodes can still read it.
+    private static final long serialVersionUID = -8636435140466968028L;
+
     private String initialRequestId;
     private String initialSourceMediaType;
     private List<String> transformsToBeDone = new ArrayList<>();
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private long routeGeneration;
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private long routeId;
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private int stepIndex;
 
     // regions [Accessors]
 
@@ -69,6 +86,51 @@ public class MultiStep implements Serializable
         this.transformsToBeDone = transformsToBeDone;
     }
 
+    /**
+     * @return the generation of the transform registry that issued the {@link #getRouteId() routeId}, or 0 if there is
+     * no route handle.
+     */
+    public long getRouteGeneration()
+    {
+        return routeGeneration;
+    }
+
+    public void setRouteGeneration(long routeGeneration)
+    {
+        this.routeGeneration = routeGeneration;
+    }
+
+    public long getRouteId()
+    {
+        return routeId;
+    }
+
+    public void setRouteId(long routeId)
+    {
+        this.routeId = routeId;
+    }
+
+    /**
+     * @return the number of steps of the route (or of {@link #getTransformsToBeDone()}) that have already been done.
+     */
+    public int getStepIndex()
+    {
+        return stepIndex;
+    }
+
+    public void setStepIndex(int stepIndex)
+    {
+        this.stepIndex = stepIndex;
+    }
+
+    /**
+     * @return {@code true} if a route handle has been set.
+     */
+    public boolean hasRouteHandle()
+    {
+        return routeGeneration != 0;
+    }
+
     //endregion
 
     @Override public String toString()
@@ -77,6 +139,9 @@ public class MultiStep implements Serializable
                "initialRequestId='" + initialRequestId + '\'' +
                ", initialSourceMediaType='" + initialSourceMediaType + '\'' +
                ", transformsToBeDone=" + transformsToBeDone +
+               ", routeGeneration=" + routeGeneration +
+               ", routeId=" + routeId +
+               ", stepIndex=" + stepIndex +
                '}';
     }
 }
@@ -0,0 +1,752 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes {@link TransformRequest}s and {@link TransformReply}s (including their {@link InternalContext} and
+ * {@link MultiStep}) in a compact binary form, as an alternative to Java serialization or JSON.<p>
+ *
+ * A message starts with a byte identifying it as a request or reply, followed by its {@code schema} as a varint. The
+ * schema selects the layout of the remaining fields, so that a reader is able to reject a message written using a
+ * layout it does not know. Schemas 0 and 1 use the same layout. Integers are written as zigzag varints. Each string
+ * is a varint token: 0 for null, 1 for a UTF-8 literal preceded by its length, then the well-known mimetypes of
+ * {@link Mimetype}, and finally references to literals already written in the same message, so that repeated option
+ * names are only written once. Maps and lists are preceded by their size plus one, with 0 for null. Optional fields
+ * are announced by flag bits, so a {@link MultiStep} route handle and step index are only written when set, and a
+ * message without them may still be read by readers that predate them.<p>
+ *
+ * A request may also be read through a {@link TransformRequestView}, which only decodes the fields that are asked for.
+ */
+public final class TransformMessageCodec
+{
+    /** The highest {@code schema} that may be encoded or decoded. */
+    public static final int MAX_SCHEMA = 1;
+
+    private static final byte REQUEST = 1;
+    private static final byte REPLY = 2;
+
+    private static final int NULL_STRING = 0;
+    private static final int LITERAL_STRING = 1;
+    private static final int FIRST_MIMETYPE = 2;
+
+    // The number of Mimetype.getOrderedMimetypes() that are identified by their position. Fixed for each layout, so
+    // that mimetypes added later are written as literals, which older readers understand.
+    private static final int SCHEMA_1_MIMETYPES = 129;
+
+    private static final String[] MIMETYPES = Mimetype.getOrderedMimetypes().subList(0, SCHEMA_1_MIMETYPES)
+        .toArray(new String[0]);
+    private static final Map<String, Integer> MIMETYPE_TOKENS = new HashMap<>();
+
+    static
+    {
+        for (int i = 0; i < MIMETYPES.length; i++)
+        {
+            MIMETYPE_TOKENS.put(MIMETYPES[i], FIRST_MIMETYPE + i);
+        }
+    }
+
+    private static final int FIRST_REFERENCE = FIRST_MIMETYPE + MIMETYPES.length;
+
+    // Flags of optional fields.
+    private static final int HAS_SOURCE_SIZE = 1;
+    private static final int HAS_INTERNAL_CONTEXT = 2;
+    private static final int HAS_MULTI_STEP = 4;
+    private static final int HAS_CURRENT_SOURCE_SIZE = 8;
+    private static final int HAS_ROUTE_HANDLE = 16;
+    private static final int HAS_STEP_INDEX = 32;
+
+    private TransformMessageCodec()
+    {
+    }
+
+    public static byte[] encode(final TransformRequest request)
+    {
+        final Writer writer = new Writer(REQUEST, request.getSchema());
+        final InternalContext context = request.getInternalContext();
+        writer.writeVarint((request.getSourceSize() == null ? 0 : HAS_SOURCE_SIZE) |
+                           (context == null ? 0 : HAS_INTERNAL_CONTEXT));
+        writer.writeString(request.getRequestId());
+        writer.writeString(request.getSourceReference());
+        writer.writeString(request.getSourceMediaType());
+        writer.writeString(request.getSourceExtension());
+        writer.writeString(request.getTargetMediaType());
+        writer.writeString(request.getTargetExtension());
+        writer.writeString(request.getClientData());
+        if (request.getSourceSize() != null)
+        {
+            writer.writeSigned(request.getSourceSize());
+        }
+        writer.writeMap(request.getTransformRequestOptions());
+        if (context != null)
+        {
+            writer.writeInternalContext(context);
+        }
+        return writer.toByteArray();
+    }
+
+    public static byte[] encode(final TransformReply reply)
+    {
+        final Writer writer = new Writer(REPLY, reply.getSchema());
+        final InternalContext context = reply.getInternalContext();
+        writer.writeVarint(context == null ? 0 : HAS_INTERNAL_CONTEXT);
+        writer.writeString(reply.getRequestId());
+        writer.writeSigned(reply.getStatus());
+        writer.writeString(reply.getErrorDetails());
+        writer.writeString(reply.getSourceReference());
+        writer.writeString(reply.getTargetReference());
+        writer.writeString(reply.getClientData());
+        if (context != null)
+        {
+            writer.writeInternalContext(context);
+        }
+        return writer.toByteArray();
+    }
+
+    public static TransformRequest decodeRequest(final byte[] bytes)
+    {
+        return decodeRequest(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not an encoded request or use a schema that is not known.
+     */
+    public static TransformRequest decodeRequest(final byte[] bytes, final int offset, final int length)
+    {
+        final Reader reader = new Reader(bytes, offset, length);
+        final TransformRequest request = new TransformRequest();
+        request.setSchema(reader.readHeader(REQUEST));
+        final int flags = reader.readInt();
+        request.setRequestId(reader.readString());
+        request.setSourceReference(reader.readString());
+        request.setSourceMediaType(reader.readString());
+        request.setSourceExtension(reader.readString());
+        request.setTargetMediaType(reader.readString());
+        request.setTargetExtension(reader.readString());
+        request.setClientData(reader.readString());
+        if ((flags & HAS_SOURCE_SIZE) != 0)
+        {
+            request.setSourceSize(reader.readSigned());
+        }
+        request.setTransformRequestOptions(reader.readMap());
+        if ((flags & HAS_INTERNAL_CONTEXT) != 0)
+        {
+            request.setInternalContext(reader.readInternalContext());
+        }
+        reader.checkEnd();
+        TransformRequestOptions.share(request);
+        return request;
+    }
+
+    public static TransformRequestView viewRequest(final byte[] bytes)
+    {
+        return viewRequest(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Checks the structure of an encoded request without decoding its fields, which are only decoded when read from
+     * the returned view. The bytes must not be changed while the view is in use.
+     *
+     * @throws IllegalArgumentException if the bytes are not an encoded request or use a schema that is not known.
+     */
+    public static TransformRequestView viewRequest(final byte[] bytes, final int offset, final int length)
+    {
+        return new RequestView(bytes, offset, length);
+    }
+
+    public static TransformReply decodeReply(final byte[] bytes)
+    {
+        return decodeReply(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not an encoded reply or use a schema that is not known.
+     */
+    public static TransformReply decodeReply(final byte[] bytes, final int offset, final int length)
+    {
+        final Reader reader = new Reader(bytes, offset, length);
+        final TransformReply reply = new TransformReply();
+        reply.setSchema(reader.readHeader(REPLY));
+        final int flags = reader.readInt();
+        reply.setRequestId(reader.readString());
+        reply.setStatus((int) reader.readSigned());
+        reply.setErrorDetails(reader.readString());
+        reply.setSourceReference(reader.readString());
+        reply.setTargetReference(reader.readString());
+        reply.setClientData(reader.readString());
+        if ((flags & HAS_INTERNAL_CONTEXT) != 0)
+        {
+            reply.setInternalContext(reader.readInternalContext());
+        }
+        reader.checkEnd();
+        return reply;
+    }
+
+    private static void checkSchema(final int schema)
+    {
+        if (schema < 0 || schema > MAX_SCHEMA)
+        {
+            throw new IllegalArgumentException("Unsupported schema " + schema);
+        }
+    }
+
+    private static final class RequestView extends TransformRequestView
+    {
+        private final Reader reader;
+        private final int schema;
+        private final int flagsPosition;
+        // The position of each string field, indexed by the field constants of TransformRequestView.
+        private final int[] strings = new int[STRING_FIELD_COUNT];
+        private final Long sourceSize;
+        private final int transformRequestOptions;
+        private final int internalContext;
+        private final int literalsBeforeInternalContext;
+
+        private RequestView(final byte[] bytes, final int offset, final int length)
+        {
+            reader = new Reader(bytes, offset, length);
+            schema = reader.readHeader(REQUEST);
+            flagsPosition = reader.position;
+            final int flags = reader.readInt();
+            for (int field = 0; field < STRING_FIELD_COUNT; field++)
+            {
+                strings[field] = skipString();
+            }
+            sourceSize = (flags & HAS_SOURCE_SIZE) == 0 ? null : reader.readSigned();
+            transformRequestOptions = reader.position;
+            reader.skipMap();
+            literalsBeforeInternalContext = reader.literalCount;
+            if ((flags & HAS_INTERNAL_CONTEXT) == 0)
+            {
+                internalContext = -1;
+            }
+            else
+            {
+                internalContext = reader.position;
+                reader.skipInternalContext();
+            }
+            reader.checkEnd();
+            reader.indexed = true;
+        }
+
+        private int skipString()
+        {
+            final int position = reader.position;
+            reader.skipString();
+            return position;
+        }
+
+        @Override
+        String readStringField(final int field)
+        {
+            reader.position = strings[field];
+            return reader.readString();
+        }
+
+        @Override
+        public int getSchema()
+        {
+            return schema;
+        }
+
+        @Override
+        public Long getSourceSize()
+        {
+            return sourceSize;
+        }
+
+        @Override
+        Map<String, String> readTransformRequestOptions()
+        {
+            reader.position = transformRequestOptions;
+            return reader.readMap();
+        }
+
+        @Override
+        InternalContext readInternalContext()
+        {
+            if (internalContext < 0)
+            {
+                return null;
+            }
+            reader.position = internalContext;
+            return reader.readInternalContext();
+        }
+
+        @Override
+        byte[] copyOriginal()
+        {
+            return Arrays.copyOfRange(reader.buffer, reader.offset, reader.limit);
+        }
+
+        // The internal context is the last field, so everything before it is copied. New literals are numbered after
+        // the ones copied, but do not refer to them.
+        @Override
+        byte[] encodeWith(final InternalContext context)
+        {
+            final int end = internalContext < 0 ? reader.limit : internalContext;
+            final Writer writer = new Writer(reader.buffer, reader.offset, end - reader.offset,
+                literalsBeforeInternalContext);
+            final int flags = flagsPosition - reader.offset;
+            writer.buffer[flags] = (byte) ((writer.buffer[flags] & ~HAS_INTERNAL_CONTEXT) |
+                                           (context == null ? 0 : HAS_INTERNAL_CONTEXT));
+            if (context != null)
+            {
+                writer.writeInternalContext(context);
+            }
+            return writer.toByteArray();
+        }
+    }
+
+    private static final class Writer
+    {
+        private byte[] buffer = new byte[256];
+        private int count;
+
+        // Literals already written, mapped to their token.
+        private Map<String, Integer> literals;
+        private int literalCount;
+
+        private Writer(final byte type, final int schema)
+        {
+            checkSchema(schema);
+            buffer[count++] = type;
+            writeVarint(schema);
+        }
+
+        // Continues a message, the start of which contains literalCount literals that will not be referenced.
+        private Writer(final byte[] start, final int offset, final int length, final int literalCount)
+        {
+            buffer = Arrays.copyOfRange(start, offset, offset + length + 256);
+            count = length;
+            this.literalCount = literalCount;
+        }
+
+        private void ensureCapacity(final int extra)
+        {
+            if (count + extra > buffer.length)
+            {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + extra));
+            }
+        }
+
+        private void writeVarint(long value)
+        {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0)
+            {
+                buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[count++] = (byte) value;
+        }
+
+        private void writeSigned(final long value)
+        {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void writeString(final String value)
+        {
+            if (value == null)
+            {
+                writeVarint(NULL_STRING);
+                return;
+            }
+            Integer token = MIMETYPE_TOKENS.get(value);
+            if (token == null && literals != null)
+            {
+                token = literals.get(value);
+            }
+            if (token != null)
+            {
+                writeVarint(token);
+                return;
+            }
+            if (literals == null)
+            {
+                literals = new HashMap<>();
+            }
+            literals.put(value, FIRST_REFERENCE + literalCount++);
+            writeVarint(LITERAL_STRING);
+            writeUtf8(value);
+        }
+
+        private void writeUtf8(final String value)
+        {
+            final byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, count, bytes.length);
+            count += bytes.length;
+        }
+
+        private void writeMap(final Map<String, String> map)
+        {
+            if (map == null)
+            {
+                writeVarint(0);
+                return;
+            }
+            final TransformRequestOptions options = TransformRequestOptions.of(map);
+            writeVarint(options.size() + 1L);
+            for (int i = 0; i < options.size(); i++)
+            {
+                writeString(options.name(i));
+                writeString(options.value(i));
+            }
+        }
+
+        private void writeInternalContext(final InternalContext context)
+        {
+            final MultiStep multiStep = context.getMultiStep();
+            writeVarint((multiStep == null ? 0 : HAS_MULTI_STEP) |
+                        (context.getCurrentSourceSize() == null ? 0 : HAS_CURRENT_SOURCE_SIZE) |
+                        (multiStep == null || !multiStep.hasRouteHandle() ? 0 : HAS_ROUTE_HANDLE) |
+                        (multiStep == null || multiStep.getStepIndex() == 0 ? 0 : HAS_STEP_INDEX));
+            writeSigned(context.getAttemptedRetries());
+            writeString(context.getCurrentSourceMediaType());
+            writeString(context.getCurrentTargetMediaType());
+            writeString(context.getReplyToDestination());
+            if (context.getCurrentSourceSize() != null)
+            {
+                writeSigned(context.getCurrentSourceSize());
+            }
+            writeMap(context.getTransformRequestOptions());
+            if (multiStep != null)
+            {
+                writeString(multiStep.getInitialRequestId());
+                writeString(multiStep.getInitialSourceMediaType());
+                final List<String> transformsToBeDone = multiStep.getTransformsToBeDone();
+                if (transformsToBeDone == null)
+                {
+                    writeVarint(0);
+                }
+                else
+                {
+                    writeVarint(transformsToBeDone.size() + 1L);
+                    for (String transform : transformsToBeDone)
+                    {
+                        writeString(transform);
+                    }
+                }
+                if (multiStep.hasRouteHandle())
+                {
+                    writeVarint(multiStep.getRouteGeneration());
+                    writeVarint(multiStep.getRouteId());
+                }
+                if (multiStep.getStepIndex() != 0)
+                {
+                    writeVarint(multiStep.getStepIndex());
+                }
+            }
+        }
+
+        private byte[] toByteArray()
+        {
+            return Arrays.copyOf(buffer, count);
+        }
+    }
+
+    private static final class Reader
+    {
+        private final byte[] buffer;
+        private final int offset;
+        private final int limit;
+        private int position;
+
+        // The offset and length of each literal already read, in the order they were written, and the Strings
+        // created for them so far.
+        private int[] literals;
+        private String[] literalValues;
+        private int literalCount;
+
+        // Set once every literal has been read, after which fields may be read again in any order.
+        private boolean indexed;
+
+        private Reader(final byte[] buffer, final int offset, final int length)
+        {
+            if (offset < 0 || length < 0 || offset > buffer.length - length)
+            {
+                throw new IndexOutOfBoundsException("offset " + offset + " length " + length);
+            }
+            this.buffer = buffer;
+            this.offset = offset;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        private int readHeader(final byte type)
+        {
+            if (position >= limit || buffer[position] != type)
+            {
+                throw new IllegalArgumentException(
+                    "Not an encoded " + (type == REQUEST ? "TransformRequest" : "TransformReply"));
+            }
+            position++;
+            final int schema = readInt();
+            checkSchema(schema);
+            return schema;
+        }
+
+        private long readVarint()
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                if (position >= limit)
+                {
+                    throw new IllegalArgumentException("Truncated message");
+                }
+                final byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private int readInt()
+        {
+            final long value = readVarint();
+            if (value < 0 || value > Integer.MAX_VALUE)
+            {
+                throw new IllegalArgumentException("Value out of range " + value);
+            }
+            return (int) value;
+        }
+
+        private long readSigned()
+        {
+            final long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private String readString()
+        {
+            final int token = readInt();
+            if (token == NULL_STRING)
+            {
+                return null;
+            }
+            if (token == LITERAL_STRING)
+            {
+                final int length = readLength();
+                final int offset = position;
+                position += length;
+                final String value = new String(buffer, offset, length, UTF_8);
+                if (!indexed)
+                {
+                    final int index = addLiteral(offset, length);
+                    literalValues[index] = value;
+                }
+                return value;
+            }
+            if (token < FIRST_REFERENCE)
+            {
+                return MIMETYPES[token - FIRST_MIMETYPE];
+            }
+            final int reference = checkReference(token);
+            if (literalValues[reference] == null)
+            {
+                literalValues[reference] = new String(buffer, literals[reference * 2], literals[reference * 2 + 1],
+                    UTF_8);
+            }
+            return literalValues[reference];
+        }
+
+        // Checks a string without creating it. Literals are recorded, so that they may be referenced later.
+        private void skipString()
+        {
+            final int token = readInt();
+            if (token == LITERAL_STRING)
+            {
+                final int length = readLength();
+                addLiteral(position, length);
+                position += length;
+            }
+            else if (token >= FIRST_REFERENCE)
+            {
+                checkReference(token);
+            }
+        }
+
+        private int readLength()
+        {
+            final int length = readInt();
+            if (length > limit - position)
+            {
+                throw new IllegalArgumentException("Truncated message");
+            }
+            return length;
+        }
+
+        private int addLiteral(final int offset, final int length)
+        {
+            if (literals == null)
+            {
+                literals = new int[16];
+                literalValues = new String[8];
+            }
+            else if (literalCount == literalValues.length)
+            {
+                literals = Arrays.copyOf(literals, literalCount * 4);
+                literalValues = Arrays.copyOf(literalValues, literalCount * 2);
+            }
+            literals[literalCount * 2] = offset;
+            literals[literalCount * 2 + 1] = length;
+            return literalCount++;
+        }
+
+        private int checkReference(final int token)
+        {
+            final int reference = token - FIRST_REFERENCE;
+            if (reference >= literalCount)
+            {
+                throw new IllegalArgumentException("Unknown string reference " + reference);
+            }
+            return reference;
+        }
+
+        private Map<String, String> readMap()
+        {
+            final int size = readInt();
+            if (size == 0)
+            {
+                return null;
+            }
+            final TransformRequestOptions.Builder builder =
+                TransformRequestOptions.builder(Math.min(size - 1, limit - position));
+            for (int i = 1; i < size; i++)
+            {
+                builder.with(readString(), readString());
+            }
+            return builder.build();
+        }
+
+        private void skipMap()
+        {
+            final int size = readInt();
+            for (int i = 1; i < size; i++)
+            {
+                skipString();
+                skipString();
+            }
+        }
+
+        private void skipInternalContext()
+        {
+            final int flags = readInt();
+            readSigned();
+            skipString();
+            skipString();
+            skipString();
+            if ((flags & HAS_CURRENT_SOURCE_SIZE) != 0)
+            {
+                readSigned();
+            }
+            skipMap();
+            if ((flags & HAS_MULTI_STEP) != 0)
+            {
+                skipString();
+                skipString();
+                final int size = readInt();
+                for (int i = 1; i < size; i++)
+                {
+                    skipString();
+                }
+                if ((flags & HAS_ROUTE_HANDLE) != 0)
+                {
+                    readVarint();
+                    readVarint();
+                }
+                if ((flags & HAS_STEP_INDEX) != 0)
+                {
+                    readInt();
+                }
+            }
+        }
+
+        private InternalContext readInternalContext()
+        {
+            final InternalContext context = new InternalContext();
+            final int flags = readInt();
+            context.setAttemptedRetries((int) readSigned());
+            context.setCurrentSourceMediaType(readString());
+            context.setCurrentTargetMediaType(readString());
+            context.setReplyToDestination(readString());
+            if ((flags & HAS_CURRENT_SOURCE_SIZE) != 0)
+            {
+                context.setCurrentSourceSize(readSigned());
+            }
+            context.setTransformRequestOptions(readMap());
+            if ((flags & HAS_MULTI_STEP) != 0)
+            {
+                final MultiStep multiStep = new MultiStep();
+                multiStep.setInitialRequestId(readString());
+                multiStep.setInitialSourceMediaType(readString());
+                final int size = readInt();
+                if (size == 0)
+                {
+                    multiStep.setTransformsToBeDone(null);
+                }
+                else
+                {
+                    final List<String> transformsToBeDone = new ArrayList<>(Math.min(size - 1, limit - position));
+                    for (int i = 1; i < size; i++)
+                    {
+                        transformsToBeDone.add(readString());
+                    }
+                    multiStep.setTransformsToBeDone(transformsToBeDone);
+                }
+                if ((flags & HAS_ROUTE_HANDLE) != 0)
+                {
+                    multiStep.setRouteGeneration(readVarint());
+                    multiStep.setRouteId(readVarint());
+                }
+                if ((flags & HAS_STEP_INDEX) != 0)
+                {
+                    multiStep.setStepIndex(readInt());
+                }
+                context.setMultiStep(multiStep);
+            }
+            return context;
+        }
+
+        private void checkEnd()
+        {
+            if (position != limit)
+            {
+                throw new IllegalArgumentException((limit - position) + " unexpected bytes at the end of the message");
+            }
+        }
+    }
+}
@@ -0,0 +1,742 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.model;
+
+import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.END_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_NULL;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+/**
+ * Reads and writes {@link TransformRequest}s and {@link TransformReply}s as JSON using the Jackson streaming API,
+ * without the reflection and intermediate objects of databinding. The JSON has the same shape as that of an
+ * {@code ObjectMapper} with its default settings: properties in declaration order and null values included.
+ * Unknown properties are skipped when reading.
+ */
+public final class TransformMessageJsonCodec
+{
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private TransformMessageJsonCodec()
+    {
+    }
+
+    public static byte[] toJson(final TransformRequest request) throws IOException
+    {
+        final ByteArrayBuilder bytes = new ByteArrayBuilder();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(bytes))
+        {
+            write(request, generator);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static byte[] toJson(final TransformReply reply) throws IOException
+    {
+        final ByteArrayBuilder bytes = new ByteArrayBuilder();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(bytes))
+        {
+            write(reply, generator);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static TransformRequest readRequest(final byte[] json) throws IOException
+    {
+        try (JsonParser parser = JSON_FACTORY.createParser(json))
+        {
+            parser.nextToken();
+            return readRequest(parser);
+        }
+    }
+
+    public static TransformReply readReply(final byte[] json) throws IOException
+    {
+        try (JsonParser parser = JSON_FACTORY.createParser(json))
+        {
+            parser.nextToken();
+            return readReply(parser);
+        }
+    }
+
+    /**
+     * Scans a request without decoding its fields, which are only decoded when read from the returned view. Any
+     * {@link IOException} thrown while decoding a field is wrapped in an {@link UncheckedIOException}. The bytes must
+     * not be changed while the view is in use.
+     */
+    public static TransformRequestView viewRequest(final byte[] json) throws IOException
+    {
+        return new RequestView(json);
+    }
+
+    public static void write(final TransformRequest request, final JsonGenerator generator) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeStringField("requestId", request.getRequestId());
+        generator.writeStringField("sourceReference", request.getSourceReference());
+        generator.writeStringField("sourceMediaType", request.getSourceMediaType());
+        writeLongField(generator, "sourceSize", request.getSourceSize());
+        generator.writeStringField("sourceExtension", request.getSourceExtension());
+        generator.writeStringField("targetMediaType", request.getTargetMediaType());
+        generator.writeStringField("targetExtension", request.getTargetExtension());
+        generator.writeStringField("clientData", request.getClientData());
+        generator.writeNumberField("schema", request.getSchema());
+        writeMapField(generator, "transformRequestOptions", request.getTransformRequestOptions());
+        generator.writeFieldName("internalContext");
+        write(request.getInternalContext(), generator);
+        generator.writeEndObject();
+    }
+
+    public static void write(final TransformReply reply, final JsonGenerator generator) throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeStringField("requestId", reply.getRequestId());
+        generator.writeNumberField("status", reply.getStatus());
+        generator.writeStringField("errorDetails", reply.getErrorDetails());
+        generator.writeStringField("sourceReference", reply.getSourceReference());
+        generator.writeStringField("targetReference", reply.getTargetReference());
+        generator.writeStringField("clientData", reply.getClientData());
+        generator.writeNumberField("schema", reply.getSchema());
+        generator.writeFieldName("internalContext");
+        write(reply.getInternalContext(), generator);
+        generator.writeEndObject();
+    }
+
+    private static void write(final InternalContext context, final JsonGenerator generator) throws IOException
+    {
+        if (context == null)
+        {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeFieldName("multiStep");
+        write(context.getMultiStep(), generator);
+        generator.writeNumberField("attemptedRetries", context.getAttemptedRetries());
+        generator.writeStringField("currentSourceMediaType", context.getCurrentSourceMediaType());
+        generator.writeStringField("currentTargetMediaType", context.getCurrentTargetMediaType());
+        generator.writeStringField("replyToDestination", context.getReplyToDestination());
+        writeLongField(generator, "currentSourceSize", context.getCurrentSourceSize());
+        writeMapField(generator, "transformRequestOptions", context.getTransformRequestOptions());
+        generator.writeEndObject();
+    }
+
+    private static void write(final MultiStep multiStep, final JsonGenerator generator) throws IOException
+    {
+        if (multiStep == null)
+        {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeStringField("initialRequestId", multiStep.getInitialRequestId());
+        generator.writeStringField("initialSourceMediaType", multiStep.getInitialSourceMediaType());
+        generator.writeFieldName("transformsToBeDone");
+        final List<String> transformsToBeDone = multiStep.getTransformsToBeDone();
+        if (transformsToBeDone == null)
+        {
+            generator.writeNull();
+        }
+        else
+        {
+            generator.writeStartArray();
+            for (String transform : transformsToBeDone)
+            {
+                generator.writeString(transform);
+            }
+            generator.writeEndArray();
+        }
+        // Like databinding, the route handle fields are left out while unset.
+        if (multiStep.getRouteGeneration() != 0)
+        {
+            generator.writeNumberField("routeGeneration", multiStep.getRouteGeneration());
+        }
+        if (multiStep.getRouteId() != 0)
+        {
+            generator.writeNumberField("routeId", multiStep.getRouteId());
+        }
+        if (multiStep.getStepIndex() != 0)
+        {
+            generator.writeNumberField("stepIndex", multiStep.getStepIndex());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeLongField(final JsonGenerator generator, final String name, final Long value)
+        throws IOException
+    {
+        generator.writeFieldName(name);
+        if (value == null)
+        {
+            generator.writeNull();
+        }
+        else
+        {
+            generator.writeNumber(value);
+        }
+    }
+
+    private static void writeMapField(final JsonGenerator generator, final String name,
+        final Map<String, String> map) throws IOException
+    {
+        generator.writeFieldName(name);
+        if (map == null)
+        {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        if (map instanceof TransformRequestOptions)
+        {
+            final TransformRequestOptions options = (TransformRequestOptions) map;
+            for (int i = 0; i < options.size(); i++)
+            {
+                generator.writeStringField(options.name(i), options.value(i));
+            }
+        }
+        else
+        {
+            // In the map's own order, as databinding writes it.
+            for (Map.Entry<String, String> entry : map.entrySet())
+            {
+                generator.writeStringField(entry.getKey(), entry.getValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Reads a request from a parser positioned at its {@code START_OBJECT} (or {@code VALUE_NULL}) token, leaving it
+     * at the matching {@code END_OBJECT}.
+     */
+    public static TransformRequest readRequest(final JsonParser parser) throws IOException
+    {
+        if (startObject(parser))
+        {
+            return null;
+        }
+        final TransformRequest request = new TransformRequest();
+        while (parser.nextToken() == FIELD_NAME)
+        {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name)
+            {
+                case "requestId":
+                    request.setRequestId(readString(parser));
+                    break;
+                case "sourceReference":
+                    request.setSourceReference(readString(parser));
+                    break;
+                case "sourceMediaType":
+                    request.setSourceMediaType(readString(parser));
+                    break;
+                case "sourceSize":
+                    request.setSourceSize(readLong(parser));
+                    break;
+                case "sourceExtension":
+                    request.setSourceExtension(readString(parser));
+                    break;
+                case "targetMediaType":
+                    request.setTargetMediaType(readString(parser));
+                    break;
+                case "targetExtension":
+                    request.setTargetExtension(readString(parser));
+                    break;
+                case "clientData":
+                    request.setClientData(readString(parser));
+                    break;
+                case "schema":
+                    request.setSchema(readInt(parser));
+                    break;
+                case "transformRequestOptions":
+                    request.setTransformRequestOptions(readMap(parser));
+                    break;
+                case "internalContext":
+                    request.setInternalContext(readInternalContext(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        endObject(parser);
+        TransformRequestOptions.share(request);
+        return request;
+    }
+
+    /**
+     * Reads a reply from a parser positioned at its {@code START_OBJECT} (or {@code VALUE_NULL}) token, leaving it
+     * at the matching {@code END_OBJECT}.
+     */
+    public static TransformReply readReply(final JsonParser parser) throws IOException
+    {
+        if (startObject(parser))
+        {
+            return null;
+        }
+        final TransformReply reply = new TransformReply();
+        while (parser.nextToken() == FIELD_NAME)
+        {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name)
+            {
+                case "requestId":
+                    reply.setRequestId(readString(parser));
+                    break;
+                case "status":
+                    reply.setStatus(readInt(parser));
+                    break;
+                case "errorDetails":
+                    reply.setErrorDetails(readString(parser));
+                    break;
+                case "sourceReference":
+                    reply.setSourceReference(readString(parser));
+                    break;
+                case "targetReference":
+                    reply.setTargetReference(readString(parser));
+                    break;
+                case "clientData":
+                    reply.setClientData(readString(parser));
+                    break;
+                case "schema":
+                    reply.setSchema(readInt(parser));
+                    break;
+                case "internalContext":
+                    reply.setInternalContext(readInternalContext(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        endObject(parser);
+        return reply;
+    }
+
+    private static InternalContext readInternalContext(final JsonParser parser) throws IOException
+    {
+        if (startObject(parser))
+        {
+            return null;
+        }
+        final InternalContext context = new InternalContext();
+        while (parser.nextToken() == FIELD_NAME)
+        {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name)
+            {
+                case "multiStep":
+                    context.setMultiStep(readMultiStep(parser));
+                    break;
+                case "attemptedRetries":
+                    context.setAttemptedRetries(readInt(parser));
+                    break;
+                case "currentSourceMediaType":
+                    context.setCurrentSourceMediaType(readString(parser));
+                    break;
+                case "currentTargetMediaType":
+                    context.setCurrentTargetMediaType(readString(parser));
+                    break;
+                case "replyToDestination":
+                    context.setReplyToDestination(readString(parser));
+                    break;
+                case "currentSourceSize":
+                    context.setCurrentSourceSize(readLong(parser));
+                    break;
+                case "transformRequestOptions":
+                    context.setTransformRequestOptions(readMap(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        endObject(parser);
+        return context;
+    }
+
+    private static MultiStep readMultiStep(final JsonParser parser) throws IOException
+    {
+        if (startObject(parser))
+        {
+            return null;
+        }
+        final MultiStep multiStep = new MultiStep();
+        while (parser.nextToken() == FIELD_NAME)
+        {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            switch (name)
+            {
+                case "initialRequestId":
+                    multiStep.setInitialRequestId(readString(parser));
+                    break;
+                case "initialSourceMediaType":
+                    multiStep.setInitialSourceMediaType(readString(parser));
+                    break;
+                case "transformsToBeDone":
+                    multiStep.setTransformsToBeDone(readList(parser));
+                    break;
+                case "routeGeneration":
+                    multiStep.setRouteGeneration(readPrimitiveLong(parser));
+                    break;
+                case "routeId":
+                    multiStep.setRouteId(readPrimitiveLong(parser));
+                    break;
+                case "stepIndex":
+                    multiStep.setStepIndex(readInt(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        endObject(parser);
+        return multiStep;
+    }
+
+    private static final class RequestView extends TransformRequestView
+    {
+        private static final byte[] INTERNAL_CONTEXT_FIELD = "\"internalContext\":".getBytes(UTF_8);
+
+        private final byte[] json;
+
+        // Numbers are read while scanning, as they may only be parsed on their own if followed by a space.
+        private Long sourceSize;
+        private int schema;
+
+        // The offsets of the values of the fields of the request, or -1 if they are not present. String fields are
+        // indexed by the field constants of TransformRequestView.
+        private final int[] strings = new int[STRING_FIELD_COUNT];
+        private int transformRequestOptions = -1;
+        private int internalContext = -1;
+
+        // The offsets of the start of the internalContext field's name and of the end of its value, or of the end
+        // of the request if there is no internalContext.
+        private int internalContextStart = -1;
+        private int internalContextEnd = -1;
+        private boolean empty = true;
+
+        private RequestView(final byte[] json) throws IOException
+        {
+            this.json = json;
+            Arrays.fill(strings, -1);
+            try (JsonParser parser = JSON_FACTORY.createParser(json))
+            {
+                if (parser.nextToken() != START_OBJECT)
+                {
+                    throw new JsonParseException(parser, "Expected an object but found " + parser.currentToken());
+                }
+                while (parser.nextToken() == FIELD_NAME)
+                {
+                    empty = false;
+                    final String name = parser.getCurrentName();
+                    final int nameStart = offset(parser);
+                    parser.nextToken();
+                    final int valueStart = offset(parser);
+                    parser.skipChildren();
+                    switch (name)
+                    {
+                        case "requestId":
+                            strings[REQUEST_ID] = valueStart;
+                            break;
+                        case "sourceReference":
+                            strings[SOURCE_REFERENCE] = valueStart;
+                            break;
+                        case "sourceMediaType":
+                            strings[SOURCE_MEDIA_TYPE] = valueStart;
+                            break;
+                        case "sourceSize":
+                            sourceSize = readLong(parser);
+                            break;
+                        case "sourceExtension":
+                            strings[SOURCE_EXTENSION] = valueStart;
+                            break;
+                        case "targetMediaType":
+                            strings[TARGET_MEDIA_TYPE] = valueStart;
+                            break;
+                        case "targetExtension":
+                            strings[TARGET_EXTENSION] = valueStart;
+                            break;
+                        case "clientData":
+                            strings[CLIENT_DATA] = valueStart;
+                            break;
+                        case "schema":
+                            schema = readInt(parser);
+                            break;
+                        case "transformRequestOptions":
+                            transformRequestOptions = valueStart;
+                            break;
+                        case "internalContext":
+                            internalContext = valueStart;
+                            internalContextStart = nameStart;
+                            // Values other than strings are fully read by skipChildren.
+                            internalContextEnd = (int) parser.getCurrentLocation().getByteOffset();
+                            break;
+                        default:
+                    }
+                }
+                endObject(parser);
+                if (internalContextStart < 0)
+                {
+                    internalContextStart = internalContextEnd = offset(parser);
+                }
+                if (parser.nextToken() != null)
+                {
+                    throw new JsonParseException(parser, "Unexpected content after the request");
+                }
+            }
+        }
+
+        private static int offset(final JsonParser parser)
+        {
+            return (int) parser.getTokenLocation().getByteOffset();
+        }
+
+        // Returns a parser positioned at the value at the given offset, or at a null value if it is not present.
+        private JsonParser parserAt(final int offset) throws IOException
+        {
+            final JsonParser parser = offset < 0 ? JSON_FACTORY.createParser("null") :
+                JSON_FACTORY.createParser(json, offset, json.length - offset);
+            parser.nextToken();
+            return parser;
+        }
+
+        @Override
+        String readStringField(final int field)
+        {
+            final int offset = strings[field];
+            if (offset < 0)
+            {
+                return null;
+            }
+            try (JsonParser parser = parserAt(offset))
+            {
+                return TransformMessageJsonCodec.readString(parser);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int getSchema()
+        {
+            return schema;
+        }
+
+        @Override
+        public Long getSourceSize()
+        {
+            return sourceSize;
+        }
+
+        // A missing field leaves the empty options of a new TransformRequest, as databinding does.
+        @Override
+        Map<String, String> readTransformRequestOptions()
+        {
+            if (transformRequestOptions < 0)
+            {
+                return new TransformRequestOptions();
+            }
+            try (JsonParser parser = parserAt(transformRequestOptions))
+            {
+                return readMap(parser);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        InternalContext readInternalContext()
+        {
+            try (JsonParser parser = parserAt(internalContext))
+            {
+                return TransformMessageJsonCodec.readInternalContext(parser);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        byte[] copyOriginal()
+        {
+            return json.clone();
+        }
+
+        // Replaces the internalContext field, or adds one at the end of the request.
+        @Override
+        byte[] encodeWith(final InternalContext context)
+        {
+            final boolean added = internalContext < 0;
+            final ByteArrayBuilder bytes = new ByteArrayBuilder(json.length);
+            bytes.write(json, 0, internalContextStart);
+            if (added && !empty)
+            {
+                bytes.write(',');
+            }
+            bytes.write(INTERNAL_CONTEXT_FIELD);
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(bytes))
+            {
+                write(context, generator);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            bytes.write(json, internalContextEnd, json.length - internalContextEnd);
+            return bytes.toByteArray();
+        }
+    }
+
+    // Returns true if the current token is null, or checks it is the start of an object.
+    private static boolean startObject(final JsonParser parser) throws IOException
+    {
+        final JsonToken token = parser.currentToken();
+        if (token == VALUE_NULL)
+        {
+            return true;
+        }
+        if (token != START_OBJECT)
+        {
+            throw new JsonParseException(parser, "Expected an object but found " + token);
+        }
+        return false;
+    }
+
+    private static void endObject(final JsonParser parser) throws IOException
+    {
+        if (parser.currentToken() != END_OBJECT)
+        {
+            throw new JsonParseException(parser, "Expected a field name but found " + parser.currentToken());
+        }
+    }
+
+    private static String readString(final JsonParser parser) throws IOException
+    {
+        final JsonToken token = parser.currentToken();
+        if (token == VALUE_NULL)
+        {
+            return null;
+        }
+        if (token == null || !token.isScalarValue())
+        {
+            throw new JsonParseException(parser, "Expected a string but found " + token);
+        }
+        return parser.getText();
+    }
+
+    private static Long readLong(final JsonParser parser) throws IOException
+    {
+        if (parser.currentToken() == VALUE_NULL)
+        {
+            return null;
+        }
+        return parser.currentToken().isNumeric() ? parser.getLongValue() : parseNumber(parser);
+    }
+
+    private static long readPrimitiveLong(final JsonParser parser) throws IOException
+    {
+        final Long value = readLong(parser);
+        return value == null ? 0 : value;
+    }
+
+    private static int readInt(final JsonParser parser) throws IOException
+    {
+        if (parser.currentToken() == VALUE_NULL)
+        {
+            return 0;
+        }
+        return parser.currentToken().isNumeric() ? parser.getIntValue() : Math.toIntExact(parseNumber(parser));
+    }
+
+    // Numbers may also be supplied as strings, as they are accepted by databinding.
+    private static long parseNumber(final JsonParser parser) throws IOException
+    {
+        final String text = readString(parser);
+        try
+        {
+            return Long.parseLong(text.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new JsonParseException(parser, "Expected a number but found \"" + text + '"', e);
+        }
+    }
+
+    private static Map<String, String> readMap(final JsonParser parser) throws IOException
+    {
+        if (startObject(parser))
+        {
+            return null;
+        }
+        final TransformRequestOptions.Builder builder = TransformRequestOptions.builder();
+        while (parser.nextToken() == FIELD_NAME)
+        {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            builder.with(name, readString(parser));
+        }
+        endObject(parser);
+        return builder.build();
+    }
+
+    private static List<String> readList(final JsonParser parser) throws IOException
+    {
+        final JsonToken token = parser.currentToken();
+        if (token == VALUE_NULL)
+        {
+            return null;
+        }
+        if (token != START_ARRAY)
+        {
+            throw new JsonParseException(parser, "Expected an array but found " + token);
+        }
+        final List<String> list = new ArrayList<>();
+        while (parser.nextToken() != END_ARRAY)
+        {
+            list.add(readString(parser));
+        }
+        return list;
+    }
+}
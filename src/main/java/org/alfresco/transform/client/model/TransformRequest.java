@@ -22,7 +22,6 @@
 package org.alfresco.transform.client.model;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
@@ -37,7 +36,7 @@ public class TransformRequest implements Serializable
     private String targetExtension;
     private String clientData;
     private int schema;
-    private Map<String, String> transformRequestOptions = new HashMap<>();
+    private Map<String, String> transformRequestOptions = new TransformRequestOptions();
     private InternalContext internalContext;
 
     // regions [Accessors]
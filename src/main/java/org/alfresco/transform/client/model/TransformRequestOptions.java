@@ -0,0 +1,423 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.model;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The {@code transformRequestOptions} of a {@link TransformRequest} or {@link InternalContext}. Most requests have
+ * only a few options, so they are held in a pair of arrays sorted by name rather than in a {@code HashMap}, and are
+ * iterated in that order. The hash code is cached until the options change.<p>
+ *
+ * The arrays are never changed in place. Each change replaces them, so a request and the internal context of each of
+ * its steps may hold separate instances over the same arrays rather than copying them, and a change to one is not seen
+ * by the others. Option names and values may be null. Like a {@code HashMap}, instances are not thread safe.<p>
+ *
+ * Java serialization writes the options as a {@code HashMap}, so that nodes without this class can read them.
+ */
+public final class TransformRequestOptions extends AbstractMap<String, String> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] NONE = new String[0];
+
+    private String[] names;
+    private String[] values;
+    private transient int hash;
+    private transient Set<Entry<String, String>> entrySet;
+
+    public TransformRequestOptions()
+    {
+        this(NONE, NONE);
+    }
+
+    private TransformRequestOptions(final String[] names, final String[] values)
+    {
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * @return the options as a {@code TransformRequestOptions}, which is the map itself if it already is one, a new
+     * instance holding a copy of them if not, or null if the map is null.
+     */
+    public static TransformRequestOptions of(final Map<String, String> options)
+    {
+        if (options == null || options instanceof TransformRequestOptions)
+        {
+            return (TransformRequestOptions) options;
+        }
+        final Builder builder = builder(options.size());
+        for (Entry<String, String> entry : options.entrySet())
+        {
+            builder.with(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    public static Builder builder()
+    {
+        return new Builder(4);
+    }
+
+    public static Builder builder(final int expectedSize)
+    {
+        return new Builder(expectedSize);
+    }
+
+    private static int compare(final String a, final String b)
+    {
+        if (a == null)
+        {
+            return b == null ? 0 : -1;
+        }
+        return b == null ? 1 : a.compareTo(b);
+    }
+
+    // Returns the index of the name, or -(insertion point + 1).
+    private static int indexOf(final String[] names, final int size, final String name)
+    {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high)
+        {
+            final int mid = (low + high) >>> 1;
+            final int comparison = compare(names[mid], name);
+            if (comparison < 0)
+            {
+                low = mid + 1;
+            }
+            else if (comparison > 0)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int indexOf(final Object name)
+    {
+        return name == null || name instanceof String ? indexOf(names, names.length, (String) name) : -1;
+    }
+
+    String name(final int index)
+    {
+        return names[index];
+    }
+
+    String value(final int index)
+    {
+        return values[index];
+    }
+
+    // Returns a separate instance over the same arrays, which either may change without affecting the other.
+    TransformRequestOptions copy()
+    {
+        return new TransformRequestOptions(names, values);
+    }
+
+    // Returns options that may change without affecting the given map, sharing its arrays if it already is one.
+    static TransformRequestOptions copyOf(final Map<String, String> options)
+    {
+        return options instanceof TransformRequestOptions ? ((TransformRequestOptions) options).copy() : of(options);
+    }
+
+    // Lets the internal context of a decoded request use the arrays of the request's options, rather than an equal copy.
+    static void share(final TransformRequest request)
+    {
+        final InternalContext context = request.getInternalContext();
+        if (context != null && context.getTransformRequestOptions() != null &&
+            request.getTransformRequestOptions() instanceof TransformRequestOptions &&
+            context.getTransformRequestOptions().equals(request.getTransformRequestOptions()))
+        {
+            context.setTransformRequestOptions(
+                ((TransformRequestOptions) request.getTransformRequestOptions()).copy());
+        }
+    }
+
+    private void replace(final String[] names, final String[] values)
+    {
+        this.names = names;
+        this.values = values;
+        hash = 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return names.length;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return names.length == 0;
+    }
+
+    @Override
+    public boolean containsKey(final Object name)
+    {
+        return indexOf(name) >= 0;
+    }
+
+    @Override
+    public String get(final Object name)
+    {
+        final int index = indexOf(name);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public String put(final String name, final String value)
+    {
+        int index = indexOf(names, names.length, name);
+        if (index >= 0)
+        {
+            final String previous = values[index];
+            final String[] newValues = values.clone();
+            newValues[index] = value;
+            replace(names, newValues);
+            return previous;
+        }
+        index = -(index + 1);
+        final String[] newNames = new String[names.length + 1];
+        final String[] newValues = new String[newNames.length];
+        System.arraycopy(names, 0, newNames, 0, index);
+        System.arraycopy(values, 0, newValues, 0, index);
+        newNames[index] = name;
+        newValues[index] = value;
+        System.arraycopy(names, index, newNames, index + 1, names.length - index);
+        System.arraycopy(values, index, newValues, index + 1, names.length - index);
+        replace(newNames, newValues);
+        return null;
+    }
+
+    @Override
+    public String remove(final Object name)
+    {
+        final int index = indexOf(name);
+        if (index < 0)
+        {
+            return null;
+        }
+        final String previous = values[index];
+        final String[] newNames = new String[names.length - 1];
+        final String[] newValues = new String[newNames.length];
+        System.arraycopy(names, 0, newNames, 0, index);
+        System.arraycopy(values, 0, newValues, 0, index);
+        System.arraycopy(names, index + 1, newNames, index, newNames.length - index);
+        System.arraycopy(values, index + 1, newValues, index, newNames.length - index);
+        replace(newNames, newValues);
+        return previous;
+    }
+
+    @Override
+    public void clear()
+    {
+        replace(NONE, NONE);
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet()
+    {
+        if (entrySet == null)
+        {
+            entrySet = new AbstractSet<Entry<String, String>>()
+            {
+                @Override
+                public Iterator<Entry<String, String>> iterator()
+                {
+                    return new Iterator<Entry<String, String>>()
+                    {
+                        private int index;
+                        private boolean removable;
+
+                        @Override
+                        public boolean hasNext()
+                        {
+                            return index < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, String> next()
+                        {
+                            if (index >= names.length)
+                            {
+                                throw new NoSuchElementException();
+                            }
+                            final Entry<String, String> entry = new OptionEntry(names[index], values[index]);
+                            index++;
+                            removable = true;
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove()
+                        {
+                            if (!removable)
+                            {
+                                throw new IllegalStateException();
+                            }
+                            TransformRequestOptions.this.remove(names[--index]);
+                            removable = false;
+                        }
+                    };
+                }
+
+                @Override
+                public int size()
+                {
+                    return names.length;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+        if (this == o)
+        {
+            return true;
+        }
+        if (o instanceof TransformRequestOptions)
+        {
+            final TransformRequestOptions that = (TransformRequestOptions) o;
+            return hashCode() == that.hashCode() && Arrays.equals(names, that.names) &&
+                   Arrays.equals(values, that.values);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int h = hash;
+        if (h == 0 && names.length != 0)
+        {
+            h = super.hashCode();
+            hash = h;
+        }
+        return h;
+    }
+
+    // Older nodes expect the HashMap that requests used to hold.
+    private Object writeReplace()
+    {
+        return new HashMap<>(this);
+    }
+
+    // An entry whose value may be set, which changes the option.
+    private final class OptionEntry extends SimpleEntry<String, String>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private OptionEntry(final String name, final String value)
+        {
+            super(name, value);
+        }
+
+        @Override
+        public String setValue(final String value)
+        {
+            super.setValue(value);
+            return put(getKey(), value);
+        }
+    }
+
+    /**
+     * Collects options in name order. Adding an option with the same name as an earlier one replaces its value. Each
+     * builder builds a single instance, after which it throws an {@link IllegalStateException}.
+     */
+    public static class Builder
+    {
+        private String[] names;
+        private String[] values;
+        private int size;
+
+        private Builder(final int expectedSize)
+        {
+            names = new String[Math.max(expectedSize, 1)];
+            values = new String[names.length];
+        }
+
+        public Builder with(final String name, final String value)
+        {
+            checkNotBuilt();
+            // Options are usually added in order, when they were written from another TransformRequestOptions.
+            int index = size == 0 || compare(names[size - 1], name) < 0 ? -(size + 1) : indexOf(names, size, name);
+            if (index >= 0)
+            {
+                values[index] = value;
+                return this;
+            }
+            index = -(index + 1);
+            if (size == names.length)
+            {
+                names = Arrays.copyOf(names, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(names, index, names, index + 1, size - index);
+            System.arraycopy(values, index, values, index + 1, size - index);
+            names[index] = name;
+            values[index] = value;
+            size++;
+            return this;
+        }
+
+        private void checkNotBuilt()
+        {
+            if (names == null)
+            {
+                throw new IllegalStateException("The builder has already built its options");
+            }
+        }
+
+        public TransformRequestOptions build()
+        {
+            checkNotBuilt();
+            if (size == 0)
+            {
+                names = values = null;
+                return new TransformRequestOptions();
+            }
+            final TransformRequestOptions options = size == names.length ?
+                new TransformRequestOptions(names, values) :
+                new TransformRequestOptions(Arrays.copyOf(names, size), Arrays.copyOf(values, size));
+            names = values = null;
+            return options;
+        }
+    }
+}
@@ -21,78 +21,147 @@
  */
 package org.alfresco.transform.client.model;
 
+import static java.util.Collections.singletonList;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.validation.Errors;
 import org.springframework.validation.Validator;
 
 /**
  * TransformRequestValidator
  * <p>
- * Transform request validator
+ * Transform request validator. The checks are made by {@link #check(TransformRequest)}, which returns a bit mask of
+ * the violated constraints without allocating, so that it may be called on every message. {@link #validate} only
+ * adds to the {@link Errors} when the mask is non-zero.
  */
 public class TransformRequestValidator implements Validator
 {
+    public static final int NULL_REQUEST = 1;
+    public static final int INVALID_REQUEST_ID = 1 << 1;
+    public static final int INVALID_SOURCE_REFERENCE = 1 << 2;
+    public static final int INVALID_SOURCE_SIZE = 1 << 3;
+    public static final int INVALID_SOURCE_MEDIA_TYPE = 1 << 4;
+    public static final int INVALID_TARGET_MEDIA_TYPE = 1 << 5;
+    public static final int INVALID_TARGET_EXTENSION = 1 << 6;
+    public static final int INVALID_CLIENT_DATA = 1 << 7;
+    public static final int INVALID_SCHEMA = 1 << 8;
+
+    // The field and message of each constraint, in bit order from INVALID_REQUEST_ID.
+    private static final String[] FIELDS = {
+        "requestId", "sourceReference", "sourceSize", "sourceMediaType", "targetMediaType",
+        "targetExtension", "clientData", "schema"};
+    private static final String[] MESSAGES = {
+        "requestId cannot be null or empty",
+        "sourceReference cannot be null or empty",
+        "sourceSize cannot be null or have its value smaller than 0",
+        "sourceMediaType cannot be null or empty",
+        "targetMediaType cannot be null or empty",
+        "targetExtension cannot be null or empty",
+        "clientData cannot be null or empty",
+        "schema cannot be less than 0"};
+
     @Override
     public boolean supports(Class<?> aClass)
     {
         return aClass.isAssignableFrom(TransformRequest.class);
     }
 
+    /**
+     * @return a bit mask of the constraints violated by the request, which is 0 if it is valid.
+     */
+    public static int check(final TransformRequest request)
+    {
+        if (request == null)
+        {
+            return NULL_REQUEST;
+        }
+        int violations = 0;
+        if (isNullOrEmpty(request.getRequestId()))
+        {
+            violations |= INVALID_REQUEST_ID;
+        }
+        if (isNullOrEmpty(request.getSourceReference()))
+        {
+            violations |= INVALID_SOURCE_REFERENCE;
+        }
+        final Long sourceSize = request.getSourceSize();
+        if (sourceSize == null || sourceSize <= 0)
+        {
+            violations |= INVALID_SOURCE_SIZE;
+        }
+        if (isNullOrEmpty(request.getSourceMediaType()))
+        {
+            violations |= INVALID_SOURCE_MEDIA_TYPE;
+        }
+        if (isNullOrEmpty(request.getTargetMediaType()))
+        {
+            violations |= INVALID_TARGET_MEDIA_TYPE;
+        }
+        if (isNullOrEmpty(request.getTargetExtension()))
+        {
+            violations |= INVALID_TARGET_EXTENSION;
+        }
+        if (isNullOrEmpty(request.getClientData()))
+        {
+            violations |= INVALID_CLIENT_DATA;
+        }
+        if (request.getSchema() < 0)
+        {
+            violations |= INVALID_SCHEMA;
+        }
+        return violations;
+    }
+
+    /**
+     * @return the messages of the constraints in a bit mask returned by {@link #check(TransformRequest)}, in the
+     * order they are added to the {@link Errors} by {@link #validate}.
+     */
+    public static List<String> describe(final int violations)
+    {
+        if ((violations & NULL_REQUEST) != 0)
+        {
+            return singletonList("request cannot be null");
+        }
+        final List<String> messages = new ArrayList<>(Integer.bitCount(violations));
+        for (int i = 0; i < MESSAGES.length; i++)
+        {
+            if ((violations & (INVALID_REQUEST_ID << i)) != 0)
+            {
+                messages.add(MESSAGES[i]);
+            }
+        }
+        return messages;
+    }
+
+    private static boolean isNullOrEmpty(final String value)
+    {
+        return value == null || value.isEmpty();
+    }
+
     @Override
     public void validate(Object o, Errors errors)
     {
         final TransformRequest request = (TransformRequest) o;
-
-        if (request == null)
+        final int violations = check(request);
+        if (violations == 0)
+        {
+            return;
+        }
+        if (violations == NULL_REQUEST)
         {
             errors.reject(null, "request cannot be null");
+            return;
         }
-        else
+        for (int i = 0; i < FIELDS.length; i++)
         {
-            String requestId = request.getRequestId();
-            if (requestId == null || requestId.isEmpty())
-            {
-                errors.rejectValue("requestId", null, "requestId cannot be null or empty");
-            }
-            String sourceReference = request.getSourceReference();
-            if (sourceReference == null || sourceReference.isEmpty())
-            {
-                errors.rejectValue("sourceReference", null,
-                    "sourceReference cannot be null or empty");
-            }
-            Long sourceSize = request.getSourceSize();
-            if (sourceSize == null || sourceSize <= 0)
-            {
-                errors.rejectValue("sourceSize", null,
-                    "sourceSize cannot be null or have its value smaller than 0");
-            }
-            String sourceMediaType = request.getSourceMediaType();
-            if (sourceMediaType == null || sourceMediaType.isEmpty())
-            {
-                errors.rejectValue("sourceMediaType", null,
-                    "sourceMediaType cannot be null or empty");
-            }
-            String targetMediaType = request.getTargetMediaType();
-            if (targetMediaType == null || targetMediaType.isEmpty())
-            {
-                errors.rejectValue("targetMediaType", null,
-                    "targetMediaType cannot be null or empty");
-            }
-            String targetExtension = request.getTargetExtension();
-            if (targetExtension == null || targetExtension.isEmpty())
-            {
-                errors.rejectValue("targetExtension", null,
-                    "targetExtension cannot be null or empty");
-            }
-            String clientData = request.getClientData();
-            if (clientData == null || clientData.isEmpty())
-            {
-                errors.rejectValue("clientData", String.valueOf(request.getSchema()),
-                    "clientData cannot be null or empty");
-            }
-            if (request.getSchema() < 0)
+            if ((violations & (INVALID_REQUEST_ID << i)) != 0)
             {
-                errors.rejectValue("schema", String.valueOf(request.getSchema()),
-                    "schema cannot be less than 0");
+                // The clientData and schema errors have always used the schema as their error code.
+                final String errorCode = (INVALID_REQUEST_ID << i) >= INVALID_CLIENT_DATA ?
+                    String.valueOf(request.getSchema()) : null;
+                errors.rejectValue(FIELDS[i], errorCode, MESSAGES[i]);
             }
         }
     }
@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.model;
+
+import java.util.Map;
+
+/**
+ * A read-mostly view of an encoded {@link TransformRequest}, for consumers such as routers that only look at a few of
+ * its fields. Each field is decoded from the underlying bytes when it is first asked for, and kept for later calls, so
+ * fields that are never read, such as a large {@code clientData}, cost no more than a scan over them.<p>
+ *
+ * Only the {@link InternalContext} may be replaced. {@link #toByteArray()} copies every other field byte for byte
+ * from the original message, so forwarding a request from one hop to the next does not decode it. Views are created
+ * by {@link TransformMessageCodec#viewRequest(byte[])} and {@link TransformMessageJsonCodec#viewRequest(byte[])}, and
+ * are not thread safe.
+ */
+public abstract class TransformRequestView
+{
+    // The string fields of a request, in the order they are encoded by TransformMessageCodec.
+    static final int REQUEST_ID = 0;
+    static final int SOURCE_REFERENCE = 1;
+    static final int SOURCE_MEDIA_TYPE = 2;
+    static final int SOURCE_EXTENSION = 3;
+    static final int TARGET_MEDIA_TYPE = 4;
+    static final int TARGET_EXTENSION = 5;
+    static final int CLIENT_DATA = 6;
+    static final int STRING_FIELD_COUNT = 7;
+
+    // The string fields decoded so far, and a bit for each field that has been decoded.
+    private final String[] strings = new String[STRING_FIELD_COUNT];
+    private int stringsRead;
+
+    private Map<String, String> transformRequestOptions;
+    private boolean transformRequestOptionsRead;
+
+    private InternalContext internalContext;
+    private boolean internalContextRead;
+    private boolean internalContextReplaced;
+
+    public abstract int getSchema();
+
+    public final String getRequestId()
+    {
+        return getString(REQUEST_ID);
+    }
+
+    public final String getSourceReference()
+    {
+        return getString(SOURCE_REFERENCE);
+    }
+
+    public final String getSourceMediaType()
+    {
+        return getString(SOURCE_MEDIA_TYPE);
+    }
+
+    public abstract Long getSourceSize();
+
+    public final String getSourceExtension()
+    {
+        return getString(SOURCE_EXTENSION);
+    }
+
+    public final String getTargetMediaType()
+    {
+        return getString(TARGET_MEDIA_TYPE);
+    }
+
+    public final String getTargetExtension()
+    {
+        return getString(TARGET_EXTENSION);
+    }
+
+    public final String getClientData()
+    {
+        return getString(CLIENT_DATA);
+    }
+
+    // Decodes a string field on the first call, and returns the same value from later calls.
+    private String getString(final int field)
+    {
+        if ((stringsRead & 1 << field) == 0)
+        {
+            strings[field] = readStringField(field);
+            stringsRead |= 1 << field;
+        }
+        return strings[field];
+    }
+
+    /**
+     * @return the options of the request, decoded on the first call. The same map is returned by later calls.
+     */
+    public final Map<String, String> getTransformRequestOptions()
+    {
+        if (!transformRequestOptionsRead)
+        {
+            transformRequestOptions = readTransformRequestOptions();
+            transformRequestOptionsRead = true;
+        }
+        return transformRequestOptions;
+    }
+
+    /**
+     * @return the internal context of the request, decoded on the first call. Changes made to it are only included
+     * by {@link #toByteArray()} once it has been passed to {@link #setInternalContext(InternalContext)}.
+     */
+    public final InternalContext getInternalContext()
+    {
+        if (!internalContextRead)
+        {
+            internalContext = readInternalContext();
+            internalContextRead = true;
+        }
+        return internalContext;
+    }
+
+    public final MultiStep getMultiStep()
+    {
+        final InternalContext context = getInternalContext();
+        return context == null ? null : context.getMultiStep();
+    }
+
+    public final void setInternalContext(final InternalContext internalContext)
+    {
+        this.internalContext = internalContext;
+        internalContextRead = true;
+        internalContextReplaced = true;
+    }
+
+    /**
+     * @return the request in the same form as the one viewed. If the internal context has not been replaced this is a
+     * copy of the original bytes, otherwise only the internal context is encoded.
+     */
+    public final byte[] toByteArray()
+    {
+        return internalContextReplaced ? encodeWith(internalContext) : copyOriginal();
+    }
+
+    /**
+     * @return a fully decoded request.
+     */
+    public TransformRequest toRequest()
+    {
+        final TransformRequest request = TransformRequest.builder()
+            .withRequestId(getRequestId())
+            .withSourceReference(getSourceReference())
+            .withSourceMediaType(getSourceMediaType())
+            .withSourceSize(getSourceSize())
+            .withSourceExtension(getSourceExtension())
+            .withTargetMediaType(getTargetMediaType())
+            .withTargetExtension(getTargetExtension())
+            .withClientData(getClientData())
+            .withSchema(getSchema())
+            .withTransformRequestOptions(TransformRequestOptions.copyOf(getTransformRequestOptions()))
+            .withInternalContext(getInternalContext())
+            .build();
+        TransformRequestOptions.share(request);
+        return request;
+    }
+
+    abstract String readStringField(int field);
+
+    abstract Map<String, String> readTransformRequestOptions();
+
+    abstract InternalContext readInternalContext();
+
+    abstract byte[] copyOriginal();
+
+    abstract byte[] encodeWith(InternalContext internalContext);
+}
@@ -21,17 +21,32 @@
  */
 package org.alfresco.transform.client.registry;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.emptySet;
+import static org.alfresco.transform.client.registry.TransformRegistryHelper.buildTransformList;
 import static org.alfresco.transform.client.registry.TransformRegistryHelper.retrieveTransformListBySize;
 import static org.alfresco.transform.client.registry.TransformRegistryHelper.lookupTransformOptions;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
+import org.alfresco.transform.client.model.MultiStep;
 import org.alfresco.transform.client.model.config.SupportedSourceAndTarget;
 import org.alfresco.transform.client.model.config.TransformConfig;
 import org.alfresco.transform.client.model.config.TransformOption;
+import org.alfresco.transform.client.model.config.TransformStep;
 import org.alfresco.transform.client.model.config.Transformer;
 
 /**
@@ -41,6 +56,21 @@ import org.alfresco.transform.client.model.config.Transformer;
  */
 public abstract class AbstractTransformRegistry implements TransformServiceRegistry
 {
+    // Batches with fewer queries than this are always answered by the calling thread.
+    static final int PARALLEL_BATCH_THRESHOLD = 1000;
+
+    // A route handle holds the source and target mimetype ids in HANDLE_ID_BITS each, followed by HANDLE_CHOICE_BITS
+    // for the transformer of each step.
+    private static final int HANDLE_ID_BITS = 20;
+    private static final int HANDLE_ID_MASK = (1 << HANDLE_ID_BITS) - 1;
+    private static final int HANDLE_CHOICE_BITS = 4;
+    private static final int HANDLE_CHOICE_MASK = (1 << HANDLE_CHOICE_BITS) - 1;
+    static final int MAX_HANDLE_STEPS = (Long.SIZE - 2 * HANDLE_ID_BITS) / HANDLE_CHOICE_BITS;
+
+    private volatile TransformRegistryMetrics metrics = TransformRegistryMetrics.NO_OP;
+
+    private volatile TransformLatencyTracker latencyTracker;
+
     /**
      * Logs an error message if there is an error in the configuration supplied to the
      * {@link #register(org.alfresco.transform.client.model.config.Transformer, Map, String, String)}.
@@ -56,8 +86,41 @@ public abstract class AbstractTransformRegistry implements TransformServiceRegis
      */
     public abstract TransformCache getData();
 
+    public TransformRegistryMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Sets the listener called at key points, such as after a lookup or registration, so that routing may be monitored.
+     *
+     * @param metrics the listener or {@code null} to stop monitoring.
+     */
+    public void setMetrics(final TransformRegistryMetrics metrics)
+    {
+        this.metrics = metrics == null ? TransformRegistryMetrics.NO_OP : metrics;
+    }
+
+    public TransformLatencyTracker getLatencyTracker()
+    {
+        return latencyTracker;
+    }
+
+    /**
+     * Turns on latency aware selection. When more than one transformer supports a request, the one the tracker
+     * predicts will be fastest is used, with priority as the tie-breaker. Selection only changes once the tracker has
+     * recent durations for the transformer that would normally be used. Off by default.
+     *
+     * @param latencyTracker to which transform durations are reported, or {@code null} to turn selection off.
+     */
+    public void setLatencyTracker(final TransformLatencyTracker latencyTracker)
+    {
+        this.latencyTracker = latencyTracker;
+    }
+
     /**
-     * Registers all the transformer in the transformConfig.
+     * Registers all the transformer in the transformConfig. None of them are visible to lookups until they have all
+     * been registered.
      *
      * @param transformConfig which contains the transformers and their options
      * @param baseUrl         where the config can be read from. Only needed when it is remote. Is null when local.
@@ -66,13 +129,108 @@ public abstract class AbstractTransformRegistry implements TransformServiceRegis
     protected void registerAll(final TransformConfig transformConfig, final String baseUrl,
         final String readFrom)
     {
-        transformConfig
-            .getTransformers()
-            .forEach(t -> register(t, transformConfig.getTransformOptions(), baseUrl, readFrom));
+        final long start = System.nanoTime();
+        final TransformCache data = getData();
+        data.beginRegistration();
+        try
+        {
+            transformConfig
+                .getTransformers()
+                .forEach(t -> register(t, transformConfig.getTransformOptions(), baseUrl, readFrom));
+        }
+        finally
+        {
+            endRegistration(data, start);
+        }
+    }
+
+    /**
+     * Registers all the transformer in the transformConfig, working out their transforms on the threads of the given
+     * pool. The result is the same as {@link #registerAll(TransformConfig, String, String)}, including the order of
+     * transformers with the same priority, but {@link #register(Transformer, Map, String, String)} is not called, so
+     * should not have been overridden. {@link #logError(String)} may be called on any of the pool's threads.
+     *
+     * @param transformConfig which contains the transformers and their options
+     * @param baseUrl         where the config can be read from. Only needed when it is remote. Is null when local.
+     * @param readFrom        debug message for log messages, indicating what type of config was read.
+     * @param pool            used to split up the work.
+     */
+    protected void registerAll(final TransformConfig transformConfig, final String baseUrl,
+        final String readFrom, final ForkJoinPool pool)
+    {
+        final long start = System.nanoTime();
+        final TransformCache data = getData();
+        data.beginRegistration();
+        try
+        {
+            final Map<String, Set<TransformOption>> transformOptions = transformConfig.getTransformOptions();
+            final TransformBatch batch = pool.submit(() -> transformConfig
+                .getTransformers()
+                .parallelStream()
+                .collect(TransformBatch::new,
+                    (b, t) -> addTransforms(b, t, transformOptions, readFrom),
+                    TransformBatch::merge))
+                .join();
+            data.appendTransforms(batch);
+        }
+        finally
+        {
+            endRegistration(data, start);
+        }
+    }
+
+    /**
+     * Registers the transforms held in a snapshot file written by {@link #writeSnapshot(Path, long)}, as if the
+     * configs the snapshot was written from had been registered by {@link #registerAll(TransformConfig, String,
+     * String)}. The file is memory mapped, and as the transform options in it have already been resolved, no config
+     * needs to be fetched or parsed. None of the transforms are visible to lookups until they have all been registered.
+     *
+     * @param file              written by {@link #writeSnapshot(Path, long)}
+     * @param configFingerprint identifies the configs that would otherwise be registered, see
+     *                          {@link TransformRegistrySnapshot#fingerprint(String...)}
+     * @return {@code false} if nothing was registered because the file does not exist, was written from other configs
+     * (it has a different fingerprint) or by a different version of the format, or is damaged. The configs should then
+     * be registered as normal.
+     */
+    protected boolean registerSnapshot(final Path file, final long configFingerprint) throws IOException
+    {
+        final long start = System.nanoTime();
+        final TransformBatch batch = TransformRegistrySnapshot.read(file, configFingerprint);
+        if (batch == null)
+        {
+            return false;
+        }
+        final TransformCache data = getData();
+        data.beginRegistration();
+        try
+        {
+            data.appendTransforms(batch);
+        }
+        finally
+        {
+            endRegistration(data, start);
+        }
+        return true;
     }
 
     /**
-     * Registers a single transformer.
+     * Writes the registered transforms to a snapshot file, so that a registry may later be populated from it by
+     * {@link #registerSnapshot(Path, long)} rather than by registering its configs again, for example when a node is
+     * restarted. An existing file is replaced.
+     *
+     * @param file              to be written
+     * @param configFingerprint identifies the configs that were registered, see
+     *                          {@link TransformRegistrySnapshot#fingerprint(String...)}
+     * @throws IllegalStateException if a registration is in progress.
+     */
+    public void writeSnapshot(final Path file, final long configFingerprint) throws IOException
+    {
+        TransformRegistrySnapshot.write(getData(), configFingerprint, file);
+    }
+
+    /**
+     * Registers a single transformer. Its transforms become visible to lookups once it has been registered, unless
+     * it is being registered as part of {@link #registerAll(TransformConfig, String, String)}.
      *
      * @param transformer      to be registered
      * @param transformOptions all the transform options
@@ -83,10 +241,60 @@ public abstract class AbstractTransformRegistry implements TransformServiceRegis
         final Map<String, Set<TransformOption>> transformOptions, final String baseUrl,
         final String readFrom)
     {
-        getData().incrementTransformerCount();
+        final long start = System.nanoTime();
+        final TransformCache data = getData();
+        // The batch is appended in a single step, so there is no need to start a registration.
+        final TransformBatch batch = new TransformBatch();
+        addTransforms(batch, transformer, transformOptions, readFrom);
+        data.appendTransforms(batch);
+        registrationCompleted(data, start);
+    }
+
+    /**
+     * Applies changes to the registered transformers, without having to register them all again. The removed
+     * transformers, and any already registered with the same name as one in the transformConfig, are unregistered
+     * before the transformers in the transformConfig are registered. A changed transformer is therefore treated as the
+     * most recently registered one when choosing between transformers of the same priority. None of the changes are
+     * visible to lookups until they have all been made. Transform lists cached for rendition names are only discarded
+     * if the source and target mimetypes they were built for are affected.
+     *
+     * @param transformConfig         which contains the added and changed transformers and their options
+     * @param removedTransformerNames names of transformers to be unregistered
+     * @param baseUrl                 where the config can be read from. Only needed when it is remote. Is null when
+     *                                local.
+     * @param readFrom                debug message for log messages, indicating what type of config was read.
+     */
+    public void registerDelta(final TransformConfig transformConfig,
+        final Collection<String> removedTransformerNames, final String baseUrl, final String readFrom)
+    {
+        final long start = System.nanoTime();
+        final TransformCache data = getData();
+        data.beginRegistration();
+        try
+        {
+            removedTransformerNames.forEach(data::removeTransformer);
+            transformConfig
+                .getTransformers()
+                .forEach(t -> data.removeTransformer(t.getTransformerName()));
+            final TransformBatch batch = new TransformBatch();
+            transformConfig
+                .getTransformers()
+                .forEach(t -> addTransforms(batch, t, transformConfig.getTransformOptions(), readFrom));
+            data.appendTransforms(batch);
+        }
+        finally
+        {
+            endRegistration(data, start);
+        }
+    }
+
+    private void addTransforms(final TransformBatch batch, final Transformer transformer,
+        final Map<String, Set<TransformOption>> transformOptions, final String readFrom)
+    {
+        batch.addTransformer(transformer.getTransformerName());
         transformer
             .getSupportedSourceAndTargetList()
-            .forEach(e -> getData().appendTransform(e.getSourceMediaType(), e.getTargetMediaType(),
+            .forEach(e -> batch.add(e.getSourceMediaType(), e.getTargetMediaType(),
                 new SupportedTransform(
                     transformer.getTransformerName(),
                     lookupTransformOptions(transformer.getTransformOptions(), transformOptions,
@@ -95,6 +303,21 @@ public abstract class AbstractTransformRegistry implements TransformServiceRegis
                     e.getPriority())));
     }
 
+    private void endRegistration(final TransformCache data, final long start)
+    {
+        data.endRegistration();
+        registrationCompleted(data, start);
+    }
+
+    private void registrationCompleted(final TransformCache data, final long start)
+    {
+        if (!data.isRegistrationInProgress())
+        {
+            metrics.registrationCompleted(System.nanoTime() - start, data.getTransformerCount(),
+                data.getTransformCount());
+        }
+    }
+
     /**
      * Works out the name of the transformer (might not map to an actual transformer) that will be used to transform
      * content of a given source mimetype and size into a target mimetype given a list of actual transform option names
@@ -114,23 +337,364 @@ public abstract class AbstractTransformRegistry implements TransformServiceRegis
         final String targetMimetype, final Map<String, String> actualOptions,
         final String renditionName)
     {
-        return retrieveTransformListBySize(getData(), sourceMimetype, targetMimetype, actualOptions,
-            renditionName)
-            .stream()
-            .filter(t -> t.getMaxSourceSizeBytes() == -1 ||
-                         t.getMaxSourceSizeBytes() >= sourceSizeInBytes)
-            .findFirst()
-            .map(SupportedTransform::getName)
-            .orElse(null);
+        final TransformRegistryMetrics metrics = this.metrics;
+        final long start = metrics == TransformRegistryMetrics.NO_OP ? 0 : System.nanoTime();
+        final String transformerName =
+            !isPossible(sourceMimetype, sourceSizeInBytes, targetMimetype) ? null :
+            retrieveTransformListBySize(getData(), sourceMimetype, targetMimetype, actualOptions,
+                renditionName, metrics).findTransformerName(sourceSizeInBytes, latencyTracker);
+        if (metrics != TransformRegistryMetrics.NO_OP)
+        {
+            lookupCompleted(metrics, start, transformerName != null, sourceMimetype, targetMimetype);
+        }
+        return transformerName;
     }
 
     @Override
     public long findMaxSize(final String sourceMimetype, final String targetMimetype,
         final Map<String, String> actualOptions, final String renditionName)
     {
-        final List<SupportedTransform> supportedTransforms = retrieveTransformListBySize(getData(),
-            sourceMimetype, targetMimetype, actualOptions, renditionName);
-        return supportedTransforms.isEmpty() ? 0 :
-               supportedTransforms.get(supportedTransforms.size() - 1).getMaxSourceSizeBytes();
+        final TransformRegistryMetrics metrics = this.metrics;
+        final long start = metrics == TransformRegistryMetrics.NO_OP ? 0 : System.nanoTime();
+        final long maxSize =
+            !isPossible(sourceMimetype, -1L, targetMimetype) ? 0L :
+            retrieveTransformListBySize(getData(), sourceMimetype, targetMimetype, actualOptions,
+                renditionName, metrics).getMaxSourceSizeBytes();
+        if (metrics != TransformRegistryMetrics.NO_OP)
+        {
+            lookupCompleted(metrics, start, maxSize != 0, sourceMimetype, targetMimetype);
+        }
+        return maxSize;
+    }
+
+    @Override
+    public boolean isSupported(final String sourceMimetype, final long sourceSizeInBytes,
+        final String targetMimetype, final Map<String, String> actualOptions,
+        final String renditionName)
+    {
+        final TransformRegistryMetrics metrics = this.metrics;
+        final long start = metrics == TransformRegistryMetrics.NO_OP ? 0 : System.nanoTime();
+        // As the default implementation, but recording whether the size is supported rather than any size.
+        boolean supported = false;
+        if (isPossible(sourceMimetype, sourceSizeInBytes, targetMimetype))
+        {
+            final long maxSize = retrieveTransformListBySize(getData(), sourceMimetype, targetMimetype,
+                actualOptions, renditionName, metrics).getMaxSourceSizeBytes();
+            supported = maxSize != 0 && (maxSize == -1L || maxSize >= sourceSizeInBytes);
+        }
+        if (metrics != TransformRegistryMetrics.NO_OP)
+        {
+            lookupCompleted(metrics, start, supported, sourceMimetype, targetMimetype);
+        }
+        return supported;
+    }
+
+    // Returns false if no transform from the source to the target supports the size, whatever the options, without
+    // looking at the options or any transform list cached for the rendition name. Only depends on the mimetypes and
+    // size, so is checked before the cache. Not used if a mimetype is null, so that the normal error is reported.
+    private boolean isPossible(final String sourceMimetype, final long sourceSizeInBytes,
+        final String targetMimetype)
+    {
+        if (sourceMimetype == null || targetMimetype == null)
+        {
+            return true;
+        }
+        final TransformTable table = getData().getTransformTable();
+        return table.isPossible(table.mimetypeId(sourceMimetype), table.mimetypeId(targetMimetype),
+            sourceSizeInBytes);
+    }
+
+    private static void lookupCompleted(final TransformRegistryMetrics metrics, final long start,
+        final boolean supported, final String sourceMimetype, final String targetMimetype)
+    {
+        metrics.lookupCompleted(System.nanoTime() - start);
+        if (!supported)
+        {
+            metrics.unsupported(sourceMimetype, targetMimetype);
+        }
+    }
+
+    /**
+     * Finds a sequence of transformers that together transform content of a given source mimetype and size into a
+     * target mimetype, for use when no single transformer supports the pair. Only transformers that may be used
+     * without any transform options are considered. The route with the fewest steps is used, and then the one with the
+     * highest priority transformers. Intermediate content is assumed to be no larger than the source, so each step must
+     * support the source size, and steps that do not are avoided. Routes are planned once for each registered snapshot
+     * of the transforms, and only planned again for a source that is too large for one of those steps. The route is
+     * given a handle if possible (see {@link TransformRoute#hasHandle()}).
+     *
+     * @param sourceMimetype    the mimetype of the source content
+     * @param sourceSizeInBytes the size in bytes of the source content. Ignored if negative.
+     * @param targetMimetype    the mimetype of the target
+     * @return the route, which may have a single step, or {@code null} if there is no route with steps that support
+     * the source size.
+     */
+    public TransformRoute findRoute(final String sourceMimetype, final long sourceSizeInBytes,
+        final String targetMimetype)
+    {
+        final TransformTable table = getData().getTransformTable();
+        final int sourceId = table.mimetypeId(sourceMimetype);
+        final int targetId = table.mimetypeId(targetMimetype);
+        final int[] plannedRoute = table.retrievePlannedRoute(sourceId, targetId);
+        if (plannedRoute == null)
+        {
+            return null;
+        }
+        final boolean sizeSupported = table.isRouteSizeSupported(plannedRoute, sourceSizeInBytes);
+        final int[] route = sizeSupported ? plannedRoute : table.planRoute(sourceId, targetId, sourceSizeInBytes);
+        if (route == null)
+        {
+            return null;
+        }
+
+        // The handle packs the source and target ids, and the index of the transformer used by each step among those
+        // that could be used, so that the same route may be rebuilt without repeating the size or latency selection.
+        // A route planned for the size has no handle, as a handle is always rebuilt from the planned route.
+        boolean packed = sizeSupported && route.length - 1 <= MAX_HANDLE_STEPS && sourceId <= HANDLE_ID_MASK &&
+                         targetId <= HANDLE_ID_MASK;
+        long routeId = sourceId | ((long) targetId << HANDLE_ID_BITS);
+        final List<TransformStep> steps = new ArrayList<>(route.length - 1);
+        for (int i = 1; i < route.length; i++)
+        {
+            final String stepTargetMimetype = table.mimetype(route[i]);
+            final TransformListBySize transformList = buildTransformList(table, table.mimetype(route[i - 1]),
+                stepTargetMimetype, emptyMap());
+            final String transformerName = transformList.findTransformerName(sourceSizeInBytes, latencyTracker);
+            if (transformerName == null)
+            {
+                return null;
+            }
+            steps.add(new TransformStep(transformerName, stepTargetMimetype));
+
+            final int choice = transformList.candidateIndex(transformerName);
+            if (choice < 0 || choice > HANDLE_CHOICE_MASK)
+            {
+                packed = false;
+            }
+            else if (packed)
+            {
+                routeId |= (long) choice << handleChoiceShift(i - 1);
+            }
+        }
+        return packed ? new TransformRoute(steps, table.generation(), routeId) : new TransformRoute(steps);
+    }
+
+    private static int handleChoiceShift(final int step)
+    {
+        return 2 * HANDLE_ID_BITS + step * HANDLE_CHOICE_BITS;
+    }
+
+    /**
+     * Finds a route from the handle of a route returned by {@link #findRoute(String, long, String)}, possibly by
+     * another node.
+     *
+     * @param generation the {@link TransformRoute#getGeneration()} of the route
+     * @param routeId    the {@link TransformRoute#getRouteId()} of the route
+     * @return the route, or {@code null} if the generation is not the same as the current snapshot of the transforms,
+     * as the handle may then refer to different mimetypes and transformers.
+     */
+    public TransformRoute findRoute(final long generation, final long routeId)
+    {
+        final TransformTable table = getData().getTransformTable();
+        if (generation == 0 || generation != table.generation())
+        {
+            return null;
+        }
+        final int sourceId = (int) (routeId & HANDLE_ID_MASK);
+        final int targetId = (int) ((routeId >>> HANDLE_ID_BITS) & HANDLE_ID_MASK);
+        if (sourceId >= table.mimetypeCount() || targetId >= table.mimetypeCount())
+        {
+            return null;
+        }
+        final int[] route = table.retrievePlannedRoute(sourceId, targetId);
+        if (route == null || route.length - 1 > MAX_HANDLE_STEPS)
+        {
+            return null;
+        }
+
+        final List<TransformStep> steps = new ArrayList<>(route.length - 1);
+        for (int i = 1; i < route.length; i++)
+        {
+            final String stepTargetMimetype = table.mimetype(route[i]);
+            final TransformListBySize transformList = buildTransformList(table, table.mimetype(route[i - 1]),
+                stepTargetMimetype, emptyMap());
+            final int choice = (int) ((routeId >>> handleChoiceShift(i - 1)) & HANDLE_CHOICE_MASK);
+            if (choice >= transformList.candidateCount())
+            {
+                return null;
+            }
+            steps.add(new TransformStep(transformList.candidateName(choice), stepTargetMimetype));
+        }
+        return new TransformRoute(steps, generation, routeId);
+    }
+
+    /**
+     * Returns the steps of a multi-step transform that are still to be done, after the
+     * {@link MultiStep#getStepIndex() stepIndex} steps already done. The route handle is used if it was issued by a
+     * registry of the same generation as this one, so no strings need to be parsed. Otherwise the explicit
+     * {@link MultiStep#getTransformsToBeDone() transformsToBeDone} list is used.
+     *
+     * @param multiStep of the transform
+     * @return the steps, which may be empty if all have been done, or {@code null} if they cannot be worked out
+     * because the handle was issued by a different generation and there is no explicit list.
+     */
+    public List<TransformStep> findRemainingSteps(final MultiStep multiStep)
+    {
+        final int stepIndex = multiStep.getStepIndex();
+        if (multiStep.hasRouteHandle())
+        {
+            final TransformRoute route = findRoute(multiStep.getRouteGeneration(), multiStep.getRouteId());
+            if (route != null)
+            {
+                final List<TransformStep> steps = route.getSteps();
+                return stepIndex > steps.size() ? null : steps.subList(stepIndex, steps.size());
+            }
+        }
+
+        final List<String> transformsToBeDone = multiStep.getTransformsToBeDone();
+        if (transformsToBeDone == null || stepIndex > transformsToBeDone.size() ||
+            (transformsToBeDone.isEmpty() && multiStep.hasRouteHandle()))
+        {
+            return null;
+        }
+        final List<TransformStep> steps = new ArrayList<>(transformsToBeDone.size() - stepIndex);
+        for (String transform : transformsToBeDone.subList(stepIndex, transformsToBeDone.size()))
+        {
+            final int i = transform.indexOf(TransformRoute.STEP_SEPARATOR);
+            steps.add(i < 0
+                      ? new TransformStep(transform, null)
+                      : new TransformStep(transform.substring(0, i), transform.substring(i + 1)));
+        }
+        return steps;
+    }
+
+    @Override
+    public List<TransformQueryResult> findTransformers(final List<TransformQuery> queries)
+    {
+        return findTransformers(queries, null);
+    }
+
+    /**
+     * Answers a batch of queries. Queries that share the same source and target mimetypes, actual option names and
+     * rendition name (which are all that determine the transform list) are grouped, so the transform list is only
+     * looked up once per group. Only the source size differs between the queries of a group.
+     */
+    @Override
+    public List<TransformQueryResult> findTransformers(final List<TransformQuery> queries,
+        final Executor executor)
+    {
+        final Map<QueryGroupKey, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++)
+        {
+            groups.computeIfAbsent(new QueryGroupKey(queries.get(i)), k -> new ArrayList<>()).add(i);
+        }
+
+        final TransformCache data = getData();
+        final TransformLatencyTracker latencyTracker = this.latencyTracker;
+        final TransformRegistryMetrics metrics = this.metrics;
+        final TransformQueryResult[] results = new TransformQueryResult[queries.size()];
+        final List<List<Integer>> groupList = new ArrayList<>(groups.values());
+        if (executor == null || queries.size() < PARALLEL_BATCH_THRESHOLD || groupList.size() < 2)
+        {
+            findTransformers(data, latencyTracker, metrics, queries, groupList, results);
+        }
+        else
+        {
+            final int chunkCount = Math.min(groupList.size(),
+                Math.max(2, queries.size() / PARALLEL_BATCH_THRESHOLD));
+            final int chunkSize = (groupList.size() + chunkCount - 1) / chunkCount;
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int from = 0; from < groupList.size(); from += chunkSize)
+            {
+                final List<List<Integer>> chunk = groupList.subList(from,
+                    Math.min(groupList.size(), from + chunkSize));
+                futures.add(CompletableFuture.runAsync(
+                    () -> findTransformers(data, latencyTracker, metrics, queries, chunk, results), executor));
+            }
+            try
+            {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            }
+            catch (CompletionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return asList(results);
+    }
+
+    // Each query is recorded as a lookup, taking an equal share of the time spent on its group.
+    private static void findTransformers(final TransformCache data,
+        final TransformLatencyTracker latencyTracker, final TransformRegistryMetrics metrics,
+        final List<TransformQuery> queries, final List<List<Integer>> groups, final TransformQueryResult[] results)
+    {
+        for (List<Integer> group : groups)
+        {
+            final long start = metrics == TransformRegistryMetrics.NO_OP ? 0 : System.nanoTime();
+            final TransformQuery first = queries.get(group.get(0));
+            final TransformListBySize supportedTransforms = retrieveTransformListBySize(data,
+                first.getSourceMimetype(), first.getTargetMimetype(), first.getActualOptions(),
+                first.getRenditionName(), metrics);
+            final long maxSize = supportedTransforms.getMaxSourceSizeBytes();
+            for (int i : group)
+            {
+                final long sourceSizeInBytes = queries.get(i).getSourceSizeInBytes();
+                results[i] = new TransformQueryResult(
+                    supportedTransforms.findTransformerName(sourceSizeInBytes, latencyTracker), maxSize,
+                    sourceSizeInBytes);
+            }
+            if (metrics != TransformRegistryMetrics.NO_OP)
+            {
+                final long durationNanos = (System.nanoTime() - start) / group.size();
+                for (int i : group)
+                {
+                    metrics.lookupCompleted(durationNanos);
+                    if (results[i].getTransformerName() == null)
+                    {
+                        metrics.unsupported(first.getSourceMimetype(), first.getTargetMimetype());
+                    }
+                }
+            }
+        }
+    }
+
+    // Identifies queries that will have the same transform list.
+    private static final class QueryGroupKey
+    {
+        private final String sourceMimetype;
+        private final String targetMimetype;
+        private final Set<String> optionNames;
+        private final String renditionName;
+
+        private QueryGroupKey(final TransformQuery query)
+        {
+            final Map<String, String> actualOptions = query.getActualOptions();
+            sourceMimetype = query.getSourceMimetype();
+            targetMimetype = query.getTargetMimetype();
+            optionNames = actualOptions == null ? emptySet() : actualOptions.keySet();
+            renditionName = query.getRenditionName();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            QueryGroupKey that = (QueryGroupKey) o;
+            return Objects.equals(sourceMimetype, that.sourceMimetype) &&
+                   Objects.equals(targetMimetype, that.targetMimetype) &&
+                   Objects.equals(optionNames, that.optionNames) &&
+                   Objects.equals(renditionName, that.renditionName);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(sourceMimetype, targetMimetype, optionNames, renditionName);
+        }
     }
 }
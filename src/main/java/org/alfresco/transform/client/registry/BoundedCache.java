@@ -0,0 +1,272 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * A size bounded, thread safe cache, used by {@link TransformCache} to hold the transform lists it has worked out for
+ * rendition names. Entries are spread over a number of independently locked stripes, each of which applies the
+ * {@link EvictionPolicy} to its share of the entries.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class BoundedCache<K, V>
+{
+    // The proportion of a segmented LRU stripe's entries that may be protected.
+    private static final double PROTECTED_RATIO = 0.8;
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_ENTRIES_PER_STRIPE = 64;
+
+    private final Stripe[] stripes;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder totalLoadTimeNanos = new LongAdder();
+
+    BoundedCache(final int maximumSize, final EvictionPolicy evictionPolicy)
+    {
+        if (maximumSize <= 0)
+        {
+            throw new IllegalArgumentException("maximumSize must be greater than 0");
+        }
+        final int stripeCount = Math.max(1,
+            Math.min(MAX_STRIPES, maximumSize / MIN_ENTRIES_PER_STRIPE));
+        // Stripe is an inner class of a generic class, so an array of it can only be created with wildcards.
+        @SuppressWarnings("unchecked")
+        final Stripe[] stripes = (Stripe[]) new BoundedCache<?, ?>.Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++)
+        {
+            // Spread any remainder over the first stripes, so the total is the maximumSize.
+            final int capacity = maximumSize / stripeCount + (i < maximumSize % stripeCount ? 1 : 0);
+            final int protectedCapacity = evictionPolicy == EvictionPolicy.SEGMENTED_LRU
+                                          ? (int) (capacity * PROTECTED_RATIO) : 0;
+            stripes[i] = new Stripe(capacity, protectedCapacity);
+        }
+        this.stripes = stripes;
+    }
+
+    /**
+     * @return the cached value or {@code null} if there is none. Counted as a hit or a miss.
+     */
+    V get(final K key)
+    {
+        final V value = stripe(key).get(key);
+        (value == null ? missCount : hitCount).increment();
+        return value;
+    }
+
+    /**
+     * @return the cached value or {@code null} if there is none or it is no longer {@code valid}, in which case it is
+     * removed. Counted as a hit or a miss.
+     */
+    V get(final K key, final Predicate<? super V> valid)
+    {
+        final V value = stripe(key).get(key, valid);
+        (value == null ? missCount : hitCount).increment();
+        return value;
+    }
+
+    void put(final K key, final V value)
+    {
+        put(key, value, 0L);
+    }
+
+    /**
+     * Adds a value that took {@code loadTimeNanos} to work out after a miss.
+     */
+    void put(final K key, final V value, final long loadTimeNanos)
+    {
+        if (loadTimeNanos > 0)
+        {
+            loadCount.increment();
+            totalLoadTimeNanos.add(loadTimeNanos);
+        }
+        stripe(key).put(key, value);
+    }
+
+    void clear()
+    {
+        for (Stripe stripe : stripes)
+        {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * Replaces each value with the result of the function, or removes it if the result is {@code null}. Does not
+     * change the order in which entries will be evicted.
+     */
+    void replaceAll(final BiFunction<? super K, ? super V, ? extends V> function)
+    {
+        for (Stripe stripe : stripes)
+        {
+            stripe.replaceAll(function);
+        }
+    }
+
+    long size()
+    {
+        long size = 0;
+        for (Stripe stripe : stripes)
+        {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    CacheStats stats()
+    {
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(),
+            loadCount.sum(), totalLoadTimeNanos.sum(), size());
+    }
+
+    private Stripe stripe(final K key)
+    {
+        final int h = key.hashCode();
+        return stripes[((h ^ (h >>> 16)) & 0x7fffffff) % stripes.length];
+    }
+
+    private class Stripe
+    {
+        private final int capacity;
+        private final int protectedCapacity;
+
+        // New entries, and entries demoted from the protected segment. With a plain LRU policy, all entries are held
+        // here in access order.
+        private final LinkedHashMap<K, V> probation;
+        // Entries that have been used at least twice, in access order.
+        private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Stripe(final int capacity, final int protectedCapacity)
+        {
+            this.capacity = capacity;
+            this.protectedCapacity = protectedCapacity;
+            this.probation = new LinkedHashMap<>(16, 0.75f, protectedCapacity == 0);
+        }
+
+        private synchronized V get(final K key)
+        {
+            if (protectedCapacity == 0)
+            {
+                return probation.get(key);
+            }
+
+            V value = protectedSegment.get(key);
+            if (value == null)
+            {
+                value = probation.remove(key);
+                if (value != null)
+                {
+                    // Promote, which may push the least recently used protected entry back to probation.
+                    protectedSegment.put(key, value);
+                    if (protectedSegment.size() > protectedCapacity)
+                    {
+                        final Map.Entry<K, V> eldest = removeEldest(protectedSegment);
+                        probation.put(eldest.getKey(), eldest.getValue());
+                    }
+                }
+            }
+            return value;
+        }
+
+        private synchronized V get(final K key, final Predicate<? super V> valid)
+        {
+            final V value = get(key);
+            if (value != null && !valid.test(value))
+            {
+                probation.remove(key);
+                protectedSegment.remove(key);
+                return null;
+            }
+            return value;
+        }
+
+        private synchronized void put(final K key, final V value)
+        {
+            if (protectedSegment.containsKey(key))
+            {
+                protectedSegment.put(key, value);
+                return;
+            }
+
+            probation.put(key, value);
+            while (probation.size() + protectedSegment.size() > capacity)
+            {
+                removeEldest(probation.isEmpty() ? protectedSegment : probation);
+                evictionCount.increment();
+            }
+        }
+
+        private synchronized void clear()
+        {
+            probation.clear();
+            protectedSegment.clear();
+        }
+
+        private synchronized void replaceAll(final BiFunction<? super K, ? super V, ? extends V> function)
+        {
+            replaceAll(probation, function);
+            replaceAll(protectedSegment, function);
+        }
+
+        private void replaceAll(final LinkedHashMap<K, V> segment,
+            final BiFunction<? super K, ? super V, ? extends V> function)
+        {
+            final Iterator<Map.Entry<K, V>> iterator = segment.entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                final Map.Entry<K, V> entry = iterator.next();
+                final V value = function.apply(entry.getKey(), entry.getValue());
+                if (value == null)
+                {
+                    iterator.remove();
+                }
+                else
+                {
+                    entry.setValue(value);
+                }
+            }
+        }
+
+        private synchronized int size()
+        {
+            return probation.size() + protectedSegment.size();
+        }
+
+        private Map.Entry<K, V> removeEldest(final LinkedHashMap<K, V> segment)
+        {
+            final Iterator<Map.Entry<K, V>> iterator = segment.entrySet().iterator();
+            final Map.Entry<K, V> eldest = iterator.next();
+            iterator.remove();
+            return eldest;
+        }
+    }
+}
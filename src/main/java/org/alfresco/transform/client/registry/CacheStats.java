@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+/**
+ * Immutable snapshot of the statistics gathered by the rendition cache of a {@link TransformCache}.
+ */
+public final class CacheStats
+{
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long loadCount;
+    private final long totalLoadTimeNanos;
+    private final long size;
+
+    CacheStats(long hitCount, long missCount, long evictionCount, long loadCount,
+        long totalLoadTimeNanos, long size)
+    {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.loadCount = loadCount;
+        this.totalLoadTimeNanos = totalLoadTimeNanos;
+        this.size = size;
+    }
+
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+
+    public long getMissCount()
+    {
+        return missCount;
+    }
+
+    public double getHitRate()
+    {
+        final long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public long getEvictionCount()
+    {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of values loaded into the cache, after a miss.
+     */
+    public long getLoadCount()
+    {
+        return loadCount;
+    }
+
+    /**
+     * @return the total time spent loading values into the cache, after a miss.
+     */
+    public long getTotalLoadTimeNanos()
+    {
+        return totalLoadTimeNanos;
+    }
+
+    public double getAverageLoadTimeNanos()
+    {
+        return loadCount == 0 ? 0.0 : (double) totalLoadTimeNanos / loadCount;
+    }
+
+    /**
+     * @return the number of entries in the cache.
+     */
+    public long getSize()
+    {
+        return size;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CacheStats{" +
+               "hitCount=" + hitCount +
+               ", missCount=" + missCount +
+               ", evictionCount=" + evictionCount +
+               ", loadCount=" + loadCount +
+               ", totalLoadTimeNanos=" + totalLoadTimeNanos +
+               ", size=" + size +
+               '}';
+    }
+}
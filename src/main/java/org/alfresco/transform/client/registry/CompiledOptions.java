@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.transform.client.model.config.TransformOption;
+import org.alfresco.transform.client.model.config.TransformOptionGroup;
+import org.alfresco.transform.client.model.config.TransformOptionValue;
+
+/**
+ * The {@link OptionMatcher}s of the transforms held by a {@link TransformCache}, kept from one {@link TransformTable}
+ * to the next, so that publishing a table only compiles the transform options of newly registered transforms.<p/>
+ *
+ * Transforms from the same transformer normally share the same Set of options, so matchers are keyed on the identity
+ * of the Set. Option names keep the bit they were given when first seen, so a matcher compiled for an earlier table
+ * is still valid. Names are not reused once the transforms using them have been removed, but a request that
+ * supplies one is rejected just as if it were unknown. Not thread safe, so only used while building a table.
+ */
+final class CompiledOptions
+{
+    // Looks up the bit used for an option name. Only ever added to.
+    private final Map<String, Integer> optionIds = new HashMap<>();
+
+    // The matchers used by the last table to be built, and those used by the one being built.
+    private Map<Set<TransformOption>, OptionMatcher> matchers = new IdentityHashMap<>();
+    private Map<Set<TransformOption>, OptionMatcher> used = new IdentityHashMap<>();
+
+    /**
+     * @return the matcher for the top level transform options of a transform, only compiling them if they were not
+     * used by the last table.
+     */
+    OptionMatcher matcher(final TransformOptionGroup transformOptions)
+    {
+        final Set<TransformOption> options = transformOptions.getTransformOptions();
+        OptionMatcher matcher = used.get(options);
+        if (matcher == null)
+        {
+            matcher = matchers.get(options);
+            if (matcher == null)
+            {
+                addOptionNames(transformOptions);
+                matcher = OptionMatcher.compile(transformOptions, optionIds, optionWords());
+            }
+            used.put(options, matcher);
+        }
+        return matcher;
+    }
+
+    /**
+     * Completes the building of a table. Matchers it did not look up, including those of pairs it took unchanged from
+     * the previous table, are discarded.
+     *
+     * @return a copy of the option ids, for use by the table.
+     */
+    Map<String, Integer> tableBuilt()
+    {
+        matchers = used;
+        used = new IdentityHashMap<>();
+        return unmodifiableMap(new HashMap<>(optionIds));
+    }
+
+    /**
+     * @return the number of longs needed to hold a mask of all the option names seen so far.
+     */
+    int optionWords()
+    {
+        return Math.max(1, (optionIds.size() + 63) >>> 6);
+    }
+
+    private void addOptionNames(final TransformOptionGroup transformOptionGroup)
+    {
+        final Set<TransformOption> optionList = transformOptionGroup.getTransformOptions();
+        if (optionList != null)
+        {
+            for (TransformOption transformOption : optionList)
+            {
+                if (transformOption instanceof TransformOptionGroup)
+                {
+                    addOptionNames((TransformOptionGroup) transformOption);
+                }
+                else
+                {
+                    optionIds.putIfAbsent(((TransformOptionValue) transformOption).getName(), optionIds.size());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+/**
+ * How a {@link TransformCache} chooses which cached transform lists to discard once it is full.
+ */
+public enum EvictionPolicy
+{
+    /**
+     * Discards the least recently used entry.
+     */
+    LRU,
+
+    /**
+     * Segmented LRU. New entries start in a probation segment and are only moved to a protected segment when they are
+     * used again, so a burst of entries that are used once (such as made up rendition names) cannot displace entries
+     * that are used repeatedly. Entries are discarded from the probation segment first.
+     */
+    SEGMENTED_LRU
+}
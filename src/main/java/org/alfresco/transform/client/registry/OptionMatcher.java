@@ -0,0 +1,234 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static java.util.Arrays.fill;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.transform.client.model.config.TransformOption;
+import org.alfresco.transform.client.model.config.TransformOptionGroup;
+import org.alfresco.transform.client.model.config.TransformOptionValue;
+
+/**
+ * A {@link SupportedTransform}'s tree of transform options, compiled into bit masks over the option names known to a
+ * {@link TransformTable}. Gives the same result as
+ * {@link TransformRegistryHelper#addToPossibleTransformOptions(Map, TransformOptionGroup, Boolean, Map)} followed by
+ * {@link TransformRegistryHelper#optionsMatch(Map, Map)}, but without creating a map for each transform.<p/>
+ *
+ * Groups are held in flattened arrays. The masks of group {@code g} occupy words {@code g * words} to
+ * {@code (g + 1) * words - 1}.
+ */
+final class OptionMatcher
+{
+    private final int words;
+
+    // Per group
+    private final boolean[] hasOptions;
+    private final boolean[] groupRequired;
+    private final boolean[] hasValues;
+    private final int[][] children;
+    private final long[] valueMasks;
+    private final long[] requiredValueMasks;
+
+    private OptionMatcher(final Compiler compiler)
+    {
+        final int groupCount = compiler.groups.size();
+        words = compiler.words;
+        hasOptions = new boolean[groupCount];
+        groupRequired = new boolean[groupCount];
+        hasValues = new boolean[groupCount];
+        children = new int[groupCount][];
+        valueMasks = new long[groupCount * words];
+        requiredValueMasks = new long[groupCount * words];
+
+        for (int g = 0; g < groupCount; g++)
+        {
+            final CompiledGroup group = compiler.groups.get(g);
+            hasOptions[g] = group.hasOptions;
+            groupRequired[g] = group.required;
+            hasValues[g] = group.hasValues;
+            children[g] = group.children.stream().mapToInt(Integer::intValue).toArray();
+            System.arraycopy(group.valueMask, 0, valueMasks, g * words, words);
+            System.arraycopy(group.requiredValueMask, 0, requiredValueMasks, g * words, words);
+        }
+    }
+
+    /**
+     * Compiles the top level transform options of a {@link SupportedTransform}.
+     *
+     * @param transformOptionGroup the top level group
+     * @param optionIds            the bit used for each option name. Must include all the names in the group.
+     * @param words                number of longs needed to hold a mask of all the option names.
+     */
+    static OptionMatcher compile(final TransformOptionGroup transformOptionGroup,
+        final Map<String, Integer> optionIds, final int words)
+    {
+        final Compiler compiler = new Compiler(optionIds, words);
+        compiler.compile(transformOptionGroup, true);
+        return new OptionMatcher(compiler);
+    }
+
+    /**
+     * Checks if the actual options are supported.
+     *
+     * @param actualMask   mask of the actual option names. May be longer than the masks of the matcher, if option
+     *                     names have been given bits since it was compiled.
+     * @param allowed      scratch mask used to gather the possible options. Overwritten.
+     * @param required     scratch mask used to gather the required options. Overwritten.
+     * @return {@code true} if all the required options are supplied and there are no extra ones.
+     */
+    boolean matches(final long[] actualMask, final long[] allowed, final long[] required)
+    {
+        fill(allowed, 0L);
+        fill(required, 0L);
+        addToPossibleTransformOptions(0, actualMask, allowed, required);
+
+        for (int w = 0; w < words; w++)
+        {
+            if ((required[w] & ~actualMask[w]) != 0 || (actualMask[w] & ~allowed[w]) != 0)
+            {
+                return false;
+            }
+        }
+        // None of the later names are known to this matcher, so none of them are allowed.
+        for (int w = words; w < actualMask.length; w++)
+        {
+            if (actualMask[w] != 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Mirrors TransformRegistryHelper.addToPossibleTransformOptions, including the order in which options from
+    // different groups overwrite each other's required status.
+    private boolean addToPossibleTransformOptions(final int g, final long[] actualMask,
+        final long[] allowed, final long[] required)
+    {
+        boolean added = false;
+        boolean optionSupplied = false;
+
+        if (hasOptions[g])
+        {
+            for (int child : children[g])
+            {
+                added = addToPossibleTransformOptions(child, actualMask, allowed, required);
+                optionSupplied |= added;
+            }
+
+            final int offset = g * words;
+            for (int w = 0; w < words && !optionSupplied; w++)
+            {
+                optionSupplied = (valueMasks[offset + w] & actualMask[w]) != 0;
+            }
+
+            if ((optionSupplied || groupRequired[g]) && hasValues[g])
+            {
+                added = true;
+                for (int w = 0; w < words; w++)
+                {
+                    final long valueMask = valueMasks[offset + w];
+                    allowed[w] |= valueMask;
+                    required[w] = (required[w] & ~valueMask) | requiredValueMasks[offset + w];
+                }
+            }
+        }
+
+        return added;
+    }
+
+    private static class CompiledGroup
+    {
+        private final List<Integer> children = new ArrayList<>();
+        private final long[] valueMask;
+        private final long[] requiredValueMask;
+        private boolean hasOptions;
+        private boolean required;
+        private boolean hasValues;
+
+        private CompiledGroup(final int words)
+        {
+            valueMask = new long[words];
+            requiredValueMask = new long[words];
+        }
+    }
+
+    private static class Compiler
+    {
+        private final List<CompiledGroup> groups = new ArrayList<>();
+        private final Map<String, Integer> optionIds;
+        private final int words;
+
+        private Compiler(final Map<String, Integer> optionIds, final int words)
+        {
+            this.optionIds = optionIds;
+            this.words = words;
+        }
+
+        private int compile(final TransformOptionGroup transformOptionGroup,
+            final boolean parentGroupRequired)
+        {
+            final int g = groups.size();
+            final CompiledGroup group = new CompiledGroup(words);
+            groups.add(group);
+
+            final Set<TransformOption> optionList = transformOptionGroup.getTransformOptions();
+            group.hasOptions = optionList != null && !optionList.isEmpty();
+            group.required = transformOptionGroup.isRequired() && parentGroupRequired;
+            if (group.hasOptions)
+            {
+                for (TransformOption transformOption : optionList)
+                {
+                    if (transformOption instanceof TransformOptionGroup)
+                    {
+                        group.children.add(compile((TransformOptionGroup) transformOption,
+                            group.required));
+                    }
+                    else
+                    {
+                        // Later options with the same name replace the required status of earlier ones, as they
+                        // would in the map built by TransformRegistryHelper.
+                        final TransformOptionValue option = (TransformOptionValue) transformOption;
+                        final int id = optionIds.get(option.getName());
+                        final long bit = 1L << id;
+                        group.hasValues = true;
+                        group.valueMask[id >>> 6] |= bit;
+                        if (option.isRequired())
+                        {
+                            group.requiredValueMask[id >>> 6] |= bit;
+                        }
+                        else
+                        {
+                            group.requiredValueMask[id >>> 6] &= ~bit;
+                        }
+                    }
+                }
+            }
+            return g;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static java.util.Arrays.copyOf;
+import static java.util.Arrays.fill;
+
+/**
+ * Plans routes through a {@link TransformTable}, treating its mimetypes as nodes and the source and target pairs of
+ * its transforms as edges. Only transforms that may be used without any transform options are considered, as options
+ * are specific to a transformer. If the size of the content is known, edges without a transform that supports it are
+ * not used, so a longer route is found if a step of the cheapest one is too small.<p/>
+ *
+ * The cheapest route has the fewest steps. Between routes with the same number of steps, the one with the lowest
+ * total priority (the priority of the highest priority transform of each step) is used. Ties go to the route found
+ * first, so the result is deterministic for a given table.
+ */
+final class RoutePlanner
+{
+    // Limits the length of routes, as each step adds a transform.
+    static final int MAX_STEPS = 4;
+
+    // Indicates there are no transforms from one mimetype to another.
+    static final int NO_EDGE = Integer.MAX_VALUE;
+
+    private RoutePlanner()
+    {
+    }
+
+    /**
+     * @param sourceSizeInBytes the size of the content. Steps that do not support it are not used. Ignored if negative.
+     * @return the mimetype ids along the cheapest route from the source to each target id, starting with the source,
+     * or {@code null} if the target cannot be reached.
+     */
+    static int[][] planRoutes(final TransformTable table, final int sourceId, final long sourceSizeInBytes)
+    {
+        final int mimetypeCount = table.mimetypeCount();
+        final int[] steps = new int[mimetypeCount];
+        final long[] cost = new long[mimetypeCount];
+        final int[] previous = new int[mimetypeCount];
+        fill(steps, -1);
+        steps[sourceId] = 0;
+
+        // Breadth first, one step at a time, so every mimetype is reached by a route with the fewest steps. Those
+        // first reached in this step may be reached through any mimetype reached in the previous one.
+        int[] frontier = {sourceId};
+        for (int step = 1; step <= MAX_STEPS && frontier.length > 0; step++)
+        {
+            int[] next = new int[8];
+            int nextCount = 0;
+            for (int fromId : frontier)
+            {
+                for (int pair = table.firstPair(fromId); pair < table.endPair(fromId); pair++)
+                {
+                    final int toId = table.pairTarget(pair);
+                    if (steps[toId] >= 0 && steps[toId] < step)
+                    {
+                        continue;
+                    }
+                    final int priority = table.pairPriority(pair);
+                    if (priority == NO_EDGE || !table.isRouteSizeSupported(pair, sourceSizeInBytes))
+                    {
+                        continue;
+                    }
+                    final long routeCost = cost[fromId] + priority;
+                    if (steps[toId] < 0)
+                    {
+                        steps[toId] = step;
+                        cost[toId] = routeCost;
+                        previous[toId] = fromId;
+                        if (nextCount == next.length)
+                        {
+                            next = copyOf(next, nextCount * 2);
+                        }
+                        next[nextCount++] = toId;
+                    }
+                    else if (routeCost < cost[toId])
+                    {
+                        cost[toId] = routeCost;
+                        previous[toId] = fromId;
+                    }
+                }
+            }
+            frontier = copyOf(next, nextCount);
+        }
+
+        final int[][] routes = new int[mimetypeCount][];
+        for (int targetId = 0; targetId < mimetypeCount; targetId++)
+        {
+            if (steps[targetId] > 0)
+            {
+                final int[] route = new int[steps[targetId] + 1];
+                for (int i = route.length - 1, id = targetId; i >= 0; i--, id = previous[id])
+                {
+                    route[i] = id;
+                }
+                routes[targetId] = route;
+            }
+        }
+        final int selfPair = table.pair(sourceId, sourceId);
+        if (selfPair >= 0 && table.pairPriority(selfPair) != NO_EDGE &&
+            table.isRouteSizeSupported(selfPair, sourceSizeInBytes))
+        {
+            routes[sourceId] = new int[]{sourceId, sourceId};
+        }
+        return routes;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.alfresco.transform.client.model.TransformRequest;
+import org.alfresco.transform.client.model.TransformRequestValidator;
+
+/**
+ * The outcome of admitting a {@link TransformRequest}: it is accepted if it passes the checks of
+ * {@link TransformRequestValidator#check(TransformRequest)} and a transformer supports it, and is otherwise rejected
+ * with the reasons. Batches of requests, such as a backlog drained from a queue, may be admitted in parallel by
+ * {@link #admitAll(TransformServiceRegistry, List, ForkJoinPool)}.
+ */
+public final class TransformAdmission
+{
+    /**
+     * A reason for rejection, in addition to those of {@link TransformRequestValidator}, given to valid requests that
+     * no registered transformer supports.
+     */
+    public static final int UNSUPPORTED = 1 << 30;
+
+    private final TransformRequest request;
+    private final String transformerName;
+    private final int reasons;
+
+    private TransformAdmission(final TransformRequest request, final String transformerName, final int reasons)
+    {
+        this.request = request;
+        this.transformerName = transformerName;
+        this.reasons = reasons;
+    }
+
+    /**
+     * Validates a request and, if it is valid, finds the transformer for its source and target media types, size and
+     * options. No rendition name is used.
+     */
+    public static TransformAdmission admit(final TransformServiceRegistry registry, final TransformRequest request)
+    {
+        final int violations = TransformRequestValidator.check(request);
+        if (violations != 0)
+        {
+            return new TransformAdmission(request, null, violations);
+        }
+        final Map<String, String> options = request.getTransformRequestOptions();
+        final String transformerName = registry.findTransformerName(request.getSourceMediaType(),
+            request.getSourceSize(), request.getTargetMediaType(), options, null);
+        return new TransformAdmission(request, transformerName, transformerName == null ? UNSUPPORTED : 0);
+    }
+
+    /**
+     * Admits each of a batch of requests on the calling thread.
+     */
+    public static Batch admitAll(final TransformServiceRegistry registry, final List<TransformRequest> requests)
+    {
+        final TransformAdmission[] admissions = new TransformAdmission[requests.size()];
+        for (int i = 0; i < admissions.length; i++)
+        {
+            admissions[i] = admit(registry, requests.get(i));
+        }
+        return new Batch(admissions);
+    }
+
+    /**
+     * Admits each of a batch of requests, splitting the work across the threads of the given pool. The result is the
+     * same as {@link #admitAll(TransformServiceRegistry, List)}, including the order of the requests.
+     *
+     * @param pool used to split up the work. {@link TransformServiceRegistry#findTransformerName} may be called on any
+     *             of its threads.
+     */
+    public static Batch admitAll(final TransformServiceRegistry registry, final List<TransformRequest> requests,
+        final ForkJoinPool pool)
+    {
+        return new Batch(pool.submit(() -> IntStream
+                .range(0, requests.size())
+                .parallel()
+                .mapToObj(i -> admit(registry, requests.get(i)))
+                .toArray(TransformAdmission[]::new))
+            .join());
+    }
+
+    public TransformRequest getRequest()
+    {
+        return request;
+    }
+
+    /**
+     * @return the name of the transformer to be used, or {@code null} if the request was rejected.
+     */
+    public String getTransformerName()
+    {
+        return transformerName;
+    }
+
+    /**
+     * @return a bit mask of the reasons the request was rejected, made up of the constants of
+     * {@link TransformRequestValidator} and {@link #UNSUPPORTED}, or 0 if it was accepted.
+     */
+    public int getReasons()
+    {
+        return reasons;
+    }
+
+    public boolean isAccepted()
+    {
+        return reasons == 0;
+    }
+
+    /**
+     * @return a message for each reason the request was rejected.
+     */
+    public List<String> getReasonMessages()
+    {
+        final List<String> messages = new ArrayList<>(TransformRequestValidator.describe(reasons & ~UNSUPPORTED));
+        if ((reasons & UNSUPPORTED) != 0)
+        {
+            messages.add("no transformer supports " + request.getSourceMediaType() + " to " +
+                         request.getTargetMediaType() + " with the requested size and options");
+        }
+        return messages;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TransformAdmission{" +
+               "requestId='" + (request == null ? null : request.getRequestId()) + '\'' +
+               ", transformerName='" + transformerName + '\'' +
+               ", reasons=" + getReasonMessages() +
+               '}';
+    }
+
+    /**
+     * The admissions of a batch of requests, split into those accepted and rejected, each in the order of the batch.
+     */
+    public static final class Batch
+    {
+        private final List<TransformAdmission> accepted = new ArrayList<>();
+        private final List<TransformAdmission> rejected = new ArrayList<>();
+
+        private Batch(final TransformAdmission[] admissions)
+        {
+            for (TransformAdmission admission : admissions)
+            {
+                (admission.isAccepted() ? accepted : rejected).add(admission);
+            }
+        }
+
+        public List<TransformAdmission> getAccepted()
+        {
+            return accepted;
+        }
+
+        public List<TransformAdmission> getRejected()
+        {
+            return rejected;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transforms from one or more transformers, gathered before being appended to a {@link TransformCache} in a single
+ * step. Not thread safe, but batches built on different threads may be merged, so that a config may be split across
+ * a pool of threads.
+ */
+class TransformBatch
+{
+    private final Map<String, Map<String, List<SupportedTransform>>> transforms = new HashMap<>();
+    private final List<String> transformerNames = new ArrayList<>();
+    private int transformCount = 0;
+    private int unnamedTransformerCount = 0;
+
+    void addTransformer(final String transformerName)
+    {
+        transformerNames.add(transformerName);
+    }
+
+    /**
+     * Adds to the count of transformers that are not tracked by name, such as those counted by
+     * {@link TransformCache#incrementTransformerCount()}.
+     */
+    void addUnnamedTransformers(final int count)
+    {
+        unnamedTransformerCount += count;
+    }
+
+    void add(final String sourceMimetype, final String targetMimetype,
+        final SupportedTransform transform)
+    {
+        transforms
+            .computeIfAbsent(sourceMimetype, k -> new HashMap<>())
+            .computeIfAbsent(targetMimetype, k -> new ArrayList<>())
+            .add(transform);
+        transformCount++;
+    }
+
+    /**
+     * Appends the transforms of a batch that follows this one, so the order in which transformers were added is
+     * preserved.
+     */
+    void merge(final TransformBatch following)
+    {
+        following.transforms.forEach((sourceMimetype, targets) ->
+        {
+            final Map<String, List<SupportedTransform>> mergedTargets =
+                transforms.computeIfAbsent(sourceMimetype, k -> new HashMap<>());
+            targets.forEach((targetMimetype, list) -> mergedTargets
+                .computeIfAbsent(targetMimetype, k -> new ArrayList<>(list.size()))
+                .addAll(list));
+        });
+        transformerNames.addAll(following.transformerNames);
+        transformCount += following.transformCount;
+        unnamedTransformerCount += following.unnamedTransformerCount;
+    }
+
+    Map<String, Map<String, List<SupportedTransform>>> getTransforms()
+    {
+        return transforms;
+    }
+
+    /**
+     * @return the names of the transformers added, in order. A name may appear more than once.
+     */
+    List<String> getTransformerNames()
+    {
+        return transformerNames;
+    }
+
+    int getTransformCount()
+    {
+        return transformCount;
+    }
+
+    int getUnnamedTransformerCount()
+    {
+        return unnamedTransformerCount;
+    }
+}
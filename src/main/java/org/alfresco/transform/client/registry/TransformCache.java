@@ -21,50 +21,308 @@
  */
 package org.alfresco.transform.client.registry;
 
-import static java.util.Collections.emptyMap;
-
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Objects;
+import java.util.Set;
 
+/**
+ * Holds the transforms registered with an {@link AbstractTransformRegistry}.<p/>
+ *
+ * Registration adds transforms to a private builder. Readers only ever see an immutable snapshot of the builder,
+ * which is replaced as a whole (a single volatile write) once a registration completes. As a result a lookup never
+ * sees a partially registered transformer or config, even if registration is taking place at the same time.
+ * Registrations may be nested (see {@link #beginRegistration()}), in which case the snapshot is only published when the
+ * outermost one completes.<p/>
+ *
+ * The snapshot is built by the registering thread when a change completes, while readers carry on using the previous
+ * one. Source and target pairs that have not changed are taken from the previous snapshot rather than built again, so
+ * registering transformers one at a time does not rebuild every pair for each of them.
+ */
 public class TransformCache
 {
-    // Looks up supported transform routes given source to target media types.
-    private final Map<String, Map<String, List<SupportedTransform>>> transforms =
-        new ConcurrentHashMap<>();
+    // Transforms added by registration, but not yet visible to readers. Guarded by this.
+    private final Map<String, Map<String, List<SupportedTransform>>> pendingTransforms = new HashMap<>();
+
+    // Looks up supported transform routes given source to target media types. An immutable snapshot of
+    // pendingTransforms, so reads do not need any locking.
+    private volatile TransformTable transforms = TransformTable.EMPTY;
 
     // Caches results in the ACS repository implementations which repeatedly make the same request.
     // Looks up a sorted list of transform routes, for a rendition (if the name is supplied) and the source
     // media type. Unlike a lookup on the transforms map above, processing of the transform options and priorities
-    // will have already been done if cached.
-    private final Map<String, Map<String, List<SupportedTransform>>> cachedSupportedTransformList =
-        new ConcurrentHashMap<>();
+    // will have already been done if cached. Bounded, as callers may supply any rendition name.
+    private final BoundedCache<RenditionKey, CachedTransformList> cachedSupportedTransformList;
+
+    // The matchers of the transform options of the published transforms, reused when the next table is built.
+    // Guarded by this.
+    private final CompiledOptions compiledOptions = new CompiledOptions();
+
+    // Guarded by this.
+    private int registrationDepth = 0;
+    private boolean modified = false;
+
+    // The source and target pairs of each transformer, so that it may be removed. Guarded by this.
+    private final Map<String, Map<String, Set<String>>> pairsByTransformer = new HashMap<>();
+    // The number of times each transformer name has been registered. Guarded by this.
+    private final Map<String, Integer> registrationsByTransformer = new HashMap<>();
+    // Source and target pairs changed since the snapshot was last published. Guarded by this.
+    private final Map<String, Set<String>> modifiedPairs = new HashMap<>();
 
     protected int transformerCount = 0;
     protected int transformCount = 0;
 
-    public void incrementTransformerCount()
+    public static final int DEFAULT_MAX_CACHED_TRANSFORM_LISTS = 10000;
+
+    public TransformCache()
+    {
+        this(DEFAULT_MAX_CACHED_TRANSFORM_LISTS, EvictionPolicy.SEGMENTED_LRU);
+    }
+
+    /**
+     * @param maxCachedTransformLists the maximum number of transform lists cached for rendition name and source
+     *                                mimetype pairs.
+     * @param evictionPolicy          used to discard cached transform lists once the maximum is reached.
+     */
+    public TransformCache(final int maxCachedTransformLists, final EvictionPolicy evictionPolicy)
+    {
+        cachedSupportedTransformList = new BoundedCache<>(maxCachedTransformLists, evictionPolicy);
+    }
+
+    public synchronized void incrementTransformerCount()
     {
         transformerCount++;
     }
 
-    public void appendTransform(final String sourceMimetype,
+    /**
+     * Starts a registration. Transforms appended before the matching {@link #endRegistration()} are not visible to
+     * readers until then.
+     */
+    public synchronized void beginRegistration()
+    {
+        registrationDepth++;
+    }
+
+    /**
+     * Ends a registration started by {@link #beginRegistration()}. If this is the outermost registration, the
+     * transforms appended since it started become visible to readers.
+     */
+    public synchronized void endRegistration()
+    {
+        if (registrationDepth <= 0)
+        {
+            throw new IllegalStateException("endRegistration called without a matching beginRegistration");
+        }
+        if (--registrationDepth == 0)
+        {
+            publish();
+        }
+    }
+
+    /**
+     * @return {@code true} if a registration has been started but not ended.
+     */
+    public synchronized boolean isRegistrationInProgress()
+    {
+        return registrationDepth > 0;
+    }
+
+    public synchronized int getTransformerCount()
+    {
+        return transformerCount;
+    }
+
+    public synchronized int getTransformCount()
+    {
+        return transformCount;
+    }
+
+    /**
+     * Appends a transform. If called outside a registration, it is visible to readers immediately.
+     */
+    public synchronized void appendTransform(final String sourceMimetype,
         final String targetMimetype, final SupportedTransform transform)
     {
-        transforms
-            .computeIfAbsent(sourceMimetype, k -> new ConcurrentHashMap<>())
+        pendingTransforms
+            .computeIfAbsent(sourceMimetype, k -> new HashMap<>())
             .computeIfAbsent(targetMimetype, k -> new ArrayList<>())
             .add(transform);
         transformCount++;
+        addPair(transform.getName(), sourceMimetype, targetMimetype);
+
+        if (registrationDepth == 0)
+        {
+            publish();
+        }
+    }
+
+    /**
+     * Appends all the transforms in a batch in a single step. If called outside a registration, they are visible to
+     * readers immediately.
+     */
+    synchronized void appendTransforms(final TransformBatch batch)
+    {
+        batch.getTransforms().forEach((sourceMimetype, targets) ->
+        {
+            final Map<String, List<SupportedTransform>> pendingTargets =
+                pendingTransforms.computeIfAbsent(sourceMimetype, k -> new HashMap<>());
+            targets.forEach((targetMimetype, list) ->
+            {
+                pendingTargets
+                    .computeIfAbsent(targetMimetype, k -> new ArrayList<>())
+                    .addAll(list);
+                list.forEach(t -> addPair(t.getName(), sourceMimetype, targetMimetype));
+            });
+        });
+        batch.getTransformerNames().forEach(name -> registrationsByTransformer.merge(name, 1, Integer::sum));
+        transformerCount += batch.getTransformerNames().size() + batch.getUnnamedTransformerCount();
+        transformCount += batch.getTransformCount();
+
+        if (registrationDepth == 0)
+        {
+            publish();
+        }
+    }
+
+    /**
+     * Removes all the transforms of the named transformer. If called outside a registration, the change is visible to
+     * readers immediately.
+     *
+     * @return {@code true} if the transformer had been registered.
+     */
+    synchronized boolean removeTransformer(final String transformerName)
+    {
+        final Map<String, Set<String>> pairs = pairsByTransformer.remove(transformerName);
+        final Integer registrations = registrationsByTransformer.remove(transformerName);
+        if (pairs != null)
+        {
+            pairs.forEach((sourceMimetype, targetMimetypes) ->
+            {
+                final Map<String, List<SupportedTransform>> pendingTargets = pendingTransforms.get(sourceMimetype);
+                targetMimetypes.forEach(targetMimetype ->
+                {
+                    final List<SupportedTransform> transformList = pendingTargets.get(targetMimetype);
+                    final int size = transformList.size();
+                    transformList.removeIf(t -> transformerName.equals(t.getName()));
+                    transformCount -= size - transformList.size();
+                    if (transformList.isEmpty())
+                    {
+                        pendingTargets.remove(targetMimetype);
+                    }
+                    markModified(sourceMimetype, targetMimetype);
+                });
+                if (pendingTargets.isEmpty())
+                {
+                    pendingTransforms.remove(sourceMimetype);
+                }
+            });
+        }
+        if (registrations != null)
+        {
+            transformerCount -= registrations;
+        }
+
+        if (registrationDepth == 0)
+        {
+            publish();
+        }
+        return pairs != null || registrations != null;
+    }
+
+    private void addPair(final String transformerName, final String sourceMimetype,
+        final String targetMimetype)
+    {
+        pairsByTransformer
+            .computeIfAbsent(transformerName, k -> new HashMap<>())
+            .computeIfAbsent(sourceMimetype, k -> new HashSet<>())
+            .add(targetMimetype);
+        markModified(sourceMimetype, targetMimetype);
+    }
+
+    private void markModified(final String sourceMimetype, final String targetMimetype)
+    {
+        modifiedPairs
+            .computeIfAbsent(sourceMimetype, k -> new HashSet<>())
+            .add(targetMimetype);
+        modified = true;
+    }
+
+    // Replaces the snapshot read by lookups with a copy of the pendingTransforms. Previously cached results were
+    // derived from the old snapshot, so are discarded, unless the source and target pair they were built for has not
+    // changed, in which case they would be built again in exactly the same way.
+    private void publish()
+    {
+        if (!modified)
+        {
+            return;
+        }
+
+        final TransformTable previous = transforms;
+        final TransformTable table = new TransformTable(pendingTransforms, compiledOptions, previous,
+            this::isModified);
+        transforms = table;
+        cachedSupportedTransformList.replaceAll((key, cached) ->
+            cached.table == table ? cached :
+            cached.table == previous && !isModified(key.sourceMimetype, cached.targetMimetype)
+            ? new CachedTransformList(table, cached.targetMimetype, cached.transformList)
+            : null);
+        modifiedPairs.clear();
+        modified = false;
+    }
+
+    // A null targetMimetype indicates it is not known, so any pair with the same source is a match.
+    private boolean isModified(final String sourceMimetype, final String targetMimetype)
+    {
+        final Set<String> targetMimetypes = modifiedPairs.get(sourceMimetype);
+        return targetMimetypes != null &&
+               (targetMimetype == null || targetMimetypes.contains(targetMimetype));
     }
 
+    /**
+     * @return a copy of the number of times each transformer has been registered by name.
+     */
+    synchronized Map<String, Integer> getRegistrationsByTransformer()
+    {
+        return new HashMap<>(registrationsByTransformer);
+    }
+
+    /**
+     * @return an unmodifiable map of target mimetypes to the transforms from the source mimetype, taken from the
+     * published transforms when called. Unlike earlier versions, it is not a live view, so is not changed by later
+     * registrations and may not be changed by the caller. Transforms are added with {@link #appendTransform}.
+     */
     public Map<String, List<SupportedTransform>> retrieveTransforms(final String sourceMimetype)
     {
-        return transforms.getOrDefault(sourceMimetype, emptyMap());
+        return getTransformTable().retrieveTransforms(sourceMimetype);
+    }
+
+    /**
+     * @return the unmodifiable list of transforms (in registration order) from the source to the target mimetype, or
+     * an empty list.
+     */
+    public List<SupportedTransform> retrieveTransforms(final String sourceMimetype,
+        final String targetMimetype)
+    {
+        return getTransformTable().retrieveTransforms(sourceMimetype, targetMimetype);
     }
 
+    /**
+     * @return an unmodifiable nested map of source to target mimetypes to transforms, taken from the published
+     * transforms when called. Unlike earlier versions, it is not a live view, so is not changed by later registrations
+     * and may not be changed by the caller.
+     */
     public Map<String, Map<String, List<SupportedTransform>>> getTransforms()
+    {
+        return getTransformTable().getTransforms();
+    }
+
+    /**
+     * @return the transforms registered by completed registrations.
+     */
+    TransformTable getTransformTable()
     {
         return transforms;
     }
@@ -72,17 +330,51 @@ public class TransformCache
     public void cache(final String transformerName, final String sourceMimetype,
         final List<SupportedTransform> transformListBySize)
     {
-        cachedSupportedTransformList
-            .get(transformerName)
-            .put(sourceMimetype, transformListBySize);
+        cache(transformerName, sourceMimetype, null, new TransformListBySize(transformListBySize),
+            getTransformTable(), 0L);
     }
 
+    /**
+     * Caches a transform list built from the given table, which may since have been replaced.
+     *
+     * @param targetMimetype the target the list was built for, or {@code null} if not known, in which case it is
+     *                       discarded when any transform from the source mimetype changes.
+     */
+    void cache(final String transformerName, final String sourceMimetype, final String targetMimetype,
+        final TransformListBySize transformListBySize, final TransformTable table,
+        final long loadTimeNanos)
+    {
+        cachedSupportedTransformList.put(new RenditionKey(transformerName, sourceMimetype),
+            new CachedTransformList(table, targetMimetype, transformListBySize), loadTimeNanos);
+    }
+
+    /**
+     * @return an immutable list of transforms in increasing supported size order, previously cached for the rendition
+     * name and source mimetype, or {@code null}. Unlike earlier versions, the list may not be changed in place. A
+     * different list may be cached with {@link #cache(String, String, List)} instead.
+     */
     public List<SupportedTransform> retrieveCached(final String transformerName,
         final String sourceMimetype)
     {
-        return cachedSupportedTransformList
-            .computeIfAbsent(transformerName, k -> new ConcurrentHashMap<>())
-            .get(sourceMimetype);
+        return retrieveCachedTransformList(transformerName, sourceMimetype);
+    }
+
+    TransformListBySize retrieveCachedTransformList(final String transformerName,
+        final String sourceMimetype)
+    {
+        final TransformTable table = getTransformTable();
+        // Lists built from an older table, added while a new one was being published, are discarded as misses.
+        final CachedTransformList cached = cachedSupportedTransformList.get(
+            new RenditionKey(transformerName, sourceMimetype), list -> list.table == table);
+        return cached == null ? null : cached.transformList;
+    }
+
+    /**
+     * @return the hit, miss, eviction and load time statistics of the transform lists cached for rendition names.
+     */
+    public CacheStats getCacheStats()
+    {
+        return cachedSupportedTransformList.stats();
     }
 
     @Override
@@ -92,5 +384,47 @@ public class TransformCache
                ? ""
                : "(transformers: " + transformerCount + " transforms: " + transformCount + ")";
     }
-}
 
+    private static final class RenditionKey
+    {
+        private final String renditionName;
+        private final String sourceMimetype;
+
+        private RenditionKey(final String renditionName, final String sourceMimetype)
+        {
+            this.renditionName = renditionName;
+            this.sourceMimetype = sourceMimetype;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RenditionKey that = (RenditionKey) o;
+            return Objects.equals(renditionName, that.renditionName) &&
+                   Objects.equals(sourceMimetype, that.sourceMimetype);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(renditionName, sourceMimetype);
+        }
+    }
+
+    private static final class CachedTransformList
+    {
+        private final TransformTable table;
+        private final String targetMimetype;
+        private final TransformListBySize transformList;
+
+        private CachedTransformList(final TransformTable table, final String targetMimetype,
+            final TransformListBySize transformList)
+        {
+            this.table = table;
+            this.targetMimetype = targetMimetype;
+            this.transformList = transformList;
+        }
+    }
+}
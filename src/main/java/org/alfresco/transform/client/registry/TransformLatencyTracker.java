@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records how long transformers take to complete transforms, so that an {@link AbstractTransformRegistry} may prefer
+ * the transformer predicted to be fastest (see {@link AbstractTransformRegistry#setLatencyTracker}). Durations are
+ * held as an exponentially weighted moving average for each transformer and source size bucket, where each bucket
+ * covers sizes up to the next power of two. An average that has not been updated within the maximum age is ignored,
+ * as the transformer may have been scaled or changed since.
+ */
+public class TransformLatencyTracker
+{
+    public static final double DEFAULT_WEIGHT = 0.2;
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(10);
+
+    private static final int BUCKETS = 64;
+
+    private final double weight;
+    private final long maxAgeMillis;
+    private final Clock clock;
+
+    private final Map<String, Average[]> averages = new ConcurrentHashMap<>();
+
+    public TransformLatencyTracker()
+    {
+        this(DEFAULT_WEIGHT, DEFAULT_MAX_AGE, Clock.systemUTC());
+    }
+
+    /**
+     * @param weight given to each new duration, between 0 (exclusive) and 1 (inclusive).
+     * @param maxAge after which an average that has not been updated is ignored.
+     * @param clock  used to work out the age of averages.
+     */
+    public TransformLatencyTracker(final double weight, final Duration maxAge, final Clock clock)
+    {
+        if (!(weight > 0 && weight <= 1))
+        {
+            throw new IllegalArgumentException("weight must be greater than 0 and no more than 1");
+        }
+        this.weight = weight;
+        this.maxAgeMillis = maxAge.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * Records the time taken by a transformer to transform content of the given size.
+     */
+    public void recordCompletion(final String transformerName, final long sourceSizeInBytes,
+        final long durationMillis)
+    {
+        final Average[] buckets = averages.computeIfAbsent(transformerName, k -> new Average[BUCKETS]);
+        final int bucket = bucket(sourceSizeInBytes);
+        Average average = buckets[bucket];
+        if (average == null)
+        {
+            synchronized (buckets)
+            {
+                average = buckets[bucket];
+                if (average == null)
+                {
+                    average = new Average();
+                    buckets[bucket] = average;
+                }
+            }
+        }
+        average.record(durationMillis, clock.millis(), weight);
+    }
+
+    /**
+     * @return the predicted duration in milliseconds of a transform of content of the given size, or
+     * {@link Double#NaN} if there is no recent information.
+     */
+    public double predictDuration(final String transformerName, final long sourceSizeInBytes)
+    {
+        final Average[] buckets = averages.get(transformerName);
+        if (buckets == null)
+        {
+            return Double.NaN;
+        }
+        // Might not see an Average just added by another thread, but it only holds a single duration.
+        final Average average = buckets[bucket(sourceSizeInBytes)];
+        return average == null ? Double.NaN : average.get(clock.millis() - maxAgeMillis);
+    }
+
+    // Sizes of 1 or less (including an unknown size of -1) are in bucket 0. Otherwise the bucket is the number of bits
+    // needed to hold the size minus one, so bucket n holds sizes greater than 2^(n-1) up to 2^n.
+    static int bucket(final long sourceSizeInBytes)
+    {
+        return sourceSizeInBytes <= 1 ? 0 : BUCKETS - Long.numberOfLeadingZeros(sourceSizeInBytes - 1);
+    }
+
+    private static final class Average
+    {
+        private double value;
+        private long updatedMillis;
+        private boolean set;
+
+        private synchronized void record(final long durationMillis, final long nowMillis,
+            final double weight)
+        {
+            value = set ? value + weight * (durationMillis - value) : durationMillis;
+            updatedMillis = nowMillis;
+            set = true;
+        }
+
+        private synchronized double get(final long oldestMillis)
+        {
+            return set && updatedMillis >= oldestMillis ? value : Double.NaN;
+        }
+    }
+}
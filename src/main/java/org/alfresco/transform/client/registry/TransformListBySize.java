@@ -0,0 +1,181 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of transforms in increasing supported size order, as returned by
+ * {@link TransformRegistryHelper#retrieveTransformListBySize}. The size limits are also held in a sorted array
+ * (with an unlimited size of -1 mapped to {@link Long#MAX_VALUE}), so that the transform to use for a given source
+ * size may be found with a binary search.
+ */
+final class TransformListBySize extends AbstractList<SupportedTransform> implements RandomAccess
+{
+    static final TransformListBySize EMPTY = new TransformListBySize(List.of());
+
+    private final SupportedTransform[] transforms;
+    private final long[] maxSourceSizes;
+
+    // All the transforms that support the actual options, including those discarded from the list because another
+    // transform with a larger or equal size limit has a higher priority. Used when selecting on latency.
+    private final SupportedTransform[] candidates;
+
+    TransformListBySize(final List<SupportedTransform> transformListBySize)
+    {
+        this(transformListBySize, transformListBySize);
+    }
+
+    TransformListBySize(final List<SupportedTransform> transformListBySize,
+        final List<SupportedTransform> candidates)
+    {
+        this.candidates = candidates.toArray(new SupportedTransform[0]);
+        transforms = transformListBySize.toArray(new SupportedTransform[0]);
+        maxSourceSizes = new long[transforms.length];
+        for (int i = 0; i < transforms.length; i++)
+        {
+            final long maxSourceSizeBytes = transforms[i].getMaxSourceSizeBytes();
+            maxSourceSizes[i] = maxSourceSizeBytes == -1 ? Long.MAX_VALUE : maxSourceSizeBytes;
+        }
+    }
+
+    /**
+     * @return the index of the first transform that supports the source size, or -1 if there is none.
+     */
+    int indexOf(final long sourceSizeInBytes)
+    {
+        int i = Arrays.binarySearch(maxSourceSizes, sourceSizeInBytes);
+        if (i < 0)
+        {
+            i = -i - 1;
+        }
+        else
+        {
+            // There should not be duplicate sizes, but if there are, use the first.
+            while (i > 0 && maxSourceSizes[i - 1] == sourceSizeInBytes)
+            {
+                i--;
+            }
+        }
+        return i < transforms.length ? i : -1;
+    }
+
+    /**
+     * @return the name of the transformer to use for the source size, or {@code null} if there is none.
+     */
+    String findTransformerName(final long sourceSizeInBytes)
+    {
+        final int i = indexOf(sourceSizeInBytes);
+        return i < 0 ? null : transforms[i].getName();
+    }
+
+    /**
+     * @return the name of the transformer to use for the source size, or {@code null} if there is none. If the tracker
+     * predicts durations for both the transformer that would normally be used and other transformers that support the
+     * size, the one predicted to be fastest is used, or if equal, the one with the highest priority.
+     */
+    String findTransformerName(final long sourceSizeInBytes, final TransformLatencyTracker tracker)
+    {
+        final int i = indexOf(sourceSizeInBytes);
+        if (i < 0 || tracker == null)
+        {
+            return i < 0 ? null : transforms[i].getName();
+        }
+
+        SupportedTransform selected = transforms[i];
+        double selectedDuration = tracker.predictDuration(selected.getName(), sourceSizeInBytes);
+        if (Double.isNaN(selectedDuration))
+        {
+            return selected.getName();
+        }
+        for (SupportedTransform candidate : candidates)
+        {
+            final long maxSourceSizeBytes = candidate.getMaxSourceSizeBytes();
+            if (candidate != selected &&
+                (maxSourceSizeBytes == -1 || maxSourceSizeBytes >= sourceSizeInBytes))
+            {
+                final double duration = tracker.predictDuration(candidate.getName(), sourceSizeInBytes);
+                if (duration < selectedDuration ||
+                    (duration == selectedDuration && candidate.getPriority() < selected.getPriority()))
+                {
+                    selected = candidate;
+                    selectedDuration = duration;
+                }
+            }
+        }
+        return selected.getName();
+    }
+
+    /**
+     * @return the number of transforms that support the actual options, whatever their size limit.
+     */
+    int candidateCount()
+    {
+        return candidates.length;
+    }
+
+    /**
+     * @return the name of the transformer of a candidate, by its index.
+     */
+    String candidateName(final int index)
+    {
+        return candidates[index].getName();
+    }
+
+    /**
+     * @return the index of the first candidate with the transformer name, or -1 if there is none.
+     */
+    int candidateIndex(final String transformerName)
+    {
+        for (int i = 0; i < candidates.length; i++)
+        {
+            if (transformerName.equals(candidates[i].getName()))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the largest supported source size. -1 if there is no limit and 0 if there are no transforms.
+     */
+    long getMaxSourceSizeBytes()
+    {
+        return transforms.length == 0 ? 0 : transforms[transforms.length - 1].getMaxSourceSizeBytes();
+    }
+
+    @Override
+    public SupportedTransform get(final int index)
+    {
+        return transforms[index];
+    }
+
+    @Override
+    public int size()
+    {
+        return transforms.length;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import java.util.Map;
+
+/**
+ * One of a batch of queries passed to {@link TransformServiceRegistry#findTransformers(java.util.List)}. Holds the
+ * same values that would otherwise be passed to {@link TransformServiceRegistry#findTransformerName}.
+ */
+public class TransformQuery
+{
+    private final String sourceMimetype;
+    private final long sourceSizeInBytes;
+    private final String targetMimetype;
+    private final Map<String, String> actualOptions;
+    private final String renditionName;
+
+    /**
+     * @param sourceMimetype    the mimetype of the source content
+     * @param sourceSizeInBytes the size in bytes of the source content. Ignored if negative.
+     * @param targetMimetype    the mimetype of the target
+     * @param actualOptions     the actual name value pairs available that could be passed to the Transform Service.
+     * @param renditionName     (optional) name for the set of options and target mimetype.
+     */
+    public TransformQuery(final String sourceMimetype, final long sourceSizeInBytes,
+        final String targetMimetype, final Map<String, String> actualOptions,
+        final String renditionName)
+    {
+        this.sourceMimetype = sourceMimetype;
+        this.sourceSizeInBytes = sourceSizeInBytes;
+        this.targetMimetype = targetMimetype;
+        this.actualOptions = actualOptions;
+        this.renditionName = renditionName;
+    }
+
+    public String getSourceMimetype()
+    {
+        return sourceMimetype;
+    }
+
+    public long getSourceSizeInBytes()
+    {
+        return sourceSizeInBytes;
+    }
+
+    public String getTargetMimetype()
+    {
+        return targetMimetype;
+    }
+
+    public Map<String, String> getActualOptions()
+    {
+        return actualOptions;
+    }
+
+    public String getRenditionName()
+    {
+        return renditionName;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TransformQuery{" +
+               "sourceMimetype='" + sourceMimetype + '\'' +
+               ", sourceSizeInBytes=" + sourceSizeInBytes +
+               ", targetMimetype='" + targetMimetype + '\'' +
+               ", actualOptions=" + actualOptions +
+               ", renditionName='" + renditionName + '\'' +
+               '}';
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import java.util.Objects;
+
+/**
+ * The result of a {@link TransformQuery}.
+ */
+public class TransformQueryResult
+{
+    private final String transformerName;
+    private final long maxSourceSizeBytes;
+    private final boolean supported;
+
+    public TransformQueryResult(final String transformerName, final long maxSourceSizeBytes,
+        final long sourceSizeInBytes)
+    {
+        this.transformerName = transformerName;
+        this.maxSourceSizeBytes = maxSourceSizeBytes;
+        this.supported = maxSourceSizeBytes != 0 &&
+                         (maxSourceSizeBytes == -1L || maxSourceSizeBytes >= sourceSizeInBytes);
+    }
+
+    /**
+     * @return the name of the transformer or {@code null} if there is no supported transformer. The same value as
+     * returned by {@link TransformServiceRegistry#findTransformerName}.
+     */
+    public String getTransformerName()
+    {
+        return transformerName;
+    }
+
+    /**
+     * @return the same value as returned by {@link TransformServiceRegistry#findMaxSize}.
+     */
+    public long getMaxSourceSizeBytes()
+    {
+        return maxSourceSizeBytes;
+    }
+
+    /**
+     * @return the same value as returned by {@link TransformServiceRegistry#isSupported}.
+     */
+    public boolean isSupported()
+    {
+        return supported;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TransformQueryResult that = (TransformQueryResult) o;
+        return maxSourceSizeBytes == that.maxSourceSizeBytes &&
+               supported == that.supported &&
+               Objects.equals(transformerName, that.transformerName);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(transformerName, maxSourceSizeBytes, supported);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TransformQueryResult{" +
+               "transformerName='" + transformerName + '\'' +
+               ", maxSourceSizeBytes=" + maxSourceSizeBytes +
+               ", supported=" + supported +
+               '}';
+    }
+}
@@ -21,14 +21,14 @@
  */
 package org.alfresco.transform.client.registry;
 
-import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
 import static java.util.Map.Entry;
 import static java.util.stream.Collectors.toMap;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -72,10 +72,19 @@ class TransformRegistryHelper
     }
 
     // Returns transformers in increasing supported size order, where lower priority transformers for the same size have
-    // been discarded.
-    static List<SupportedTransform> retrieveTransformListBySize(final TransformCache data,
+    // been discarded. The returned list may be shared with other callers, so must not be modified.
+    static TransformListBySize retrieveTransformListBySize(final TransformCache data,
         final String sourceMimetype, final String targetMimetype,
         Map<String, String> actualOptions, String transformerName)
+    {
+        return retrieveTransformListBySize(data, sourceMimetype, targetMimetype, actualOptions,
+            transformerName, TransformRegistryMetrics.NO_OP);
+    }
+
+    static TransformListBySize retrieveTransformListBySize(final TransformCache data,
+        final String sourceMimetype, final String targetMimetype,
+        Map<String, String> actualOptions, String transformerName,
+        final TransformRegistryMetrics metrics)
     {
         if (actualOptions == null)
         {
@@ -86,29 +95,37 @@ class TransformRegistryHelper
             transformerName = null;
         }
 
-        final List<SupportedTransform> cachedTransformList =
+        final TransformListBySize cachedTransformList =
             transformerName == null ? null :
-            data.retrieveCached(transformerName, sourceMimetype);
+            data.retrieveCachedTransformList(transformerName, sourceMimetype);
         if (cachedTransformList != null)
         {
+            metrics.cacheHit();
             return cachedTransformList;
         }
+        if (transformerName != null)
+        {
+            metrics.cacheMiss();
+        }
 
-        final List<SupportedTransform> builtTransformList = buildTransformList(data,
+        final long start = System.nanoTime();
+        final TransformTable table = data.getTransformTable();
+        final TransformListBySize builtTransformList = buildTransformList(table,
             sourceMimetype,
             targetMimetype,
             filterTimeout(actualOptions));
 
         if (transformerName != null)
         {
-            data.cache(transformerName, sourceMimetype, builtTransformList);
+            data.cache(transformerName, sourceMimetype, targetMimetype, builtTransformList, table,
+                System.nanoTime() - start);
         }
 
         return builtTransformList;
     }
 
-    private static List<SupportedTransform> buildTransformList(
-        final TransformCache data, final String sourceMimetype, final String targetMimetype,
+    static TransformListBySize buildTransformList(
+        final TransformTable table, final String sourceMimetype, final String targetMimetype,
         final Map<String, String> actualOptions)
     {
 
@@ -122,142 +139,92 @@ class TransformRegistryHelper
           throw new TransformException(400, "Null value provided for tragetMimetype, please provide a value");
         }
 
-        final Map<String, List<SupportedTransform>> targetMap = data.retrieveTransforms(
-            sourceMimetype);
-
-        final List<SupportedTransform> supportedTransformList = targetMap.getOrDefault(
-            targetMimetype, emptyList());
-
-        final List<SupportedTransform> transformListBySize = new ArrayList<>();
-
-        for (SupportedTransform supportedTransform : supportedTransformList)
+        final int sourceId = table.mimetypeId(sourceMimetype);
+        final int targetId = table.mimetypeId(targetMimetype);
+        final List<SupportedTransform> supportedTransformList = table.retrieveTransforms(sourceId,
+            targetId);
+        if (supportedTransformList.isEmpty())
         {
-            final Map<String, Boolean> possibleTransformOptions = gatherPossibleTransformOptions(
-                supportedTransform.getTransformOptions(), actualOptions);
+            return TransformListBySize.EMPTY;
+        }
 
-            if (optionsMatch(possibleTransformOptions, actualOptions))
-            {
-                addToSupportedTransformList(transformListBySize, supportedTransform);
-            }
+        // The actual options are turned into a mask once and then matched against the precompiled options of
+        // each transform.
+        final long[] actualMask = table.optionMask(actualOptions);
+        if (actualMask == null)
+        {
+            return TransformListBySize.EMPTY;
         }
-        return transformListBySize;
-    }
 
-    // Add newTransform to the transformListBySize in increasing size order and discards
-    // lower priority (numerically higher) transforms with a smaller or equal size.
-    private static void addToSupportedTransformList(
-        final List<SupportedTransform> transformListBySize,
-        final SupportedTransform newTransform)
-    {
-        if (transformListBySize.isEmpty())
+        // The list only depends on the source, target and the names of the actual options.
+        final TransformListBySize cachedTransformList = table.retrieveCachedTransformList(sourceId,
+            targetId, actualMask);
+        if (cachedTransformList != null)
         {
-            transformListBySize.add(newTransform);
+            return cachedTransformList;
         }
-        else
+
+        final List<SupportedTransform> matchingTransforms = new ArrayList<>();
+        final OptionMatcher[] optionMatchers = table.retrieveOptionMatchers(sourceId, targetId);
+        final long[] allowed = new long[table.optionWords()];
+        final long[] required = new long[table.optionWords()];
+
+        for (int i = 0; i < optionMatchers.length; i++)
         {
-            for (int i = 0; i < transformListBySize.size(); i++)
+            if (optionMatchers[i].matches(actualMask, allowed, required))
             {
-                final SupportedTransform existingTransform = transformListBySize.get(i);
-                final int compareMaxSize = compareMaxSize(newTransform.getMaxSourceSizeBytes(),
-                        existingTransform.getMaxSourceSizeBytes());
-                final int comparePriority = existingTransform.getPriority() - newTransform.getPriority();
-
-                if (compareMaxSize == 0)
-                {
-                    if (comparePriority == 0)
-                    {
-                        // If same priority and size limit, replace with the newer transform.
-                        // It is possibly a replacement in an extension.
-                        transformListBySize.set(i, newTransform);
-                        break;
-                    }
-                    else if (comparePriority > 0)
-                    {
-                        // Replace as newer one is higher priority and try to discard some existing ones.
-                        transformListBySize.set(i, newTransform);
-                        discardFromSupportedTransformList(transformListBySize, i);
-                        break;
-                    }
-                    else
-                    {
-                        // Ignore as lower priority
-                        break;
-                    }
-                }
-                else if (compareMaxSize < 0)
-                {
-                    if (comparePriority > 0)
-                    {
-                        // If higher priority insert and try to discard some existing ones.
-                        transformListBySize.add(i, newTransform);
-                        discardFromSupportedTransformList(transformListBySize, i);
-                        break;
-                    }
-                    else
-                    {
-                        // Ignore the newer one as its priority is lower or the same as one that has a higher size limit
-                        break;
-                    }
-                }
-                else // if (compareMaxSize > 0)
-                {
-                    if (comparePriority < 0)
-                    {
-                        if (i+1 < transformListBySize.size())
-                        {
-                            // Look at the next element as size is higher but the priority is lower.
-                            continue;
-                        }
-                        else
-                        {
-                            // Append to the list as the size is higher but the priority is lower.
-                            transformListBySize.add(newTransform);
-                            break;
-                        }
-                    }
-                    // Else same or better priority and higher size limit, so replace with the newer transform and try
-                    // to discard some existing ones.
-                    transformListBySize.set(i, newTransform);
-                    discardFromSupportedTransformList(transformListBySize, i);
-                    break;
-                }
+                matchingTransforms.add(supportedTransformList.get(i));
             }
         }
+
+        final TransformListBySize builtTransformList = new TransformListBySize(
+            buildTransformListBySize(matchingTransforms), matchingTransforms);
+        table.cacheTransformList(sourceId, targetId, actualMask, builtTransformList);
+        return builtTransformList;
     }
 
-    // Starting at i+1, try to remove transforms that will not be used.
-    private static void discardFromSupportedTransformList(List<SupportedTransform> transformListBySize, int i)
+    // Returns the transforms that will be used, in increasing size order. A transform is discarded if another one
+    // supports the same or a larger size with the same or a higher priority (numerically lower). If transforms have the
+    // same size limit and priority, the last one supplied is used, as it is possibly a replacement in an extension.
+    //
+    // Sorts by size limit (largest first), then priority (highest first), then newest first, so the first transform
+    // for each size limit is the only one that might be used. A single sweep then keeps it if it has a higher priority
+    // than all the transforms with a larger size limit.
+    static List<SupportedTransform> buildTransformListBySize(final List<SupportedTransform> transforms)
     {
-        SupportedTransform newTransform = transformListBySize.get(i++);
-        while (i < transformListBySize.size())
+        final int count = transforms.size();
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++)
         {
-            final SupportedTransform existingTransform = transformListBySize.get(i);
-            final int compareMaxSize = compareMaxSize(newTransform.getMaxSourceSizeBytes(),
-                    existingTransform.getMaxSourceSizeBytes());
-            final int comparePriority = existingTransform.getPriority() - newTransform.getPriority();
-
-            // Discard those with
-            // 1) the same priority but support a smaller size
-            // 2) those with a lower priority and a smaller size
-            if ((comparePriority == 0 && compareMaxSize >= 0) ||
-                (comparePriority > 0 && compareMaxSize >= 0))
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            final SupportedTransform transformA = transforms.get(a);
+            final SupportedTransform transformB = transforms.get(b);
+            int compare = compareMaxSize(transformB.getMaxSourceSizeBytes(),
+                transformA.getMaxSourceSizeBytes());
+            if (compare == 0)
             {
-                transformListBySize.remove(i);
+                compare = Integer.compare(transformA.getPriority(), transformB.getPriority());
             }
-            else
+            return compare == 0 ? Integer.compare(b, a) : compare;
+        });
+
+        final List<SupportedTransform> transformListBySize = new ArrayList<>();
+        SupportedTransform previous = null;
+        for (int i : order)
+        {
+            final SupportedTransform transform = transforms.get(i);
+            if (previous == null || (compareMaxSize(transform.getMaxSourceSizeBytes(),
+                previous.getMaxSourceSizeBytes()) != 0 &&
+                transform.getPriority() < transformListBySize.get(transformListBySize.size() - 1).getPriority()))
             {
-                break;
+                transformListBySize.add(transform);
             }
+            previous = transform;
         }
-    }
-
-    private static Map<String, Boolean> gatherPossibleTransformOptions(
-        final TransformOptionGroup transformOptionGroup, final Map<String, String> actualOptions)
-    {
-        final Map<String, Boolean> possibleTransformOptions = new HashMap<>();
-        addToPossibleTransformOptions(possibleTransformOptions, transformOptionGroup, true,
-            actualOptions);
-        return possibleTransformOptions;
+        Collections.reverse(transformListBySize);
+        return transformListBySize;
     }
 
     /**
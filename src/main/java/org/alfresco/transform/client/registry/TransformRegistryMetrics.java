@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+/**
+ * Optional listener, called by an {@link AbstractTransformRegistry} at key points, so that routing may be monitored.
+ * All methods do nothing by default, so implementations only need to override those they are interested in.<p/>
+ *
+ * Methods are called on the lookup path, so should be fast and should avoid allocating objects. Only primitive values
+ * and existing Strings are passed to them.
+ *
+ * @see AbstractTransformRegistry#setMetrics(TransformRegistryMetrics)
+ */
+public interface TransformRegistryMetrics
+{
+    /**
+     * Does nothing. The default.
+     */
+    TransformRegistryMetrics NO_OP = new TransformRegistryMetrics() {};
+
+    /**
+     * Called after {@code findTransformerName} or {@code findMaxSize} (and so {@code isSupported}) have worked out
+     * their result.
+     *
+     * @param durationNanos time taken by the lookup.
+     */
+    default void lookupCompleted(long durationNanos)
+    {
+    }
+
+    /**
+     * Called when a transform list is found in the cache for a rendition name.
+     */
+    default void cacheHit()
+    {
+    }
+
+    /**
+     * Called when a transform list is not found in the cache for a rendition name, so has to be worked out.
+     */
+    default void cacheMiss()
+    {
+    }
+
+    /**
+     * Called when a lookup finds no supported transformer.
+     *
+     * @param sourceMimetype the mimetype of the source content
+     * @param targetMimetype the mimetype of the target
+     */
+    default void unsupported(String sourceMimetype, String targetMimetype)
+    {
+    }
+
+    /**
+     * Called when a registration has completed and the registered transforms have become visible to lookups.
+     *
+     * @param durationNanos    time taken by the registration.
+     * @param transformerCount the total number of transformers now registered.
+     * @param transformCount   the total number of transforms (source and target pairs) now registered.
+     */
+    default void registrationCompleted(long durationNanos, long transformerCount, long transformCount)
+    {
+    }
+}
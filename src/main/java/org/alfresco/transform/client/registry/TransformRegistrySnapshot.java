@@ -0,0 +1,479 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+import org.alfresco.transform.client.model.config.TransformOption;
+import org.alfresco.transform.client.model.config.TransformOptionGroup;
+import org.alfresco.transform.client.model.config.TransformOptionValue;
+
+/**
+ * Reads and writes the transforms registered with a {@link TransformCache} as a versioned binary file, so that a node
+ * may be restarted without fetching, parsing and registering every config again.<p/>
+ *
+ * The file starts with a header holding a magic number, the {@link #FORMAT_VERSION}, a fingerprint of the configs the
+ * transforms were registered from, and the length and CRC32C of the body. The body is read through a memory mapped
+ * buffer. It holds each distinct string (transformer names, mimetypes and option names) once, then each distinct set
+ * of transform options, the number of times each transformer was registered, and finally the transforms of each source
+ * and target pair in registration order, which refer to the strings and option sets by index. The option sets are
+ * therefore already resolved, and transforms with equal options share a single set, so that the options of each set
+ * are only compiled once when the transforms are registered.<p/>
+ *
+ * The fingerprint is supplied by the caller (see {@link #fingerprint(String...)}), so that a stale file is detected
+ * without having to read the configs it was built from.
+ */
+public final class TransformRegistrySnapshot
+{
+    /**
+     * The version of the file layout. Files with a different version are ignored.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    // "ATRS"
+    private static final int MAGIC = 0x41545253;
+    private static final int HEADER_LENGTH = 24;
+
+    private static final byte OPTION_VALUE = 0;
+    private static final byte OPTION_GROUP = 1;
+
+    private TransformRegistrySnapshot()
+    {
+    }
+
+    /**
+     * Combines values that identify the configs a registry is built from, such as the text of each config or a version
+     * or ETag returned with it, into a fingerprint for use with {@link AbstractTransformRegistry#writeSnapshot(Path,
+     * long)}. The order of the values is significant.
+     */
+    public static long fingerprint(final String... values)
+    {
+        // 64 bit FNV-1a
+        long hash = 0xCBF29CE484222325L;
+        for (String value : values)
+        {
+            if (value != null)
+            {
+                for (int i = 0; i < value.length(); i++)
+                {
+                    hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+                }
+            }
+            // Outside the range of a char, so separates the values and distinguishes null from empty.
+            hash = (hash ^ (value == null ? 0x10000 : 0x10001)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the transforms last published by the cache. The file is written under a temporary name and then moved
+     * into place, so a reader never sees a partially written file.
+     *
+     * @throws IllegalStateException if a registration is in progress.
+     */
+    static void write(final TransformCache data, final long configFingerprint, final Path file)
+        throws IOException
+    {
+        final TransformTable table;
+        final Map<String, Integer> registrations;
+        final int transformerCount;
+        synchronized (data)
+        {
+            if (data.isRegistrationInProgress())
+            {
+                throw new IllegalStateException("A snapshot may not be written while a registration is in progress");
+            }
+            table = data.getTransformTable();
+            registrations = data.getRegistrationsByTransformer();
+            transformerCount = data.getTransformerCount();
+        }
+
+        final Body body = new Body();
+        body.writeRegistrations(registrations, transformerCount);
+        body.writeTransforms(table);
+        final byte[] bytes = body.toByteArray();
+
+        final CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putLong(configFingerprint);
+        header.putInt(bytes.length);
+        header.putInt((int) crc.getValue());
+
+        final Path target = file.toAbsolutePath();
+        final Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try
+        {
+            try (OutputStream out = Files.newOutputStream(temp))
+            {
+                out.write(header.array());
+                out.write(bytes);
+            }
+            try
+            {
+                Files.move(temp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp, target, REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reads the transforms from a file written by {@link #write(TransformCache, long, Path)}.
+     *
+     * @return the transforms, ready to be appended to a cache, or {@code null} if the file does not exist, has a
+     * different fingerprint or format version, or is damaged.
+     */
+    static TransformBatch read(final Path file, final long configFingerprint) throws IOException
+    {
+        if (!Files.isRegularFile(file))
+        {
+            return null;
+        }
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, READ))
+        {
+            final long size = channel.size();
+            if (size < HEADER_LENGTH || size > Integer.MAX_VALUE)
+            {
+                return null;
+            }
+            // The mapping remains valid once the channel has been closed.
+            buffer = channel.map(READ_ONLY, 0, size);
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION ||
+            buffer.getLong() != configFingerprint)
+        {
+            return null;
+        }
+        final int length = buffer.getInt();
+        final int checksum = buffer.getInt();
+        if (length != buffer.remaining())
+        {
+            return null;
+        }
+        final ByteBuffer body = buffer.slice();
+        final CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != checksum)
+        {
+            return null;
+        }
+
+        try
+        {
+            return new Reader(body).read();
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e)
+        {
+            // Only possible if the file was written by a faulty writer, as the checksum matched.
+            return null;
+        }
+    }
+
+    private static final class Body
+    {
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        private final DataOutputStream stringsOut = new DataOutputStream(strings);
+
+        // Equal Sets of options are written once, so they are shared once read, even if they were not before.
+        private final Map<Set<TransformOption>, Integer> optionSetIds = new HashMap<>();
+        // Avoids hashing the Sets that are already shared, as transforms from the same transformer normally are.
+        private final Map<Set<TransformOption>, Integer> knownOptionSetIds = new IdentityHashMap<>();
+        private final ByteArrayOutputStream optionSets = new ByteArrayOutputStream();
+        private final DataOutputStream optionSetsOut = new DataOutputStream(optionSets);
+
+        private final ByteArrayOutputStream rest = new ByteArrayOutputStream();
+        private final DataOutputStream restOut = new DataOutputStream(rest);
+
+        private void writeRegistrations(final Map<String, Integer> registrations, final int transformerCount)
+            throws IOException
+        {
+            int registered = 0;
+            restOut.writeInt(registrations.size());
+            for (Map.Entry<String, Integer> entry : registrations.entrySet())
+            {
+                restOut.writeInt(stringId(entry.getKey()));
+                restOut.writeInt(entry.getValue());
+                registered += entry.getValue();
+            }
+            restOut.writeInt(Math.max(0, transformerCount - registered));
+        }
+
+        private void writeTransforms(final TransformTable table) throws IOException
+        {
+            final int mimetypeCount = table.mimetypeCount();
+            int pairCount = 0;
+            for (int sourceId = 0; sourceId < mimetypeCount; sourceId++)
+            {
+                for (int pair = table.firstPair(sourceId); pair < table.endPair(sourceId); pair++)
+                {
+                    if (!table.retrieveTransforms(sourceId, table.pairTarget(pair)).isEmpty())
+                    {
+                        pairCount++;
+                    }
+                }
+            }
+
+            restOut.writeInt(pairCount);
+            for (int sourceId = 0; sourceId < mimetypeCount; sourceId++)
+            {
+                for (int pair = table.firstPair(sourceId); pair < table.endPair(sourceId); pair++)
+                {
+                    final int targetId = table.pairTarget(pair);
+                    final List<SupportedTransform> transformList = table.retrieveTransforms(sourceId, targetId);
+                    if (!transformList.isEmpty())
+                    {
+                        restOut.writeInt(stringId(table.mimetype(sourceId)));
+                        restOut.writeInt(stringId(table.mimetype(targetId)));
+                        restOut.writeInt(transformList.size());
+                        for (SupportedTransform transform : transformList)
+                        {
+                            restOut.writeInt(stringId(transform.getName()));
+                            restOut.writeInt(optionSetId(transform.getTransformOptions().getTransformOptions()));
+                            restOut.writeLong(transform.getMaxSourceSizeBytes());
+                            restOut.writeInt(transform.getPriority());
+                        }
+                    }
+                }
+            }
+        }
+
+        private int stringId(final String value) throws IOException
+        {
+            Integer id = stringIds.get(value);
+            if (id == null)
+            {
+                id = stringIds.size();
+                stringIds.put(value, id);
+                if (value == null)
+                {
+                    stringsOut.writeInt(-1);
+                }
+                else
+                {
+                    final byte[] bytes = value.getBytes(UTF_8);
+                    stringsOut.writeInt(bytes.length);
+                    stringsOut.write(bytes);
+                }
+            }
+            return id;
+        }
+
+        private int optionSetId(final Set<TransformOption> optionSet) throws IOException
+        {
+            Integer id = knownOptionSetIds.get(optionSet);
+            if (id == null)
+            {
+                id = optionSetIds.get(optionSet);
+                if (id == null)
+                {
+                    id = optionSetIds.size();
+                    optionSetIds.put(optionSet, id);
+                    writeOptionSet(optionSet);
+                }
+                knownOptionSetIds.put(optionSet, id);
+            }
+            return id;
+        }
+
+        private void writeOptionSet(final Set<TransformOption> optionSet) throws IOException
+        {
+            if (optionSet == null)
+            {
+                optionSetsOut.writeInt(-1);
+                return;
+            }
+            optionSetsOut.writeInt(optionSet.size());
+            for (TransformOption option : optionSet)
+            {
+                if (option instanceof TransformOptionGroup)
+                {
+                    optionSetsOut.writeByte(OPTION_GROUP);
+                    optionSetsOut.writeBoolean(option.isRequired());
+                    writeOptionSet(((TransformOptionGroup) option).getTransformOptions());
+                }
+                else
+                {
+                    optionSetsOut.writeByte(OPTION_VALUE);
+                    optionSetsOut.writeBoolean(option.isRequired());
+                    optionSetsOut.writeInt(stringId(((TransformOptionValue) option).getName()));
+                }
+            }
+        }
+
+        private byte[] toByteArray() throws IOException
+        {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                8 + strings.size() + optionSets.size() + rest.size());
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(stringIds.size());
+            strings.writeTo(out);
+            out.writeInt(optionSetIds.size());
+            optionSets.writeTo(out);
+            rest.writeTo(out);
+            out.flush();
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class Reader
+    {
+        private final ByteBuffer buffer;
+        private String[] strings;
+
+        private Reader(final ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        private TransformBatch read()
+        {
+            strings = new String[readCount()];
+            for (int i = 0; i < strings.length; i++)
+            {
+                final int length = buffer.getInt();
+                if (length >= 0)
+                {
+                    final byte[] bytes = new byte[checkCount(length)];
+                    buffer.get(bytes);
+                    strings[i] = new String(bytes, UTF_8);
+                }
+            }
+
+            final int optionSetCount = readCount();
+            final List<Set<TransformOption>> optionSets = new ArrayList<>(optionSetCount);
+            for (int i = 0; i < optionSetCount; i++)
+            {
+                optionSets.add(readOptionSet());
+            }
+
+            final TransformBatch batch = new TransformBatch();
+            final int registrationCount = readCount();
+            for (int i = 0; i < registrationCount; i++)
+            {
+                final String transformerName = strings[buffer.getInt()];
+                for (int j = buffer.getInt(); j > 0; j--)
+                {
+                    batch.addTransformer(transformerName);
+                }
+            }
+            batch.addUnnamedTransformers(readCount());
+
+            final int pairCount = readCount();
+            for (int i = 0; i < pairCount; i++)
+            {
+                final String sourceMimetype = strings[buffer.getInt()];
+                final String targetMimetype = strings[buffer.getInt()];
+                final int transformCount = readCount();
+                for (int j = 0; j < transformCount; j++)
+                {
+                    final String transformerName = strings[buffer.getInt()];
+                    final Set<TransformOption> optionSet = optionSets.get(buffer.getInt());
+                    batch.add(sourceMimetype, targetMimetype, new SupportedTransform(transformerName, optionSet,
+                        buffer.getLong(), buffer.getInt()));
+                }
+            }
+            if (buffer.hasRemaining())
+            {
+                throw new IllegalArgumentException(buffer.remaining() + " unexpected bytes at the end of the file");
+            }
+            return batch;
+        }
+
+        private Set<TransformOption> readOptionSet()
+        {
+            final int size = buffer.getInt();
+            if (size < 0)
+            {
+                return null;
+            }
+            final Set<TransformOption> optionSet = new HashSet<>(checkCount(size) * 2);
+            for (int i = 0; i < size; i++)
+            {
+                final byte kind = buffer.get();
+                final boolean required = buffer.get() != 0;
+                if (kind == OPTION_GROUP)
+                {
+                    optionSet.add(new TransformOptionGroup(required, readOptionSet()));
+                }
+                else if (kind == OPTION_VALUE)
+                {
+                    optionSet.add(new TransformOptionValue(required, strings[buffer.getInt()]));
+                }
+                else
+                {
+                    throw new IllegalArgumentException("Unknown option kind " + kind);
+                }
+            }
+            return optionSet;
+        }
+
+        private int readCount()
+        {
+            return checkCount(buffer.getInt());
+        }
+
+        // Stops a damaged count from causing a huge allocation.
+        private int checkCount(final int count)
+        {
+            if (count < 0 || count > buffer.remaining())
+            {
+                throw new IllegalArgumentException("Invalid count " + count);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static java.util.stream.Collectors.toUnmodifiableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.alfresco.transform.client.model.MultiStep;
+import org.alfresco.transform.client.model.config.TransformStep;
+
+/**
+ * A sequence of transforms, found by {@link AbstractTransformRegistry#findRoute(String, long, String)}, that together
+ * transform content from a source to a target mimetype. Unlike a pipeline transformer, every step specifies its
+ * target mimetype, including the last.<p/>
+ *
+ * Most routes also have a compact handle (a {@link #getRouteId() routeId} qualified by the {@link #getGeneration()
+ * generation} of the registry that found it), so that a {@link MultiStep} need not carry the steps as strings. The
+ * route may be found again from its handle by {@link AbstractTransformRegistry#findRoute(long, long)} in any registry
+ * of the same generation.
+ */
+public final class TransformRoute
+{
+    /**
+     * Separates the transformer name from the target mimetype of a step returned by {@link #getTransformsToBeDone()}.
+     */
+    public static final String STEP_SEPARATOR = "|";
+
+    private final List<TransformStep> steps;
+    private final long generation;
+    private final long routeId;
+
+    TransformRoute(final List<TransformStep> steps)
+    {
+        this(steps, 0, 0);
+    }
+
+    TransformRoute(final List<TransformStep> steps, final long generation, final long routeId)
+    {
+        this.steps = List.copyOf(steps);
+        this.generation = generation;
+        this.routeId = routeId;
+    }
+
+    /**
+     * @return the steps, in the order they should be performed.
+     */
+    public List<TransformStep> getSteps()
+    {
+        return steps;
+    }
+
+    /**
+     * @return the steps encoded as {@code <transformerName>|<targetMimetype>}, for use as
+     * {@link org.alfresco.transform.client.model.MultiStep#setTransformsToBeDone(List)}.
+     */
+    public List<String> getTransformsToBeDone()
+    {
+        return steps
+            .stream()
+            .map(step -> step.getTransformerName() + STEP_SEPARATOR + step.getTargetMediaType())
+            .collect(toUnmodifiableList());
+    }
+
+    /**
+     * @return the generation of the registry that issued the route handle, or 0 if the route has no handle, which is
+     * the case if it has too many steps or its mimetypes or transformers may not be packed into a {@code long}.
+     */
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * @return the id of the route within its {@link #getGeneration() generation}. Only meaningful if there is a handle.
+     */
+    public long getRouteId()
+    {
+        return routeId;
+    }
+
+    /**
+     * @return {@code true} if the route has a handle.
+     */
+    public boolean hasHandle()
+    {
+        return generation != 0;
+    }
+
+    /**
+     * Sets the route on a {@link MultiStep}, as the steps still to be done from the first step. The handle is always
+     * set if there is one. The explicit {@link #getTransformsToBeDone() transformsToBeDone} list is also set if
+     * there is no handle or if requested, as it is needed by a receiving node whose registry has a different
+     * generation. Otherwise the list is left empty.
+     *
+     * @param multiStep                 to be updated
+     * @param includeTransformsToBeDone {@code true} if the explicit list should be set even if there is a handle
+     */
+    public void setOn(final MultiStep multiStep, final boolean includeTransformsToBeDone)
+    {
+        multiStep.setRouteGeneration(generation);
+        multiStep.setRouteId(routeId);
+        multiStep.setStepIndex(0);
+        multiStep.setTransformsToBeDone(includeTransformsToBeDone || !hasHandle()
+                                        ? new ArrayList<>(getTransformsToBeDone()) : new ArrayList<>());
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TransformRoute that = (TransformRoute) o;
+        return Objects.equals(steps, that.steps);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(steps);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(getTransformsToBeDone());
+    }
+}
@@ -21,7 +21,11 @@
  */
 package org.alfresco.transform.client.registry;
 
+import static java.util.stream.Collectors.toList;
+
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Used by clients work out if a transformation is supported by a Transform Service.
@@ -84,4 +88,40 @@ public interface TransformServiceRegistry
      */
     String findTransformerName(String sourceMimetype, long sourceSizeInBytes, String targetMimetype,
         Map<String, String> actualOptions, String renditionName);
+
+    /**
+     * Works out the transformer name, maximum source size and if each of a batch of queries is supported, in a single
+     * call. The results are the same as calling {@link #findTransformerName}, {@link #findMaxSize} and
+     * {@link #isSupported} for each query, but implementations may share work between queries.
+     *
+     * @param queries to be answered.
+     * @return a result for each query, in the same order.
+     */
+    default List<TransformQueryResult> findTransformers(final List<TransformQuery> queries)
+    {
+        return queries
+            .stream()
+            .map(q -> new TransformQueryResult(
+                findTransformerName(q.getSourceMimetype(), q.getSourceSizeInBytes(),
+                    q.getTargetMimetype(), q.getActualOptions(), q.getRenditionName()),
+                findMaxSize(q.getSourceMimetype(), q.getTargetMimetype(), q.getActualOptions(),
+                    q.getRenditionName()),
+                q.getSourceSizeInBytes()))
+            .collect(toList());
+    }
+
+    /**
+     * As {@link #findTransformers(List)}, but large batches may be split up and answered in parallel using the
+     * supplied executor.
+     *
+     * @param queries  to be answered.
+     * @param executor used to answer parts of a large batch in parallel. If {@code null} the batch is answered by
+     *                 the calling thread.
+     * @return a result for each query, in the same order.
+     */
+    default List<TransformQueryResult> findTransformers(final List<TransformQuery> queries,
+        final Executor executor)
+    {
+        return findTransformers(queries);
+    }
 }
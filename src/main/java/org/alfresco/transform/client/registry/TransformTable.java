@@ -0,0 +1,521 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiPredicate;
+
+/**
+ * Immutable snapshot of the transforms held by a {@link TransformCache}.<p/>
+ *
+ * Each source and target mimetype is given a dense int id when the table is built, so that the transforms for a
+ * source and target pair may be found by a binary search of the sorted target ids of the source, rather than by
+ * hashing both mimetypes through nested maps.
+ * Each transform option name is also given a bit, so that the options of each transform may be compiled into an
+ * {@link OptionMatcher} and the actual options of a request turned into a mask once per lookup.<p/>
+ *
+ * Each table also has a generation, derived from its content rather than the time it was built, so that tables built
+ * by different nodes from the same transforms (registered in the same order) share a generation. Ids that are only
+ * meaningful to one table, such as route handles, are qualified by the generation.
+ */
+final class TransformTable
+{
+    static final TransformTable EMPTY = new TransformTable(emptyMap());
+
+    // Limits the number of option name combinations cached, as callers may supply any combination.
+    static final int MAX_CACHED_TRANSFORM_LISTS = 10000;
+
+    // Looks up the id of a mimetype. Ids are allocated in the order mimetypes are first seen.
+    private final Map<String, Integer> mimetypeIds;
+    private final String[] mimetypes;
+
+    // The supported source and target pairs, grouped by source id and in increasing target id order within each
+    // source. The pairs of a source id are those from pairStarts[sourceId] to pairStarts[sourceId + 1] - 1, and only
+    // pairs with transforms are held, so the size of the table grows with the number of pairs rather than the square
+    // of the number of mimetypes.
+    private final int[] pairStarts;
+    private final int[] pairTargets;
+    private final Pair[] pairs;
+
+    // Looks up the bit used for an option name.
+    private final Map<String, Integer> optionIds;
+    private final int optionWords;
+
+    // Caches the transform lists built by TransformRegistryHelper, keyed on the source, target and actual option
+    // names, so that repeated requests without a rendition name do not have to rebuild them. As the table is
+    // immutable the entries never become stale. They are discarded along with the table when a new one is published.
+    private final Map<LookupKey, TransformListBySize> cachedTransformLists = new ConcurrentHashMap<>();
+
+    // The routes planned by the RoutePlanner from each source id, built when first needed rather than when the table
+    // is published, as most sources are never used as the start of a route.
+    private final AtomicReferenceArray<int[][]> plannedRoutes;
+
+    // A hash of the mimetype ids and the transforms of each pair that affect route planning. Never 0.
+    private final long generation;
+
+    TransformTable(final Map<String, Map<String, List<SupportedTransform>>> transforms)
+    {
+        this(transforms, new CompiledOptions(), null, null);
+    }
+
+    /**
+     * @param compiledOptions the matchers of the previous table built from the same cache, which are reused for
+     *                        transforms with the same options.
+     * @param previous        the previous table built from the same cache, or {@code null}. The transforms of its
+     *                        pairs are reused, unless they have been {@code modified} since it was built.
+     * @param modified        tests if the transforms of a source and target pair have changed since the previous
+     *                        table was built.
+     */
+    TransformTable(final Map<String, Map<String, List<SupportedTransform>>> transforms,
+        final CompiledOptions compiledOptions, final TransformTable previous,
+        final BiPredicate<String, String> modified)
+    {
+        final Map<String, Integer> ids = new HashMap<>();
+        transforms.forEach((sourceMimetype, targetMap) -> {
+            ids.putIfAbsent(sourceMimetype, ids.size());
+            targetMap.keySet().forEach(targetMimetype -> ids.putIfAbsent(targetMimetype, ids.size()));
+        });
+
+        final int mimetypeCount = ids.size();
+        mimetypeIds = unmodifiableMap(ids);
+        mimetypes = new String[mimetypeCount];
+        ids.forEach((mimetype, id) -> mimetypes[id] = mimetype);
+
+        plannedRoutes = new AtomicReferenceArray<>(mimetypeCount);
+        pairStarts = new int[mimetypeCount + 1];
+        transforms.forEach((sourceMimetype, targetMap) -> pairStarts[ids.get(sourceMimetype) + 1] = targetMap.size());
+        for (int sourceId = 0; sourceId < mimetypeCount; sourceId++)
+        {
+            pairStarts[sourceId + 1] += pairStarts[sourceId];
+        }
+        pairTargets = new int[pairStarts[mimetypeCount]];
+        transforms.forEach((sourceMimetype, targetMap) -> {
+            final int sourceId = ids.get(sourceMimetype);
+            final int[] targetIds = targetMap.keySet().stream().mapToInt(ids::get).sorted().toArray();
+            System.arraycopy(targetIds, 0, pairTargets, pairStarts[sourceId], targetIds.length);
+        });
+
+        // Pairs that have not changed are taken from the previous table, so only changed pairs are compiled.
+        pairs = new Pair[pairTargets.length];
+        final OptionMatcher[][] matchers = new OptionMatcher[pairTargets.length][];
+        for (int sourceId = 0; sourceId < mimetypeCount; sourceId++)
+        {
+            final String sourceMimetype = mimetypes[sourceId];
+            final int previousSourceId = previous == null ? -1 : previous.mimetypeId(sourceMimetype);
+            final Map<String, List<SupportedTransform>> targetMap = transforms.get(sourceMimetype);
+            for (int pair = pairStarts[sourceId]; pair < pairStarts[sourceId + 1]; pair++)
+            {
+                final String targetMimetype = mimetypes[pairTargets[pair]];
+                final int previousPair = previousSourceId < 0 || modified.test(sourceMimetype, targetMimetype)
+                    ? -1 : previous.pair(previousSourceId, previous.mimetypeId(targetMimetype));
+                if (previousPair >= 0)
+                {
+                    pairs[pair] = previous.pairs[previousPair];
+                }
+                else
+                {
+                    matchers[pair] = targetMap
+                        .get(targetMimetype)
+                        .stream()
+                        .map(t -> compiledOptions.matcher(t.getTransformOptions()))
+                        .toArray(OptionMatcher[]::new);
+                }
+            }
+        }
+        optionWords = compiledOptions.optionWords();
+        optionIds = compiledOptions.tableBuilt();
+
+        final long[] noOptions = new long[optionWords];
+        final long[] allowed = new long[optionWords];
+        final long[] required = new long[optionWords];
+        long hash = mimetypeCount;
+        for (String mimetype : mimetypes)
+        {
+            hash = mix(hash, mimetype.hashCode());
+        }
+        for (int sourceId = 0; sourceId < mimetypeCount; sourceId++)
+        {
+            for (int pair = pairStarts[sourceId]; pair < pairStarts[sourceId + 1]; pair++)
+            {
+                if (pairs[pair] == null)
+                {
+                    final List<SupportedTransform> transformList = List.copyOf(
+                        transforms.get(mimetypes[sourceId]).get(mimetypes[pairTargets[pair]]));
+                    pairs[pair] = new Pair(transformList, matchers[pair], noOptions, allowed, required);
+                }
+                hash = mix(hash, sourceId * mimetypeCount + pairTargets[pair]);
+                hash = mix(hash, pairs[pair].hash);
+            }
+        }
+        generation = hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(final long hash, final long value)
+    {
+        final long mixed = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return mixed ^ (mixed >>> 29);
+    }
+
+    // -1 is unlimited and 0 is unsupported.
+    private static long largerMaxSize(final long a, final long b)
+    {
+        return a == -1L || b == -1L ? -1L : Math.max(a, b);
+    }
+
+    /**
+     * @return the id of the mimetype or -1 if it is not a source or target of any transform.
+     */
+    int mimetypeId(final String mimetype)
+    {
+        final Integer id = mimetypeIds.get(mimetype);
+        return id == null ? -1 : id;
+    }
+
+    long generation()
+    {
+        return generation;
+    }
+
+    int mimetypeCount()
+    {
+        return mimetypes.length;
+    }
+
+    String mimetype(final int id)
+    {
+        return mimetypes[id];
+    }
+
+    /**
+     * @return the index of the source and target mimetype id pair, or -1 if there are no transforms from the source to
+     * the target.
+     */
+    int pair(final int sourceId, final int targetId)
+    {
+        if (sourceId < 0 || targetId < 0)
+        {
+            return -1;
+        }
+        final int pair = Arrays.binarySearch(pairTargets, pairStarts[sourceId], pairStarts[sourceId + 1], targetId);
+        return pair < 0 ? -1 : pair;
+    }
+
+    /**
+     * @return the index of the first pair with the source id. The pairs of a source are in increasing target id order.
+     */
+    int firstPair(final int sourceId)
+    {
+        return pairStarts[sourceId];
+    }
+
+    /**
+     * @return one more than the index of the last pair with the source id.
+     */
+    int endPair(final int sourceId)
+    {
+        return pairStarts[sourceId + 1];
+    }
+
+    int pairTarget(final int pair)
+    {
+        return pairTargets[pair];
+    }
+
+    /**
+     * @return the highest priority (numerically lowest) of the transforms of the pair that may be used without any
+     * transform options, or {@link RoutePlanner#NO_EDGE}.
+     */
+    int pairPriority(final int pair)
+    {
+        return pairs[pair].priority;
+    }
+
+    /**
+     * @return {@code true} if a transform of the pair that may be used without any transform options supports content
+     * of the given size. A negative size is not checked.
+     */
+    boolean isRouteSizeSupported(final int pair, final long sourceSizeInBytes)
+    {
+        final long maxSourceSize = pairs[pair].routeMaxSourceSize;
+        return sourceSizeInBytes < 0 || maxSourceSize == -1L || sourceSizeInBytes <= maxSourceSize;
+    }
+
+    /**
+     * @return the transforms (in registration order) from the source to the target mimetype ids, or an empty list.
+     */
+    List<SupportedTransform> retrieveTransforms(final int sourceId, final int targetId)
+    {
+        final int pair = pair(sourceId, targetId);
+        return pair < 0 ? emptyList() : pairs[pair].transforms;
+    }
+
+    /**
+     * @return the OptionMatchers of the transforms returned by {@link #retrieveTransforms(int, int)}.
+     */
+    OptionMatcher[] retrieveOptionMatchers(final int sourceId, final int targetId)
+    {
+        return pairs[pair(sourceId, targetId)].matchers;
+    }
+
+    int optionWords()
+    {
+        return optionWords;
+    }
+
+    /**
+     * @return a mask of the actual option names, or {@code null} if any of them are not known to the table, in which
+     * case no transform can support them.
+     */
+    long[] optionMask(final Map<String, String> actualOptions)
+    {
+        final long[] mask = new long[optionWords];
+        for (String name : actualOptions.keySet())
+        {
+            final Integer id = optionIds.get(name);
+            if (id == null)
+            {
+                return null;
+            }
+            mask[id >>> 6] |= 1L << id;
+        }
+        return mask;
+    }
+
+    /**
+     * @return a transform list previously cached by {@link #cacheTransformList(int, int, long[], TransformListBySize)} or
+     * {@code null}.
+     */
+    TransformListBySize retrieveCachedTransformList(final int sourceId, final int targetId,
+        final long[] actualMask)
+    {
+        return cachedTransformLists.get(new LookupKey(pair(sourceId, targetId), actualMask));
+    }
+
+    /**
+     * Caches a transform list for the source and target mimetype ids and mask of actual option names.
+     */
+    void cacheTransformList(final int sourceId, final int targetId, final long[] actualMask,
+        final TransformListBySize transformList)
+    {
+        if (cachedTransformLists.size() < MAX_CACHED_TRANSFORM_LISTS)
+        {
+            cachedTransformLists.put(new LookupKey(pair(sourceId, targetId), actualMask), transformList);
+        }
+    }
+
+    /**
+     * @return the mimetype ids along the route planned by the {@link RoutePlanner} from the source to the target id,
+     * starting with the source, or {@code null} if there is none. The size of the content is not taken into account.
+     * Routes from a source are planned when first needed and then kept with the table.
+     */
+    int[] retrievePlannedRoute(final int sourceId, final int targetId)
+    {
+        if (sourceId < 0 || targetId < 0)
+        {
+            return null;
+        }
+        int[][] routesFromSource = plannedRoutes.get(sourceId);
+        if (routesFromSource == null)
+        {
+            routesFromSource = RoutePlanner.planRoutes(this, sourceId, -1L);
+            plannedRoutes.compareAndSet(sourceId, null, routesFromSource);
+        }
+        return routesFromSource[targetId];
+    }
+
+    /**
+     * @return {@code true} if every step of a route returned by {@link #retrievePlannedRoute(int, int)} supports content
+     * of the given size.
+     */
+    boolean isRouteSizeSupported(final int[] route, final long sourceSizeInBytes)
+    {
+        for (int i = 1; i < route.length; i++)
+        {
+            if (!isRouteSizeSupported(pair(route[i - 1], route[i]), sourceSizeInBytes))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Plans a route for content of a given size, using only the steps that support it, for when the route returned
+     * by {@link #retrievePlannedRoute(int, int)} has a step that does not. The route is not kept, as it only applies to
+     * some sizes.
+     *
+     * @return the mimetype ids along the route, starting with the source, or {@code null} if there is none.
+     */
+    int[] planRoute(final int sourceId, final int targetId, final long sourceSizeInBytes)
+    {
+        return sourceId < 0 || targetId < 0 ? null :
+               RoutePlanner.planRoutes(this, sourceId, sourceSizeInBytes)[targetId];
+    }
+
+    /**
+     * @return {@code false} if no transform from the source to the target id supports content of the given size,
+     * whatever the transform options. A negative size is not checked. May return {@code true} even though the transform
+     * options are not supported.
+     */
+    boolean isPossible(final int sourceId, final int targetId, final long sourceSizeInBytes)
+    {
+        final int pair = pair(sourceId, targetId);
+        if (pair < 0)
+        {
+            return false;
+        }
+        final long maxSourceSize = pairs[pair].maxSourceSize;
+        return maxSourceSize == -1L || sourceSizeInBytes <= maxSourceSize;
+    }
+
+    List<SupportedTransform> retrieveTransforms(final String sourceMimetype, final String targetMimetype)
+    {
+        return retrieveTransforms(mimetypeId(sourceMimetype), mimetypeId(targetMimetype));
+    }
+
+    /**
+     * @return a map of target mimetypes to transforms for the source mimetype. Built on demand, so should not be used
+     * on a performance critical path.
+     */
+    Map<String, List<SupportedTransform>> retrieveTransforms(final String sourceMimetype)
+    {
+        final int sourceId = mimetypeId(sourceMimetype);
+        if (sourceId < 0)
+        {
+            return emptyMap();
+        }
+
+        final Map<String, List<SupportedTransform>> targetMap = new HashMap<>();
+        for (int pair = pairStarts[sourceId]; pair < pairStarts[sourceId + 1]; pair++)
+        {
+            targetMap.put(mimetypes[pairTargets[pair]], pairs[pair].transforms);
+        }
+        return unmodifiableMap(targetMap);
+    }
+
+    /**
+     * @return a nested map of source to target mimetypes to transforms. Built on demand.
+     */
+    Map<String, Map<String, List<SupportedTransform>>> getTransforms()
+    {
+        final Map<String, Map<String, List<SupportedTransform>>> transforms = new HashMap<>();
+        for (String sourceMimetype : mimetypes)
+        {
+            final Map<String, List<SupportedTransform>> targetMap = retrieveTransforms(sourceMimetype);
+            if (!targetMap.isEmpty())
+            {
+                transforms.put(sourceMimetype, targetMap);
+            }
+        }
+        return unmodifiableMap(transforms);
+    }
+
+    // The transforms of a source and target pair, and what is known about them without looking at the actual options.
+    private static final class Pair
+    {
+        private final List<SupportedTransform> transforms;
+        // The OptionMatcher of each transform, in the same order.
+        private final OptionMatcher[] matchers;
+        // The largest maxSourceSizeBytes of the transforms (-1 if unlimited), so that requests for larger content may
+        // be rejected without looking at the transform options.
+        private final long maxSourceSize;
+        // The largest maxSourceSizeBytes of the transforms that may be used without any transform options (-1 if
+        // unlimited, 0 if there are none), which limits the content that may take this step of a route.
+        private final long routeMaxSourceSize;
+        // The highest priority (numerically lowest) of the transforms that may be used without any transform options,
+        // or RoutePlanner.NO_EDGE.
+        private final int priority;
+
+        // A hash of the transforms that affect route planning, which is part of the table's generation.
+        private final long hash;
+
+        private Pair(final List<SupportedTransform> transforms, final OptionMatcher[] matchers,
+            final long[] noOptions, final long[] allowed, final long[] required)
+        {
+            long maxSourceSize = 0;
+            long routeMaxSourceSize = 0;
+            int priority = RoutePlanner.NO_EDGE;
+            long hash = transforms.size();
+            for (int i = 0; i < transforms.size(); i++)
+            {
+                final SupportedTransform transform = transforms.get(i);
+                maxSourceSize = largerMaxSize(maxSourceSize, transform.getMaxSourceSizeBytes());
+                final boolean noOptionsMatch = matchers[i].matches(noOptions, allowed, required);
+                if (noOptionsMatch)
+                {
+                    priority = Math.min(priority, transform.getPriority());
+                    routeMaxSourceSize = largerMaxSize(routeMaxSourceSize, transform.getMaxSourceSizeBytes());
+                }
+                hash = mix(hash, Objects.hashCode(transform.getName()));
+                hash = mix(hash, transform.getMaxSourceSizeBytes());
+                hash = mix(hash, noOptionsMatch ? transform.getPriority() : RoutePlanner.NO_EDGE);
+            }
+            this.transforms = transforms;
+            this.matchers = matchers;
+            this.maxSourceSize = maxSourceSize;
+            this.routeMaxSourceSize = routeMaxSourceSize;
+            this.priority = priority;
+            this.hash = hash;
+        }
+    }
+
+    private static final class LookupKey
+    {
+        private final int pair;
+        private final long[] actualMask;
+        private final int hashCode;
+
+        private LookupKey(final int pair, final long[] actualMask)
+        {
+            this.pair = pair;
+            this.actualMask = actualMask;
+            this.hashCode = 31 * pair + Arrays.hashCode(actualMask);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            LookupKey that = (LookupKey) o;
+            return pair == that.pair &&
+                   Arrays.equals(actualMask, that.actualMask);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.model;
+
+import static java.util.Arrays.stream;
+import static java.util.stream.Collectors.toSet;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_HTML;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_IMAGE_JPEG;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_IMAGE_PNG;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_MULTIPART_ALTERNATIVE;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_OPENXML_WORDPROCESSING;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_PDF;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_TEXT_PLAIN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.Test;
+
+/**
+ * Checks the table of mimetypes and extensions, and that the regexes handled without a Pattern return the same
+ * mimetypes as String.matches.
+ */
+public class MimetypeTest
+{
+    // Uses a group, so is always evaluated as a regex.
+    private static final Set<String> ALL = Mimetype.matchMimetypes("(.*)");
+
+    private static void assertMatches(final String regex)
+    {
+        final Set<String> expected = ALL.stream().filter(t -> t.matches(regex)).collect(toSet());
+        assertEquals(regex, expected, Mimetype.matchMimetypes(regex));
+    }
+
+    @Test
+    public void testMatchMimetypes()
+    {
+        assertTrue(ALL.contains(MIMETYPE_PDF));
+        assertTrue(ALL.contains(MIMETYPE_IMAGE_PNG));
+
+        assertMatches(".*");
+        assertMatches("image/.*");
+        assertMatches("text/.*");
+        assertMatches("application/vnd\\.ms-.*");
+        assertMatches("application/vnd.ms-.*");
+        assertMatches("application/x.*");
+        assertMatches("unknown/.*");
+        assertMatches(MIMETYPE_PDF);
+        assertMatches(MIMETYPE_TEXT_PLAIN);
+        assertMatches("application/xhtml\\+xml");
+        assertMatches("application/xhtml+xml");
+        assertMatches("text/plain.*");
+        assertMatches("text/plai");
+        assertMatches("image/(png|gif)");
+        assertMatches("image/[a-z]+");
+        assertMatches("audio/.*\\.*");
+        assertMatches("image/\\w+");
+        assertMatches("(?i)IMAGE/.*");
+    }
+
+    @Test
+    public void testAllMimetypeConstantsAreInTheTable()
+    {
+        final Set<String> constants = stream(Mimetype.class.getDeclaredFields())
+            .filter(f -> Modifier.isPublic(f.getModifiers()))
+            .filter(f -> Modifier.isStatic(f.getModifiers()))
+            .filter(f -> f.getName().startsWith("MIMETYPE_"))
+            .map(MimetypeTest::getFieldValue)
+            .collect(toSet());
+        assertEquals(constants, ALL);
+    }
+
+    private static String getFieldValue(final Field f)
+    {
+        try
+        {
+            return (String) f.get(null);
+        }
+        catch (IllegalAccessException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void testExtensions()
+    {
+        assertEquals("pdf", Mimetype.getExtension(MIMETYPE_PDF));
+        assertEquals("jpg", Mimetype.getExtension(MIMETYPE_IMAGE_JPEG));
+        assertEquals("docx", Mimetype.getExtension(MIMETYPE_OPENXML_WORDPROCESSING));
+        assertNull(Mimetype.getExtension(MIMETYPE_MULTIPART_ALTERNATIVE));
+        assertNull(Mimetype.getExtension("unknown/unknown"));
+        assertNull(Mimetype.getExtension(null));
+
+        assertEquals(MIMETYPE_IMAGE_JPEG, Mimetype.getMimetype("jpg"));
+        assertEquals(MIMETYPE_IMAGE_JPEG, Mimetype.getMimetype("JPEG"));
+        assertEquals(MIMETYPE_HTML, Mimetype.getMimetype("htm"));
+        assertNull(Mimetype.getMimetype("unknown"));
+        assertNull(Mimetype.getMimetype(null));
+
+        // The default extension of every mimetype leads back to it
+        ALL
+            .stream()
+            .filter(mimetype -> Mimetype.getExtension(mimetype) != null)
+            .forEach(mimetype -> assertEquals(mimetype,
+                Mimetype.getMimetype(Mimetype.getExtension(mimetype))));
+    }
+
+    @Test
+    public void testResultsAreReused()
+    {
+        assertSame(Mimetype.matchMimetypes("video/.*"), Mimetype.matchMimetypes("video/.*"));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidRegex()
+    {
+        Mimetype.matchMimetypes("image/[");
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.model;
+
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_IMAGE_PNG;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_MULTIPART_ALTERNATIVE;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_OGG;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_OPENXML_WORDPROCESSING;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_PDF;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Checks that requests and replies survive a round trip through {@link TransformMessageCodec} unchanged, by comparing
+ * their JSON form.
+ */
+public class TransformMessageCodecTest
+{
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    static TransformRequest typicalRequest()
+    {
+        final Map<String, String> options = new HashMap<>();
+        options.put("timeout", "120000");
+        options.put("resizeWidth", "100");
+        options.put("resizeHeight", "100");
+        options.put("thumbnail", "true");
+
+        final MultiStep multiStep = new MultiStep();
+        multiStep.setInitialRequestId("e2b8c9b4-7e5e-4ac0-a0d4-2f1e6fb8f1a2");
+        multiStep.setInitialSourceMediaType(MIMETYPE_OPENXML_WORDPROCESSING);
+        multiStep.setTransformsToBeDone(Arrays.asList("libreoffice|" + MIMETYPE_PDF, "pdfrenderer|" + MIMETYPE_IMAGE_PNG));
+
+        final InternalContext context = new InternalContext();
+        context.setMultiStep(multiStep);
+        context.setCurrentSourceMediaType(MIMETYPE_OPENXML_WORDPROCESSING);
+        context.setCurrentTargetMediaType(MIMETYPE_PDF);
+        context.setReplyToDestination("org.alfresco.transform.t-reply");
+        context.setCurrentSourceSize(123456L);
+        context.setTransformRequestOptions(new HashMap<>(options));
+
+        return TransformRequest.builder()
+            .withRequestId("e2b8c9b4-7e5e-4ac0-a0d4-2f1e6fb8f1a2")
+            .withSourceReference("f6f6a8e3-5a1d-4d5f-9b3e-0c1d2e3f4a5b")
+            .withSourceMediaType(MIMETYPE_OPENXML_WORDPROCESSING)
+            .withSourceSize(123456L)
+            .withSourceExtension("docx")
+            .withTargetMediaType(MIMETYPE_IMAGE_PNG)
+            .withTargetExtension("png")
+            .withClientData("Alfresco Digital Business Platform")
+            .withSchema(1)
+            .withTransformRequestOptions(options)
+            .withInternalContext(context)
+            .build();
+    }
+
+    static TransformReply typicalReply()
+    {
+        return TransformReply.builder()
+            .withRequestId("e2b8c9b4-7e5e-4ac0-a0d4-2f1e6fb8f1a2")
+            .withStatus(201)
+            .withSourceReference("f6f6a8e3-5a1d-4d5f-9b3e-0c1d2e3f4a5b")
+            .withTargetReference("0a1b2c3d-4e5f-6a7b-8c9d-0e1f2a3b4c5d")
+            .withClientData("Alfresco Digital Business Platform")
+            .withSchema(1)
+            .withInternalContext(typicalRequest().getInternalContext())
+            .build();
+    }
+
+    private void assertSameJson(final Object expected, final Object actual) throws IOException
+    {
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(expected)),
+            objectMapper.readTree(objectMapper.writeValueAsString(actual)));
+    }
+
+    private static int serializedSize(final Serializable object) throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(object);
+        }
+        return bytes.size();
+    }
+
+    @Test
+    public void testRequestRoundTrip() throws IOException
+    {
+        final TransformRequest request = typicalRequest();
+        assertSameJson(request, TransformMessageCodec.decodeRequest(TransformMessageCodec.encode(request)));
+    }
+
+    @Test
+    public void testReplyRoundTrip() throws IOException
+    {
+        final TransformReply reply = typicalReply();
+        assertSameJson(reply, TransformMessageCodec.decodeReply(TransformMessageCodec.encode(reply)));
+    }
+
+    static TransformRequest routeHandleRequest()
+    {
+        final TransformRequest request = typicalRequest();
+        final MultiStep multiStep = request.getInternalContext().getMultiStep();
+        multiStep.setTransformsToBeDone(new ArrayList<>());
+        multiStep.setRouteGeneration(0x8F3A5C7E9B1D2F40L);
+        multiStep.setRouteId(3L << 40 | 17L << 20 | 5);
+        multiStep.setStepIndex(1);
+        return request;
+    }
+
+    @Test
+    public void testRouteHandleRoundTrip() throws IOException
+    {
+        final TransformRequest request = routeHandleRequest();
+        final byte[] bytes = TransformMessageCodec.encode(request);
+        assertSameJson(request, TransformMessageCodec.decodeRequest(bytes));
+        assertSameJson(request, TransformMessageCodec.viewRequest(bytes).toRequest());
+        assertTrue(bytes.length < TransformMessageCodec.encode(typicalRequest()).length);
+
+        final TransformReply reply = typicalReply();
+        reply.setInternalContext(request.getInternalContext());
+        assertSameJson(reply, TransformMessageCodec.decodeReply(TransformMessageCodec.encode(reply)));
+    }
+
+    // A MultiStep Java serialized by a node from before the route handle fields were added.
+    private static final String OLDER_MULTI_STEP =
+        "rO0ABXNyAC1vcmcuYWxmcmVzY28udHJhbnNmb3JtLmNsaWVudC5tb2RlbC5NdWx0aVN0ZXCIJTf/XsP6JAIAA0wAEGluaXRp" +
+        "YWxSZXF1ZXN0SWR0ABJMamF2YS9sYW5nL1N0cmluZztMABZpbml0aWFsU291cmNlTWVkaWFUeXBlcQB+AAFMABJ0cmFuc2Zv" +
+        "cm1zVG9CZURvbmV0ABBMamF2YS91dGlsL0xpc3Q7eHB0AAExdAAPYXBwbGljYXRpb24vcGRmc3IAE2phdmEudXRpbC5BcnJh" +
+        "eUxpc3R4gdIdmcdhnQMAAUkABHNpemV4cAAAAAF3BAAAAAF0ABVwZGZyZW5kZXJlcnxpbWFnZS9wbmd4";
+
+    @Test
+    public void testReadsMultiStepSerializedByOlderNodes() throws IOException, ClassNotFoundException
+    {
+        final MultiStep older;
+        try (ObjectInputStream in = new ObjectInputStream(
+            new ByteArrayInputStream(Base64.getDecoder().decode(OLDER_MULTI_STEP))))
+        {
+            older = (MultiStep) in.readObject();
+        }
+        assertEquals("1", older.getInitialRequestId());
+        assertEquals(MIMETYPE_PDF, older.getInitialSourceMediaType());
+        assertEquals(Arrays.asList("pdfrenderer|" + MIMETYPE_IMAGE_PNG), older.getTransformsToBeDone());
+        assertEquals(0, older.getRouteId());
+
+        final MultiStep multiStep = routeHandleRequest().getInternalContext().getMultiStep();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(multiStep);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            assertEquals(objectMapper.writeValueAsString(multiStep),
+                objectMapper.writeValueAsString(in.readObject()));
+        }
+    }
+
+    @Test
+    public void testFromJson() throws IOException
+    {
+        final String json = "{\"requestId\":\"1\",\"sourceReference\":\"ref\"," +
+                            "\"sourceMediaType\":\"application/pdf\",\"sourceSize\":-1," +
+                            "\"sourceExtension\":null,\"targetMediaType\":\"image/x-unknown\"," +
+                            "\"targetExtension\":\"png\",\"clientData\":\"caf\u00e9 \ud83d\ude00\",\"schema\":0," +
+                            "\"transformRequestOptions\":{\"a\":\"image/x-unknown\",\"b\":null}," +
+                            "\"internalContext\":{\"multiStep\":{\"initialRequestId\":null," +
+                            "\"initialSourceMediaType\":null,\"transformsToBeDone\":[null,\"a\"]}," +
+                            "\"attemptedRetries\":-3,\"currentSourceMediaType\":null," +
+                            "\"currentTargetMediaType\":null,\"replyToDestination\":null," +
+                            "\"currentSourceSize\":null,\"transformRequestOptions\":null}}";
+        final TransformRequest request = objectMapper.readValue(json, TransformRequest.class);
+        final TransformRequest decoded = TransformMessageCodec.decodeRequest(TransformMessageCodec.encode(request));
+
+        assertEquals(objectMapper.readTree(json), objectMapper.readTree(objectMapper.writeValueAsString(decoded)));
+    }
+
+    @Test
+    public void testEmptyMessages() throws IOException
+    {
+        final TransformRequest request = new TransformRequest();
+        request.setTransformRequestOptions(null);
+        final TransformRequest decodedRequest = TransformMessageCodec.decodeRequest(TransformMessageCodec.encode(request));
+        assertNull(decodedRequest.getTransformRequestOptions());
+        assertSameJson(request, decodedRequest);
+
+        final TransformReply reply = new TransformReply();
+        assertSameJson(reply, TransformMessageCodec.decodeReply(TransformMessageCodec.encode(reply)));
+    }
+
+    @Test
+    public void testSmallerThanJsonAndSerialization() throws IOException
+    {
+        final TransformRequest request = typicalRequest();
+        final int size = TransformMessageCodec.encode(request).length;
+
+        assertTrue(size < objectMapper.writeValueAsBytes(request).length / 2);
+        assertTrue(size < serializedSize(request) / 2);
+    }
+
+    @Test
+    public void testMimetypeDictionaryIsStable()
+    {
+        // Mimetypes are identified by their position, so may only be appended to the table.
+        final List<String> mimetypes = Mimetype.getOrderedMimetypes();
+        assertTrue(mimetypes.size() >= 129);
+        assertEquals(MIMETYPE_MULTIPART_ALTERNATIVE, mimetypes.get(0));
+        assertEquals(MIMETYPE_OGG, mimetypes.get(128));
+    }
+
+    @Test
+    public void testUnsupportedSchema()
+    {
+        final TransformRequest request = typicalRequest();
+        request.setSchema(TransformMessageCodec.MAX_SCHEMA + 1);
+        try
+        {
+            TransformMessageCodec.encode(request);
+            fail("Expected the schema to be rejected");
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+
+        request.setSchema(TransformMessageCodec.MAX_SCHEMA);
+        final byte[] bytes = TransformMessageCodec.encode(request);
+        bytes[1]++;
+        try
+        {
+            TransformMessageCodec.decodeRequest(bytes);
+            fail("Expected the schema to be rejected");
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+    }
+
+    @Test
+    public void testMalformedMessages()
+    {
+        final byte[] bytes = TransformMessageCodec.encode(typicalRequest());
+        for (int length = 0; length < bytes.length; length++)
+        {
+            try
+            {
+                TransformMessageCodec.decodeRequest(bytes, 0, length);
+                fail("Expected a truncated message of " + length + " bytes to be rejected");
+            }
+            catch (IllegalArgumentException expected)
+            {
+            }
+        }
+        try
+        {
+            TransformMessageCodec.decodeReply(bytes);
+            fail("Expected a request to be rejected as a reply");
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.alfresco.transform.client.model.TransformMessageCodecTest.routeHandleRequest;
+import static org.alfresco.transform.client.model.TransformMessageCodecTest.typicalReply;
+import static org.alfresco.transform.client.model.TransformMessageCodecTest.typicalRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Checks that {@link TransformMessageJsonCodec} reads and writes the same JSON as Jackson databinding.
+ */
+public class TransformMessageJsonCodecTest
+{
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private void assertSameAsDatabind(final Object message, final byte[] json) throws IOException
+    {
+        assertEquals(objectMapper.writeValueAsString(message), new String(json, UTF_8));
+    }
+
+    // Decoded options are iterated in name order, whereas databinding keeps the order of the JSON, so messages that
+    // have been read are compared as trees, in which the order of fields does not matter.
+    private void assertSameTree(final Object expected, final Object actual)
+    {
+        assertEquals(objectMapper.valueToTree(expected), objectMapper.valueToTree(actual));
+    }
+
+    @Test
+    public void testWriteRequest() throws IOException
+    {
+        final TransformRequest request = typicalRequest();
+        assertSameAsDatabind(request, TransformMessageJsonCodec.toJson(request));
+
+        final TransformRequest empty = new TransformRequest();
+        assertSameAsDatabind(empty, TransformMessageJsonCodec.toJson(empty));
+        empty.setTransformRequestOptions(null);
+        empty.setInternalContext(new InternalContext());
+        assertSameAsDatabind(empty, TransformMessageJsonCodec.toJson(empty));
+    }
+
+    @Test
+    public void testWriteReply() throws IOException
+    {
+        final TransformReply reply = typicalReply();
+        assertSameAsDatabind(reply, TransformMessageJsonCodec.toJson(reply));
+
+        final TransformReply empty = new TransformReply();
+        assertSameAsDatabind(empty, TransformMessageJsonCodec.toJson(empty));
+    }
+
+    @Test
+    public void testReadRequest() throws IOException
+    {
+        final TransformRequest request = typicalRequest();
+        request.getInternalContext().getMultiStep().setTransformsToBeDone(Arrays.asList("a", null));
+        request.setClientData("café \"quoted\"\n");
+        final byte[] json = objectMapper.writeValueAsBytes(request);
+
+        assertSameTree(objectMapper.readValue(json, TransformRequest.class),
+            TransformMessageJsonCodec.readRequest(json));
+    }
+
+    @Test
+    public void testRouteHandle() throws IOException
+    {
+        final TransformRequest request = routeHandleRequest();
+        final byte[] json = TransformMessageJsonCodec.toJson(request);
+        assertSameAsDatabind(request, json);
+        assertSameTree(request, TransformMessageJsonCodec.readRequest(json));
+    }
+
+    @Test
+    public void testReadReply() throws IOException
+    {
+        final byte[] json = objectMapper.writeValueAsBytes(typicalReply());
+
+        assertSameTree(objectMapper.readValue(json, TransformReply.class),
+            TransformMessageJsonCodec.readReply(json));
+    }
+
+    @Test
+    public void testReadLenientValues() throws IOException
+    {
+        final String json = "{\"requestId\":\"1\",\"unknown\":{\"a\":[1,2,{}]},\"sourceSize\":\"42\"," +
+                            "\"schema\":null,\"status\":\"7\",\"internalContext\":{\"multiStep\":null," +
+                            "\"attemptedRetries\":\"2\",\"other\":[]}}";
+        final TransformRequest request = TransformMessageJsonCodec.readRequest(json.getBytes(UTF_8));
+        assertEquals("1", request.getRequestId());
+        assertEquals(Long.valueOf(42), request.getSourceSize());
+        assertEquals(0, request.getSchema());
+        assertEquals(2, request.getInternalContext().getAttemptedRetries());
+        assertNull(request.getInternalContext().getMultiStep());
+
+        assertNull(TransformMessageJsonCodec.readReply("null".getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testReadMalformed() throws IOException
+    {
+        for (String json : new String[]{"[]", "{\"sourceSize\":\"big\"}", "{\"requestId\":{}}",
+                                        "{\"internalContext\":{\"multiStep\":{\"transformsToBeDone\":\"a\"}}}",
+                                        "{\"requestId\":\"1\""})
+        {
+            try
+            {
+                TransformMessageJsonCodec.readRequest(json.getBytes(UTF_8));
+                fail("Expected " + json + " to be rejected");
+            }
+            catch (JsonParseException expected)
+            {
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.model;
+
+import static org.alfresco.transform.client.model.TransformMessageCodecTest.typicalRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TransformRequestOptionsTest
+{
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testSameAsHashMap()
+    {
+        final Map<String, String> expected = new HashMap<>();
+        final TransformRequestOptions.Builder builder = TransformRequestOptions.builder();
+        final String[] names = {"timeout", "resizeWidth", "page", null, "resizeWidth", "allowEnlargement"};
+        for (int i = 0; i < names.length; i++)
+        {
+            expected.put(names[i], names[i] == null ? "x" : Integer.toString(i));
+            builder.with(names[i], names[i] == null ? "x" : Integer.toString(i));
+        }
+        expected.put("page", null);
+        builder.with("page", null);
+        final TransformRequestOptions options = builder.build();
+
+        assertEquals(expected, options);
+        assertEquals(options, expected);
+        assertEquals(expected.hashCode(), options.hashCode());
+        assertEquals(expected.size(), options.size());
+        assertEquals("x", options.get(null));
+        assertTrue(options.containsKey("page"));
+        assertNull(options.get("page"));
+        assertFalse(options.containsKey("missing"));
+        assertFalse(options.containsKey(1));
+        assertEquals(Arrays.asList(null, "allowEnlargement", "page", "resizeWidth", "timeout"),
+            new ArrayList<>(options.keySet()));
+    }
+
+    @Test
+    public void testOf()
+    {
+        assertNull(TransformRequestOptions.of(null));
+        assertTrue(TransformRequestOptions.of(new HashMap<>()).isEmpty());
+        final TransformRequestOptions options = TransformRequestOptions.of(typicalRequest().getTransformRequestOptions());
+        assertSame(options, TransformRequestOptions.of(options));
+    }
+
+    @Test
+    public void testMutable()
+    {
+        final Map<String, String> expected = new HashMap<>(typicalRequest().getTransformRequestOptions());
+        final Map<String, String> options = typicalRequest().getTransformRequestOptions();
+        for (Map<String, String> map : Arrays.asList(expected, options))
+        {
+            map.put("a", "b");
+            map.put("timeout", "1");
+            map.remove("resizeWidth");
+            map.remove("missing");
+            map.putAll(Map.of("z", "y"));
+            for (Map.Entry<String, String> entry : map.entrySet())
+            {
+                if (entry.getKey().equals("thumbnail"))
+                {
+                    assertEquals("true", entry.setValue("c"));
+                }
+            }
+            map.keySet().removeIf(name -> name.startsWith("z"));
+        }
+        assertEquals(expected, options);
+        assertEquals(expected.hashCode(), options.hashCode());
+
+        final Map<String, String> empty = new InternalContext().getTransformRequestOptions();
+        empty.put("a", "b");
+        assertTrue(new InternalContext().getTransformRequestOptions().isEmpty());
+        empty.clear();
+        assertTrue(empty.isEmpty());
+    }
+
+    @Test
+    public void testSettersKeepTheCallersMap()
+    {
+        final Map<String, String> options = new HashMap<>();
+        final TransformRequest request = TransformRequest.builder().withTransformRequestOptions(options).build();
+        final InternalContext context = new InternalContext();
+        context.setTransformRequestOptions(options);
+        options.put("a", "b");
+        assertSame(options, request.getTransformRequestOptions());
+        assertSame(options, context.getTransformRequestOptions());
+        assertEquals("b", request.getTransformRequestOptions().get("a"));
+
+        // Only the codecs decode the options into a TransformRequestOptions
+        assertTrue(TransformMessageCodec.decodeRequest(TransformMessageCodec.encode(request))
+            .getTransformRequestOptions() instanceof TransformRequestOptions);
+    }
+
+    @Test
+    public void testBuilderBuildsOnce()
+    {
+        final TransformRequestOptions.Builder builder = TransformRequestOptions.builder().with("a", "b");
+        builder.build();
+        try
+        {
+            builder.with("c", "d");
+            fail("Expected the builder to refuse to be reused");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+        try
+        {
+            builder.build();
+            fail("Expected the builder to refuse to be reused");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+    }
+
+    @Test
+    public void testDecodedContextSharesRequestOptions() throws IOException
+    {
+        final TransformRequest request = typicalRequest();
+        for (TransformRequest decoded : new TransformRequest[]{
+            TransformMessageCodec.decodeRequest(TransformMessageCodec.encode(request)),
+            TransformMessageJsonCodec.readRequest(TransformMessageJsonCodec.toJson(request)),
+            objectMapper.readValue(objectMapper.writeValueAsBytes(request), TransformRequest.class)})
+        {
+            assertEquals(request.getTransformRequestOptions(), decoded.getTransformRequestOptions());
+            assertEquals(request.getTransformRequestOptions(),
+                decoded.getInternalContext().getTransformRequestOptions());
+        }
+        final TransformRequest decoded = TransformMessageCodec.decodeRequest(TransformMessageCodec.encode(request));
+        final Map<String, String> contextOptions = decoded.getInternalContext().getTransformRequestOptions();
+        assertNotSame(decoded.getTransformRequestOptions(), contextOptions);
+        decoded.getTransformRequestOptions().put("page", "2");
+        assertEquals(request.getTransformRequestOptions(), contextOptions);
+    }
+
+    @Test
+    public void testSerializable() throws IOException, ClassNotFoundException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(typicalRequest());
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+        {
+            final TransformRequest request = (TransformRequest) in.readObject();
+            assertEquals(typicalRequest().getTransformRequestOptions(), request.getTransformRequestOptions());
+            // Written as a HashMap, which nodes without TransformRequestOptions can read
+            assertEquals(HashMap.class, request.getTransformRequestOptions().getClass());
+        }
+    }
+}
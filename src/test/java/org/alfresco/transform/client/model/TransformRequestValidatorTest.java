@@ -209,4 +209,30 @@ public class TransformRequestValidatorTest
 
         assertTrue(errors.getAllErrors().isEmpty());
     }
+
+    @Test
+    public void testCheck()
+    {
+        assertEquals(TransformRequestValidator.NULL_REQUEST, TransformRequestValidator.check(null));
+        assertEquals(0, TransformRequestValidator.check(TransformMessageCodecTest.typicalRequest()));
+
+        TransformRequest request = new TransformRequest();
+        request.setSourceSize(0L);
+        request.setSchema(-1);
+        assertEquals(TransformRequestValidator.INVALID_REQUEST_ID |
+                     TransformRequestValidator.INVALID_SOURCE_REFERENCE |
+                     TransformRequestValidator.INVALID_SOURCE_SIZE |
+                     TransformRequestValidator.INVALID_SOURCE_MEDIA_TYPE |
+                     TransformRequestValidator.INVALID_TARGET_MEDIA_TYPE |
+                     TransformRequestValidator.INVALID_TARGET_EXTENSION |
+                     TransformRequestValidator.INVALID_CLIENT_DATA |
+                     TransformRequestValidator.INVALID_SCHEMA,
+            TransformRequestValidator.check(request));
+
+        Errors errors = new DirectFieldBindingResult(request, "request");
+        validator.validate(request, errors);
+        assertEquals(8, errors.getErrorCount());
+        assertEquals("-1", errors.getFieldError("clientData").getCode());
+        assertEquals("-1", errors.getFieldError("schema").getCode());
+    }
 }
@@ -0,0 +1,179 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_IMAGE_PNG;
+import static org.alfresco.transform.client.model.Mimetype.MIMETYPE_PDF;
+import static org.alfresco.transform.client.model.TransformMessageCodecTest.typicalRequest;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Checks that the binary and JSON {@link TransformRequestView}s read the same values as a full decode, and only
+ * change the internal context when re-encoding.
+ */
+public class TransformRequestViewTest
+{
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private void assertSameJson(final Object expected, final Object actual) throws IOException
+    {
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(expected)),
+            objectMapper.readTree(objectMapper.writeValueAsString(actual)));
+    }
+
+    private static InternalContext nextStep(final InternalContext context)
+    {
+        context.getMultiStep().setTransformsToBeDone(Collections.singletonList("pdfrenderer|" + MIMETYPE_IMAGE_PNG));
+        context.setCurrentSourceMediaType(MIMETYPE_PDF);
+        context.setCurrentTargetMediaType(MIMETYPE_IMAGE_PNG);
+        context.getTransformRequestOptions().put("page", "1");
+        return context;
+    }
+
+    private void assertView(final TransformRequest request, final TransformRequestView view) throws IOException
+    {
+        assertEquals(request.getRequestId(), view.getRequestId());
+        assertEquals(request.getSourceMediaType(), view.getSourceMediaType());
+        assertEquals(request.getTargetMediaType(), view.getTargetMediaType());
+        assertEquals(request.getSourceSize(), view.getSourceSize());
+        assertEquals(request.getSchema(), view.getSchema());
+        assertEquals(request.getTransformRequestOptions(), view.getTransformRequestOptions());
+        assertSameJson(request, view.toRequest());
+
+        // Each field is only decoded once
+        assertSame(view.getRequestId(), view.getRequestId());
+        assertSame(view.getSourceMediaType(), view.getSourceMediaType());
+        assertSame(view.getClientData(), view.getClientData());
+    }
+
+    @Test
+    public void testBinaryView() throws IOException
+    {
+        final TransformRequest request = typicalRequest();
+        final byte[] bytes = TransformMessageCodec.encode(request);
+        final TransformRequestView view = TransformMessageCodec.viewRequest(bytes);
+        assertView(request, view);
+        assertArrayEquals(bytes, view.toByteArray());
+
+        final TransformRequest empty = new TransformRequest();
+        empty.setTransformRequestOptions(null);
+        assertView(empty, TransformMessageCodec.viewRequest(TransformMessageCodec.encode(empty)));
+    }
+
+    @Test
+    public void testJsonView() throws IOException
+    {
+        final TransformRequest request = typicalRequest();
+        final byte[] json = objectMapper.writeValueAsBytes(request);
+        final TransformRequestView view = TransformMessageJsonCodec.viewRequest(json);
+        assertView(request, view);
+        assertArrayEquals(json, view.toByteArray());
+
+        final TransformRequestView empty = TransformMessageJsonCodec.viewRequest("{ }".getBytes(UTF_8));
+        assertSameJson(new TransformRequest(), empty.toRequest());
+    }
+
+    @Test
+    public void testReplaceBinaryInternalContext() throws IOException
+    {
+        final TransformRequest request = typicalRequest();
+        final byte[] bytes = TransformMessageCodec.encode(request);
+        final TransformRequestView view = TransformMessageCodec.viewRequest(bytes);
+        view.setInternalContext(nextStep(view.getInternalContext()));
+        final byte[] forwarded = view.toByteArray();
+
+        request.setInternalContext(nextStep(request.getInternalContext()));
+        assertSameJson(request, TransformMessageCodec.decodeRequest(forwarded));
+
+        view.setInternalContext(null);
+        request.setInternalContext(null);
+        assertSameJson(request, TransformMessageCodec.decodeRequest(view.toByteArray()));
+
+        final TransformRequestView withoutContext = TransformMessageCodec.viewRequest(view.toByteArray());
+        assertNull(withoutContext.getMultiStep());
+        withoutContext.setInternalContext(nextStep(typicalRequest().getInternalContext()));
+        request.setInternalContext(nextStep(typicalRequest().getInternalContext()));
+        assertSameJson(request, TransformMessageCodec.decodeRequest(withoutContext.toByteArray()));
+    }
+
+    @Test
+    public void testReplaceJsonInternalContext() throws IOException
+    {
+        final TransformRequest request = typicalRequest();
+        final byte[] json = objectMapper.writeValueAsBytes(request);
+        final TransformRequestView view = TransformMessageJsonCodec.viewRequest(json);
+        view.setInternalContext(nextStep(view.getInternalContext()));
+
+        request.setInternalContext(nextStep(request.getInternalContext()));
+        assertSameJson(request, TransformMessageJsonCodec.readRequest(view.toByteArray()));
+
+        final String spaced = "{ \"internalContext\" : null , \"clientData\" : \"x\" }";
+        final TransformRequestView first = TransformMessageJsonCodec.viewRequest(spaced.getBytes(UTF_8));
+        assertNull(first.getInternalContext());
+        first.setInternalContext(new InternalContext());
+        assertEquals("{ \"internalContext\":" + objectMapper.writeValueAsString(new InternalContext()) +
+                     " , \"clientData\" : \"x\" }", new String(first.toByteArray(), UTF_8));
+
+        final TransformRequestView added = TransformMessageJsonCodec.viewRequest("{\"requestId\":\"1\"}".getBytes(UTF_8));
+        added.setInternalContext(null);
+        assertEquals("{\"requestId\":\"1\",\"internalContext\":null}", new String(added.toByteArray(), UTF_8));
+    }
+
+    @Test
+    public void testMalformed() throws IOException
+    {
+        final byte[] bytes = TransformMessageCodec.encode(typicalRequest());
+        try
+        {
+            TransformMessageCodec.viewRequest(bytes, 0, bytes.length - 1);
+            fail("Expected a truncated message to be rejected");
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+
+        for (String json : new String[]{"[]", "null", "{\"requestId\":\"1\"", "{} {}"})
+        {
+            try
+            {
+                TransformMessageJsonCodec.viewRequest(json.getBytes(UTF_8));
+                fail("Expected " + json + " to be rejected");
+            }
+            catch (JsonParseException expected)
+            {
+            }
+        }
+    }
+}
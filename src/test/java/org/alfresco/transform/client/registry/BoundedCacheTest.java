@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BoundedCacheTest
+{
+    @Test
+    public void testLruEvictsLeastRecentlyUsed()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(3, EvictionPolicy.LRU);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        assertEquals("A", cache.get("a"));
+        cache.put("d", "D");
+
+        assertNull("b was the least recently used", cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void testSegmentedLruKeepsEntriesUsedMoreThanOnce()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(10,
+            EvictionPolicy.SEGMENTED_LRU);
+        cache.put("doclib", "A");
+        cache.get("doclib");
+
+        // A scan of entries that are only used once.
+        for (int i = 0; i < 100; i++)
+        {
+            cache.put("rendition" + i, "value");
+        }
+
+        assertEquals("A", cache.get("doclib"));
+        assertEquals(10, cache.size());
+        assertEquals(91, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void testReplaceAll()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(10,
+            EvictionPolicy.SEGMENTED_LRU);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        assertEquals("A", cache.get("a"));
+
+        cache.replaceAll((key, value) -> key.equals("b") ? null : value + value);
+
+        assertEquals("AA", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("CC", cache.get("c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testStats()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(100,
+            EvictionPolicy.SEGMENTED_LRU);
+        assertNull(cache.get("a"));
+        cache.put("a", "A", 1000L);
+        cache.get("a");
+        cache.get("a");
+
+        final CacheStats stats = cache.stats();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getLoadCount());
+        assertEquals(1000L, stats.getTotalLoadTimeNanos());
+        assertEquals(0, stats.getEvictionCount());
+        assertEquals(1, stats.getSize());
+    }
+
+    @Test
+    public void testInvalidEntriesAreMisses()
+    {
+        final BoundedCache<String, String> cache = new BoundedCache<>(100,
+            EvictionPolicy.SEGMENTED_LRU);
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a", value -> value.equals("A")));
+        assertNull(cache.get("a", value -> value.equals("B")));
+        assertNull(cache.get("a"));
+
+        final CacheStats stats = cache.stats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(0, stats.getSize());
+    }
+
+    @Test
+    public void testTransformCacheIsBounded()
+    {
+        final TransformCache data = new TransformCache(100, EvictionPolicy.SEGMENTED_LRU);
+        for (int i = 0; i < 1000; i++)
+        {
+            data.cache("rendition" + i, "text/plain", emptyList());
+        }
+
+        final CacheStats stats = data.getCacheStats();
+        assertTrue(stats.getSize() <= 100);
+        assertEquals(1000 - stats.getSize(), stats.getEvictionCount());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * Alfresco Transform Core
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * -
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ * -
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * -
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * -
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static org.alfresco.transform.client.registry.TransformRegistryHelper.addToPossibleTransformOptions;
+import static org.alfresco.transform.client.registry.TransformRegistryHelper.optionsMatch;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.alfresco.transform.client.model.config.TransformOption;
+import org.alfresco.transform.client.model.config.TransformOptionGroup;
+import org.alfresco.transform.client.model.config.TransformOptionValue;
+import org.junit.Test;
+
+/**
+ * Checks the precompiled {@link OptionMatcher} gives the same results as walking the tree of transform options.
+ */
+public class OptionMatcherTest
+{
+    private static final String[] NAMES = {"a", "b", "c", "d", "e", "f"};
+
+    @Test
+    public void testSameResultAsTransformOptionTree()
+    {
+        final Map<String, Integer> optionIds = new HashMap<>();
+        for (String name : NAMES)
+        {
+            optionIds.put(name, optionIds.size());
+        }
+
+        final Random random = new Random(42);
+        for (int tree = 0; tree < 2000; tree++)
+        {
+            final TransformOptionGroup transformOptionGroup =
+                new TransformOptionGroup(true, randomOptions(random, 3));
+            final OptionMatcher optionMatcher = OptionMatcher.compile(transformOptionGroup,
+                optionIds, 1);
+
+            for (int subset = 0; subset < 1 << NAMES.length; subset++)
+            {
+                final Map<String, String> actualOptions = new HashMap<>();
+                for (int i = 0; i < NAMES.length; i++)
+                {
+                    if ((subset & 1 << i) != 0)
+                    {
+                        actualOptions.put(NAMES[i], "value");
+                    }
+                }
+
+                final Map<String, Boolean> possibleTransformOptions = new HashMap<>();
+                addToPossibleTransformOptions(possibleTransformOptions, transformOptionGroup, true,
+                    actualOptions);
+                final boolean expected = optionsMatch(possibleTransformOptions, actualOptions);
+
+                final boolean actual = optionMatcher.matches(new long[]{subset}, new long[1],
+                    new long[1]);
+                assertEquals(transformOptionGroup + " with " + actualOptions.keySet(), expected,
+                    actual);
+            }
+        }
+    }
+
+    @Test
+    public void testReusedByTheNextTable()
+    {
+        final String doc = "application/msword";
+        final String pdf = "application/pdf";
+        final String txt = "text/plain";
+        final Set<TransformOption> pageOptions = Set.of(new TransformOptionValue(false, "page"));
+        final Set<TransformOption> manyOptions = new HashSet<>();
+        for (int i = 0; i < 100; i++)
+        {
+            manyOptions.add(new TransformOptionValue(false, "option" + i));
+        }
+        final Map<String, Map<String, List<SupportedTransform>>> transforms = new HashMap<>();
+        transforms.put(doc, new HashMap<>(Map.of(pdf, List.of(
+            new SupportedTransform("page", pageOptions, -1, 50)))));
+
+        final CompiledOptions compiledOptions = new CompiledOptions();
+        final TransformTable table = new TransformTable(transforms, compiledOptions, null, null);
+        final int docId = table.mimetypeId(doc);
+        final OptionMatcher matcher = table.retrieveOptionMatchers(docId, table.mimetypeId(pdf))[0];
+
+        // More option names than fit in the masks of the matcher
+        transforms.get(doc).put(txt, List.of(
+            new SupportedTransform("many", manyOptions, -1, 50)));
+        final TransformTable nextTable = new TransformTable(transforms, compiledOptions, null, null);
+        final int nextDocId = nextTable.mimetypeId(doc);
+        assertSame(matcher, nextTable.retrieveOptionMatchers(nextDocId, nextTable.mimetypeId(pdf))[0]);
+
+        final int words = nextTable.optionWords();
+        assertEquals(2, words);
+        final long[] pageMask = nextTable.optionMask(Map.of("page", "1"));
+        final long[] manyMask = nextTable.optionMask(Map.of("option99", "1"));
+        assertTrue(matcher.matches(pageMask, new long[words], new long[words]));
+        assertFalse(matcher.matches(manyMask, new long[words], new long[words]));
+        assertTrue(nextTable.retrieveOptionMatchers(nextDocId, nextTable.mimetypeId(txt))[0]
+            .matches(manyMask, new long[words], new long[words]));
+    }
+
+    private static Set<TransformOption> randomOptions(final Random random, final int depth)
+    {
+        final Set<TransformOption> options = new HashSet<>();
+        final int size = random.nextInt(4);
+        for (int i = 0; i < size; i++)
+        {
+            if (depth > 0 && random.nextInt(3) == 0)
+            {
+                options.add(new TransformOptionGroup(random.nextBoolean(),
+                    randomOptions(random, depth - 1)));
+            }
+            else
+            {
+                options.add(new TransformOptionValue(random.nextBoolean(),
+                    NAMES[random.nextInt(NAMES.length)]));
+            }
+        }
+        return options;
+    }
+}
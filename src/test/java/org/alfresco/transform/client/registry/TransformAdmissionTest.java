@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static java.util.Collections.emptyMap;
+import static org.alfresco.transform.client.model.TransformRequestValidator.INVALID_CLIENT_DATA;
+import static org.alfresco.transform.client.model.TransformRequestValidator.INVALID_SOURCE_SIZE;
+import static org.alfresco.transform.client.model.TransformRequestValidator.NULL_REQUEST;
+import static org.alfresco.transform.client.registry.TransformAdmission.UNSUPPORTED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.alfresco.transform.client.model.TransformRequest;
+import org.alfresco.transform.client.model.config.SupportedSourceAndTarget;
+import org.alfresco.transform.client.model.config.TransformConfig;
+import org.alfresco.transform.client.model.config.Transformer;
+import org.junit.Test;
+
+/**
+ * Test the admission of batches of requests by TransformAdmission.
+ */
+public class TransformAdmissionTest
+{
+    private static final String DOC = "application/msword";
+    private static final String PDF = "application/pdf";
+    private static final String PNG = "image/png";
+
+    private static TransformRequest request(final int i, final String targetMediaType, final long sourceSize)
+    {
+        return TransformRequest.builder()
+            .withRequestId("request" + i)
+            .withSourceReference("source" + i)
+            .withSourceMediaType(DOC)
+            .withSourceSize(sourceSize)
+            .withTargetMediaType(targetMediaType)
+            .withTargetExtension("pdf")
+            .withClientData("ACS")
+            .build();
+    }
+
+    private static AbstractTransformRegistry buildRegistry() throws Exception
+    {
+        final AbstractTransformRegistry registry = new TransformRegistryTest().buildTransformServiceRegistryImpl();
+        registry.registerAll(TransformConfig
+            .builder()
+            .withTransformOptions(emptyMap())
+            .withTransformers(List.of(
+                new Transformer("small", null, Set.of(new SupportedSourceAndTarget(DOC, PDF, 1000, 50))),
+                new Transformer("large", null, Set.of(new SupportedSourceAndTarget(DOC, PDF, -1, 60)))))
+            .build(), null, TransformAdmissionTest.class.getName());
+        return registry;
+    }
+
+    @Test
+    public void testAdmit() throws Exception
+    {
+        final AbstractTransformRegistry registry = buildRegistry();
+
+        final TransformAdmission small = TransformAdmission.admit(registry, request(1, PDF, 500));
+        assertTrue(small.isAccepted());
+        assertEquals("small", small.getTransformerName());
+        assertEquals("large", TransformAdmission.admit(registry, request(2, PDF, 5000)).getTransformerName());
+
+        final TransformAdmission unsupported = TransformAdmission.admit(registry, request(3, PNG, 500));
+        assertFalse(unsupported.isAccepted());
+        assertNull(unsupported.getTransformerName());
+        assertEquals(UNSUPPORTED, unsupported.getReasons());
+        assertEquals(1, unsupported.getReasonMessages().size());
+
+        final TransformRequest invalid = request(4, PDF, 0);
+        invalid.setClientData(null);
+        final TransformAdmission rejected = TransformAdmission.admit(registry, invalid);
+        assertEquals(INVALID_SOURCE_SIZE | INVALID_CLIENT_DATA, rejected.getReasons());
+        assertEquals(Arrays.asList("sourceSize cannot be null or have its value smaller than 0",
+            "clientData cannot be null or empty"), rejected.getReasonMessages());
+        assertSame(invalid, rejected.getRequest());
+
+        assertEquals(NULL_REQUEST, TransformAdmission.admit(registry, null).getReasons());
+    }
+
+    @Test
+    public void testAdmitAllOnPool() throws Exception
+    {
+        final AbstractTransformRegistry registry = buildRegistry();
+        final List<TransformRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+        {
+            requests.add(request(i, i % 10 == 0 ? PNG : PDF, i % 7 == 0 ? 0 : i));
+        }
+
+        final TransformAdmission.Batch expected = TransformAdmission.admitAll(registry, requests);
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try
+        {
+            final TransformAdmission.Batch actual = TransformAdmission.admitAll(registry, requests, pool);
+            assertEquals(toStrings(expected.getAccepted()), toStrings(actual.getAccepted()));
+            assertEquals(toStrings(expected.getRejected()), toStrings(actual.getRejected()));
+            assertEquals(requests.size(), actual.getAccepted().size() + actual.getRejected().size());
+            assertEquals(requests.get(1), actual.getAccepted().get(0).getRequest());
+            assertEquals(requests.get(0), actual.getRejected().get(0).getRequest());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private static List<String> toStrings(final List<TransformAdmission> admissions)
+    {
+        return admissions.stream().map(TransformAdmission::toString).collect(Collectors.toList());
+    }
+}
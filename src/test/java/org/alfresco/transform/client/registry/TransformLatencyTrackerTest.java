@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+
+import org.alfresco.transform.client.model.config.SupportedSourceAndTarget;
+import org.alfresco.transform.client.model.config.TransformConfig;
+import org.alfresco.transform.client.model.config.Transformer;
+import org.junit.Test;
+
+/**
+ * Test the TransformLatencyTracker and its use by the AbstractTransformRegistry.
+ */
+public class TransformLatencyTrackerTest
+{
+    private static final String DOC = "application/msword";
+    private static final String PDF = "application/pdf";
+
+    private final TestClock clock = new TestClock();
+    private final TransformLatencyTracker tracker = new TransformLatencyTracker(0.5,
+        Duration.ofMinutes(1), clock);
+
+    private static class TestClock extends Clock
+    {
+        private long millis = 1000000;
+
+        @Override
+        public ZoneId getZone()
+        {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant()
+        {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        private void advance(final Duration duration)
+        {
+            millis += duration.toMillis();
+        }
+    }
+
+    @Test
+    public void testBuckets()
+    {
+        assertEquals(0, TransformLatencyTracker.bucket(-1));
+        assertEquals(0, TransformLatencyTracker.bucket(1));
+        assertEquals(1, TransformLatencyTracker.bucket(2));
+        assertEquals(2, TransformLatencyTracker.bucket(3));
+        assertEquals(2, TransformLatencyTracker.bucket(4));
+        assertEquals(10, TransformLatencyTracker.bucket(1024));
+        assertEquals(11, TransformLatencyTracker.bucket(1025));
+        assertEquals(63, TransformLatencyTracker.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testMovingAverage()
+    {
+        assertTrue(Double.isNaN(tracker.predictDuration("t1", 1000)));
+
+        tracker.recordCompletion("t1", 1000, 100);
+        assertEquals(100.0, tracker.predictDuration("t1", 1000), 0);
+        tracker.recordCompletion("t1", 1000, 200);
+        assertEquals(150.0, tracker.predictDuration("t1", 1000), 0);
+        tracker.recordCompletion("t1", 600, 50);
+        assertEquals(100.0, tracker.predictDuration("t1", 1000), 0);
+
+        // Other sizes are held separately
+        assertTrue(Double.isNaN(tracker.predictDuration("t1", 100)));
+        assertTrue(Double.isNaN(tracker.predictDuration("t1", 2000)));
+
+        // Old averages are ignored
+        clock.advance(Duration.ofSeconds(60));
+        assertEquals(100.0, tracker.predictDuration("t1", 1000), 0);
+        clock.advance(Duration.ofMillis(1));
+        assertTrue(Double.isNaN(tracker.predictDuration("t1", 1000)));
+    }
+
+    @Test
+    public void testSelection() throws Exception
+    {
+        final AbstractTransformRegistry registry = new TransformRegistryTest().buildTransformServiceRegistryImpl();
+        registry.registerAll(TransformConfig
+            .builder()
+            .withTransformOptions(emptyMap())
+            .withTransformers(List.of(
+                new Transformer("t1", null, Set.of(new SupportedSourceAndTarget(DOC, PDF, -1, 50))),
+                new Transformer("t2", null, Set.of(new SupportedSourceAndTarget(DOC, PDF, -1, 60))),
+                new Transformer("t3", null, Set.of(new SupportedSourceAndTarget(DOC, PDF, 1024, 70)))))
+            .build(), null, getClass().getName());
+
+        // Off by default
+        tracker.recordCompletion("t2", 1000, 10);
+        assertEquals("t1", registry.findTransformerName(DOC, 1000, PDF, emptyMap(), null));
+
+        // Not used until there is a duration for the transformer that would normally be used
+        registry.setLatencyTracker(tracker);
+        assertEquals("t1", registry.findTransformerName(DOC, 1000, PDF, emptyMap(), null));
+
+        tracker.recordCompletion("t1", 1000, 100);
+        assertEquals("t2", registry.findTransformerName(DOC, 1000, PDF, emptyMap(), "pdf"));
+        assertEquals("t2", registry.findTransformerName(DOC, 1000, PDF, emptyMap(), null));
+
+        // Only transformers that support the size are considered
+        tracker.recordCompletion("t3", 2000, 1);
+        tracker.recordCompletion("t1", 2000, 100);
+        assertEquals("t1", registry.findTransformerName(DOC, 2000, PDF, emptyMap(), null));
+        tracker.recordCompletion("t3", 1000, 1);
+        assertEquals("t3", registry.findTransformerName(DOC, 1000, PDF, emptyMap(), null));
+
+        // Priority breaks ties
+        final TransformLatencyTracker latestDuration = new TransformLatencyTracker(1, Duration.ofMinutes(1),
+            clock);
+        registry.setLatencyTracker(latestDuration);
+        latestDuration.recordCompletion("t1", 1000, 100);
+        latestDuration.recordCompletion("t2", 1000, 10);
+        latestDuration.recordCompletion("t3", 1000, 10);
+        assertEquals("t2", registry.findTransformerName(DOC, 1000, PDF, emptyMap(), null));
+
+        // Old durations are ignored
+        clock.advance(Duration.ofMinutes(2));
+        assertEquals("t1", registry.findTransformerName(DOC, 1000, PDF, emptyMap(), null));
+    }
+}
@@ -29,7 +29,9 @@ package org.alfresco.transform.client.registry;
 import org.alfresco.transform.exceptions.TransformException;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
@@ -115,15 +117,162 @@ public class TransformRegistryHelperTest
         assertOrder(asList(s100p50, s200p50, s300p55, p50), asList(p50));
     }
 
+    @Test
+    public void testListBySizeSameAsInsertionImplementation()
+    {
+        final long[] sizes = {-1, 0, 100, 200, 300, 400};
+        final int[] priorities = {40, 45, 50, 55, 60};
+        final Random random = new Random(42);
+        for (int run = 0; run < 20000; run++)
+        {
+            final List<SupportedTransform> transforms = new ArrayList<>();
+            final int count = random.nextInt(12);
+            for (int i = 0; i < count; i++)
+            {
+                transforms.add(new SupportedTransform("t" + i, emptySet(),
+                        sizes[random.nextInt(sizes.length)], priorities[random.nextInt(priorities.length)]));
+            }
+
+            final List<SupportedTransform> expected = new ArrayList<>();
+            transforms.forEach(t -> addToSupportedTransformList(expected, t));
+
+            assertEquals(transforms.toString(), expected, TransformRegistryHelper.buildTransformListBySize(transforms));
+        }
+    }
+
+    // The original O(n^2) insertion based implementation, used to check the replacement gives the same results.
+    //
+    // Add newTransform to the transformListBySize in increasing size order and discards
+    // lower priority (numerically higher) transforms with a smaller or equal size.
+    private static void addToSupportedTransformList(
+        final List<SupportedTransform> transformListBySize,
+        final SupportedTransform newTransform)
+    {
+        if (transformListBySize.isEmpty())
+        {
+            transformListBySize.add(newTransform);
+        }
+        else
+        {
+            for (int i = 0; i < transformListBySize.size(); i++)
+            {
+                final SupportedTransform existingTransform = transformListBySize.get(i);
+                final int compareMaxSize = compareMaxSize(newTransform.getMaxSourceSizeBytes(),
+                        existingTransform.getMaxSourceSizeBytes());
+                final int comparePriority = existingTransform.getPriority() - newTransform.getPriority();
+
+                if (compareMaxSize == 0)
+                {
+                    if (comparePriority == 0)
+                    {
+                        // If same priority and size limit, replace with the newer transform.
+                        // It is possibly a replacement in an extension.
+                        transformListBySize.set(i, newTransform);
+                        break;
+                    }
+                    else if (comparePriority > 0)
+                    {
+                        // Replace as newer one is higher priority and try to discard some existing ones.
+                        transformListBySize.set(i, newTransform);
+                        discardFromSupportedTransformList(transformListBySize, i);
+                        break;
+                    }
+                    else
+                    {
+                        // Ignore as lower priority
+                        break;
+                    }
+                }
+                else if (compareMaxSize < 0)
+                {
+                    if (comparePriority > 0)
+                    {
+                        // If higher priority insert and try to discard some existing ones.
+                        transformListBySize.add(i, newTransform);
+                        discardFromSupportedTransformList(transformListBySize, i);
+                        break;
+                    }
+                    else
+                    {
+                        // Ignore the newer one as its priority is lower or the same as one that has a higher size limit
+                        break;
+                    }
+                }
+                else // if (compareMaxSize > 0)
+                {
+                    if (comparePriority < 0)
+                    {
+                        if (i+1 < transformListBySize.size())
+                        {
+                            // Look at the next element as size is higher but the priority is lower.
+                            continue;
+                        }
+                        else
+                        {
+                            // Append to the list as the size is higher but the priority is lower.
+                            transformListBySize.add(newTransform);
+                            break;
+                        }
+                    }
+                    // Else same or better priority and higher size limit, so replace with the newer transform and try
+                    // to discard some existing ones.
+                    transformListBySize.set(i, newTransform);
+                    discardFromSupportedTransformList(transformListBySize, i);
+                    break;
+                }
+            }
+        }
+    }
+
+    // Starting at i+1, try to remove transforms that will not be used.
+    private static void discardFromSupportedTransformList(List<SupportedTransform> transformListBySize, int i)
+    {
+        SupportedTransform newTransform = transformListBySize.get(i++);
+        while (i < transformListBySize.size())
+        {
+            final SupportedTransform existingTransform = transformListBySize.get(i);
+            final int compareMaxSize = compareMaxSize(newTransform.getMaxSourceSizeBytes(),
+                    existingTransform.getMaxSourceSizeBytes());
+            final int comparePriority = existingTransform.getPriority() - newTransform.getPriority();
+
+            // Discard those with
+            // 1) the same priority but support a smaller size
+            // 2) those with a lower priority and a smaller size
+            if ((comparePriority == 0 && compareMaxSize >= 0) ||
+                (comparePriority > 0 && compareMaxSize >= 0))
+            {
+                transformListBySize.remove(i);
+            }
+            else
+            {
+                break;
+            }
+        }
+    }
+
+    // compare where -1 is unlimited.
+    private static int compareMaxSize(final long a, final long b)
+    {
+        return a == -1 ? b == -1 ? 0 : 1 : b == -1 ? -1 : Long.compare(a, b);
+    }
+
     private void assertOrder(List<SupportedTransform> transformsInLoadOrder, List<SupportedTransform> expectedList)
     {
         TransformRegistryHelper helper = new TransformRegistryHelper();
         TransformCache data = new TransformCache();
         transformsInLoadOrder.forEach(t->data.appendTransform("text/plain", "application/pdf", t));
 
-        List<SupportedTransform> supportedTransforms = helper.retrieveTransformListBySize(data,
+        TransformListBySize supportedTransforms = helper.retrieveTransformListBySize(data,
                 "text/plain", "application/pdf", null, null);
 
+        // Check the binary search used by AbstractTransformRegistry gives the same result as a linear one.
+        for (long size : new long[]{-1, 0, 1, 99, 100, 101, 199, 200, 201, 299, 300, 301, Long.MAX_VALUE})
+        {
+            assertEquals("Transform name for size " + size, findTransformerName(supportedTransforms, size),
+                    supportedTransforms.findTransformerName(size));
+        }
+        assertEquals("MaxSize", findMaxSize(supportedTransforms), supportedTransforms.getMaxSourceSizeBytes());
+
         // Check the values used.
         String transformerName = findTransformerName(supportedTransforms, 1);
         long maxSize = findMaxSize(supportedTransforms);
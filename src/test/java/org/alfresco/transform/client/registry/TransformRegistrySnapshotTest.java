@@ -0,0 +1,232 @@
+/*
+ * #%L
+ * Alfresco Transform Model
+ * %%
+ * Copyright (C) 2005 - 2021 Alfresco Software Limited
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package org.alfresco.transform.client.registry;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.alfresco.transform.client.model.config.SupportedSourceAndTarget;
+import org.alfresco.transform.client.model.config.TransformConfig;
+import org.alfresco.transform.client.model.config.TransformOption;
+import org.alfresco.transform.client.model.config.TransformOptionGroup;
+import org.alfresco.transform.client.model.config.TransformOptionValue;
+import org.alfresco.transform.client.model.config.Transformer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the writing of registered transforms to a snapshot file and their registration from it.
+ */
+public class TransformRegistrySnapshotTest
+{
+    private static final String DOC = "application/msword";
+    private static final String PDF = "application/pdf";
+    private static final String PNG = "image/png";
+    private static final String TXT = "text/plain";
+
+    private static final long FINGERPRINT = TransformRegistrySnapshot.fingerprint("config", "v1");
+
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory("snapshot");
+        file = dir.resolve("registry.snapshot");
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> files = Files.list(dir))
+        {
+            for (Path path : (Iterable<Path>) files::iterator)
+            {
+                Files.delete(path);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static AbstractTransformRegistry buildRegistry() throws Exception
+    {
+        return new TransformRegistryTest().buildTransformServiceRegistryImpl();
+    }
+
+    private static TransformConfig buildConfig()
+    {
+        final Map<String, Set<TransformOption>> transformOptions = Map.of(
+            "imageOptions", Set.of(
+                new TransformOptionValue(false, "resizeWidth"),
+                new TransformOptionGroup(false, Set.of(
+                    new TransformOptionValue(true, "thumbnail"),
+                    new TransformOptionValue(false, "timeout"))))
+        );
+        return TransformConfig
+            .builder()
+            .withTransformOptions(transformOptions)
+            .withTransformers(List.of(
+                new Transformer("office", null, Set.of(
+                    new SupportedSourceAndTarget(DOC, PDF, -1, 50),
+                    new SupportedSourceAndTarget(DOC, TXT, 1024, 40))),
+                new Transformer("renderer", Set.of("imageOptions"), Set.of(
+                    new SupportedSourceAndTarget(PDF, PNG, -1, 50))),
+                new Transformer("text", null, Set.of(
+                    new SupportedSourceAndTarget(DOC, TXT, -1, 60),
+                    new SupportedSourceAndTarget(TXT, PDF, -1, 50)))))
+            .build();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        final AbstractTransformRegistry registry = buildRegistry();
+        registry.registerAll(buildConfig(), null, getClass().getName());
+        registry.writeSnapshot(file, FINGERPRINT);
+
+        final AbstractTransformRegistry restored = buildRegistry();
+        assertTrue(restored.registerSnapshot(file, FINGERPRINT));
+
+        final TransformCache data = registry.getData();
+        final TransformCache restoredData = restored.getData();
+        assertEquals(data.getTransforms(), restoredData.getTransforms());
+        assertEquals(data.getTransformerCount(), restoredData.getTransformerCount());
+        assertEquals(data.getTransformCount(), restoredData.getTransformCount());
+        assertEquals(data.getRegistrationsByTransformer(), restoredData.getRegistrationsByTransformer());
+
+        // Transforms of the same transformer still share their options
+        final List<SupportedTransform> docToPdf = restoredData.retrieveTransforms(DOC, PDF);
+        final List<SupportedTransform> docToTxt = restoredData.retrieveTransforms(DOC, TXT);
+        assertSame(docToPdf.get(0).getTransformOptions().getTransformOptions(),
+            docToTxt.get(0).getTransformOptions().getTransformOptions());
+
+        final Map<String, String> thumbnail = singletonMap("thumbnail", "true");
+        assertEquals("renderer", restored.findTransformerName(PDF, 100, PNG, thumbnail, null));
+        assertNull(restored.findTransformerName(PDF, 100, PNG, singletonMap("page", "1"), null));
+        assertEquals("office", restored.findTransformerName(DOC, 100, TXT, emptyMap(), null));
+        assertEquals("text", restored.findTransformerName(DOC, 2048, TXT, emptyMap(), null));
+        assertEquals(2, restored.findRoute(DOC, 100, PNG).getSteps().size());
+        assertEquals(registry.findRoute(DOC, 100, PNG), restored.findRoute(DOC, 100, PNG));
+
+        // Transformers may be replaced after a restore, as their registrations were restored too
+        restored.registerDelta(TransformConfig.builder().build(), singletonList("text"), null,
+            getClass().getName());
+        assertNull(restored.findTransformerName(DOC, 2048, TXT, emptyMap(), null));
+        assertEquals(2, restoredData.getTransformerCount());
+    }
+
+    @Test
+    public void testEmptyRegistry() throws Exception
+    {
+        buildRegistry().writeSnapshot(file, FINGERPRINT);
+
+        final AbstractTransformRegistry restored = buildRegistry();
+        assertTrue(restored.registerSnapshot(file, FINGERPRINT));
+        assertTrue(restored.getData().getTransforms().isEmpty());
+        assertEquals(0, restored.getData().getTransformerCount());
+    }
+
+    @Test
+    public void testUnusableSnapshots() throws Exception
+    {
+        final AbstractTransformRegistry restored = buildRegistry();
+        assertFalse(restored.registerSnapshot(file, FINGERPRINT));
+
+        final AbstractTransformRegistry registry = buildRegistry();
+        registry.registerAll(buildConfig(), null, getClass().getName());
+        registry.writeSnapshot(file, FINGERPRINT);
+        final byte[] bytes = Files.readAllBytes(file);
+
+        // Stale
+        assertFalse(restored.registerSnapshot(file, TransformRegistrySnapshot.fingerprint("config", "v2")));
+
+        // Different version of the format
+        final byte[] otherVersion = bytes.clone();
+        otherVersion[7]++;
+        Files.write(file, otherVersion);
+        assertFalse(restored.registerSnapshot(file, FINGERPRINT));
+
+        // Damaged or truncated
+        final byte[] damaged = bytes.clone();
+        damaged[damaged.length / 2] ^= 1;
+        Files.write(file, damaged);
+        assertFalse(restored.registerSnapshot(file, FINGERPRINT));
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertFalse(restored.registerSnapshot(file, FINGERPRINT));
+
+        assertTrue(restored.getData().getTransforms().isEmpty());
+        assertEquals(0, restored.getData().getTransformerCount());
+
+        Files.write(file, bytes);
+        assertTrue(restored.registerSnapshot(file, FINGERPRINT));
+    }
+
+    @Test
+    public void testNotWrittenDuringRegistration() throws Exception
+    {
+        final AbstractTransformRegistry registry = buildRegistry();
+        registry.getData().beginRegistration();
+        try
+        {
+            registry.writeSnapshot(file, FINGERPRINT);
+            fail("Expected an IllegalStateException");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+        finally
+        {
+            registry.getData().endRegistration();
+        }
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testFingerprint()
+    {
+        assertEquals(FINGERPRINT, TransformRegistrySnapshot.fingerprint("config", "v1"));
+        assertNotEquals(FINGERPRINT, TransformRegistrySnapshot.fingerprint("v1", "config"));
+        assertNotEquals(FINGERPRINT, TransformRegistrySnapshot.fingerprint("configv1"));
+        assertNotEquals(TransformRegistrySnapshot.fingerprint(""),
+            TransformRegistrySnapshot.fingerprint((String) null));
+    }
+}
@@ -21,6 +21,7 @@
  */
 package org.alfresco.transform.client.registry;
 
+import static java.util.Arrays.asList;
 import static java.util.Arrays.stream;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
@@ -28,24 +29,39 @@ import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
 import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static org.alfresco.transform.client.registry.TransformRegistryHelper.addToPossibleTransformOptions;
 import static org.alfresco.transform.client.registry.TransformRegistryHelper.optionsMatch;
+import static org.alfresco.transform.client.registry.TransformRegistryHelper.retrieveTransformListBySize;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+import org.alfresco.transform.client.model.MultiStep;
 import org.alfresco.transform.client.model.config.SupportedSourceAndTarget;
 import org.alfresco.transform.client.model.config.TransformConfig;
 import org.alfresco.transform.client.model.config.TransformOption;
 import org.alfresco.transform.client.model.config.TransformOptionGroup;
 import org.alfresco.transform.client.model.config.TransformOptionValue;
+import org.alfresco.transform.client.model.config.TransformStep;
 import org.alfresco.transform.client.model.config.Transformer;
 import org.junit.Before;
 import org.junit.Test;
@@ -463,12 +479,71 @@ public class TransformRegistryTest
         final SupportedTransform cachedSupportedTransform = new SupportedTransform("name1",
             emptySet(), 999999L, 0);
 
-        registry.getData()
-                .retrieveCached("doclib", DOC)
-                .add(cachedSupportedTransform);
+        // The cached list is immutable, so is replaced rather than changed in place.
+        final List<SupportedTransform> cached = registry.getData().retrieveCached("doclib", DOC);
+        try
+        {
+            cached.add(cachedSupportedTransform);
+            fail("Expected the cached list to be immutable");
+        }
+        catch (UnsupportedOperationException expected)
+        {
+        }
+        final List<SupportedTransform> cachedList = new ArrayList<>(cached);
+        cachedList.add(cachedSupportedTransform);
+        registry.getData().cache("doclib", DOC, cachedList);
         assertEquals(999999L, registry.findMaxSize(DOC, GIF, emptyMap(), "doclib"));
     }
 
+    @Test
+    // Without a renditionName, results are cached on the source, target and actual option names.
+    public void testCacheWithoutRenditionName()
+    {
+        mapOfTransformOptions.put("options1", set(
+            new TransformOptionValue(false, "page"),
+            new TransformOptionValue(false, "width")));
+        final Transformer transformer1 = new Transformer("transformer1", singleton("options1"), set(
+            new SupportedSourceAndTarget(DOC, GIF, 102400)));
+        registry.register(transformer1, mapOfTransformOptions, getBaseUrl(transformer1),
+            getClass().getName());
+
+        final Map<String, String> pageOptions = buildActualOptions(set("page"));
+        final List<SupportedTransform> transformList = retrieveTransformListBySize(
+            registry.getData(), DOC, GIF, pageOptions, null);
+        assertEquals(1, transformList.size());
+        assertSame(transformList, retrieveTransformListBySize(registry.getData(), DOC, GIF,
+            buildActualOptions(set("page")), null));
+        assertNotSame(transformList, retrieveTransformListBySize(registry.getData(), DOC, GIF,
+            buildActualOptions(set("page", "width")), null));
+        assertNotSame(transformList, retrieveTransformListBySize(registry.getData(), DOC, JPEG,
+            pageOptions, null));
+
+        // Registering another transformer publishes a new generation of the data, so nothing is reused.
+        final Transformer transformer2 = new Transformer("transformer2", singleton("options1"), set(
+            new SupportedSourceAndTarget(DOC, GIF, -1)));
+        registry.register(transformer2, mapOfTransformOptions, getBaseUrl(transformer2),
+            getClass().getName());
+        assertEquals(-1L, registry.findMaxSize(DOC, GIF, pageOptions, null));
+        assertNotSame(transformList, retrieveTransformListBySize(registry.getData(), DOC, GIF,
+            pageOptions, null));
+    }
+
+    @Test
+    public void testRegistrationNotVisibleUntilComplete()
+    {
+        final Transformer transformer = new Transformer("name", null, set(
+            new SupportedSourceAndTarget(DOC, GIF, -1)));
+
+        final TransformCache data = registry.getData();
+        data.beginRegistration();
+        registry.register(transformer, mapOfTransformOptions, getBaseUrl(transformer),
+            getClass().getName());
+        assertSupported(DOC, 1024, GIF, emptyMap(), null, "not yet published");
+
+        data.endRegistration();
+        assertSupported(DOC, 1024, GIF, emptyMap(), null, "");
+    }
+
     @Test
     public void testGetTransformerName() throws Exception
     {
@@ -498,6 +573,517 @@ public class TransformRegistryTest
         assertTransformerName(MSG, 300, GIF, emptyMap(), "transformer5", t1, t2, t3, t4, t5);
     }
 
+    @Test
+    public void testFindTransformers()
+    {
+        mapOfTransformOptions.put("options1", set(
+            new TransformOptionValue(false, "page"),
+            new TransformOptionValue(false, "width")));
+        final Transformer transformer1 = new Transformer("transformer1", singleton("options1"), set(
+            new SupportedSourceAndTarget(DOC, GIF, 102400),
+            new SupportedSourceAndTarget(MSG, GIF, -1)));
+        final Transformer transformer2 = new Transformer("transformer2", null, set(
+            new SupportedSourceAndTarget(DOC, GIF, -1, 60),
+            new SupportedSourceAndTarget(PDF, TXT, 2048)));
+        registry.register(transformer1, mapOfTransformOptions, null, getClass().getName());
+        registry.register(transformer2, mapOfTransformOptions, null, getClass().getName());
+
+        final String[] sources = {DOC, MSG, PDF, XLS};
+        final String[] targets = {GIF, TXT};
+        final long[] sizes = {-1, 1024, 2048, 102400, 102401};
+        final List<Map<String, String>> options = asList(null, emptyMap(),
+            buildActualOptions(set("page")), buildActualOptions(set("page", "timeout")),
+            buildActualOptions(set("height")));
+
+        // Repeat the same combinations so that the batch is large enough to be split up.
+        final List<TransformQuery> queries = new ArrayList<>();
+        while (queries.size() < AbstractTransformRegistry.PARALLEL_BATCH_THRESHOLD * 3)
+        {
+            for (String source : sources)
+            {
+                for (String target : targets)
+                {
+                    for (long size : sizes)
+                    {
+                        for (Map<String, String> actualOptions : options)
+                        {
+                            queries.add(new TransformQuery(source, size, target, actualOptions, null));
+                            queries.add(new TransformQuery(source, size, target, actualOptions,
+                                "doclib" + target));
+                        }
+                    }
+                }
+            }
+        }
+
+        final List<TransformQueryResult> expected = queries
+            .stream()
+            .map(q -> new TransformQueryResult(
+                registry.findTransformerName(q.getSourceMimetype(), q.getSourceSizeInBytes(),
+                    q.getTargetMimetype(), q.getActualOptions(), q.getRenditionName()),
+                registry.findMaxSize(q.getSourceMimetype(), q.getTargetMimetype(),
+                    q.getActualOptions(), q.getRenditionName()),
+                q.getSourceSizeInBytes()))
+            .collect(toList());
+        assertEquals(expected, registry.findTransformers(queries));
+        assertEquals(expected, registry.findTransformers(queries, ForkJoinPool.commonPool()));
+    }
+
+    @Test
+    public void testRegisterAllInParallel() throws Exception
+    {
+        mapOfTransformOptions.put("options1", set(
+            new TransformOptionValue(false, "page"),
+            new TransformOptionValue(false, "width")));
+        final String[] mimetypes = {GIF, JPEG, PDF, DOC, XLS, PPT, MSG, TXT};
+        final Random random = new Random(1234);
+        final List<Transformer> transformers = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+        {
+            final Set<SupportedSourceAndTarget> supported = new HashSet<>();
+            for (int j = random.nextInt(10); j >= 0; j--)
+            {
+                supported.add(new SupportedSourceAndTarget(mimetypes[random.nextInt(mimetypes.length)],
+                    mimetypes[random.nextInt(mimetypes.length)], random.nextInt(3) * 1024 - 1,
+                    50 + random.nextInt(2) * 10));
+            }
+            transformers.add(new Transformer("transformer" + i,
+                random.nextBoolean() ? singleton("options1") : null, supported));
+        }
+        final TransformConfig transformConfig = TransformConfig
+            .builder()
+            .withTransformOptions(mapOfTransformOptions)
+            .withTransformers(transformers)
+            .build();
+
+        registry.registerAll(transformConfig, null, getClass().getName());
+        final AbstractTransformRegistry parallelRegistry = buildTransformServiceRegistryImpl();
+        parallelRegistry.registerAll(transformConfig, null, getClass().getName(), new ForkJoinPool(4));
+
+        final TransformCache data = registry.getData();
+        final TransformCache parallelData = parallelRegistry.getData();
+        assertEquals(data.getTransforms(), parallelData.getTransforms());
+        assertEquals(data.getTransformerCount(), parallelData.getTransformerCount());
+        assertEquals(data.getTransformCount(), parallelData.getTransformCount());
+        for (String source : mimetypes)
+        {
+            for (String target : mimetypes)
+            {
+                assertEquals(registry.findTransformerName(source, 1024, target, emptyMap(), null),
+                    parallelRegistry.findTransformerName(source, 1024, target, emptyMap(), null));
+            }
+        }
+    }
+
+    @Test
+    public void testRegisterOneAtATime() throws Exception
+    {
+        final String[] mimetypes = {GIF, JPEG, PDF, DOC, XLS, PPT, MSG, TXT};
+        final Random random = new Random(4321);
+        final List<Transformer> transformers = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+        {
+            final Set<SupportedSourceAndTarget> supported = new HashSet<>();
+            for (int j = random.nextInt(5); j >= 0; j--)
+            {
+                supported.add(new SupportedSourceAndTarget(mimetypes[random.nextInt(mimetypes.length)],
+                    mimetypes[random.nextInt(mimetypes.length)], random.nextInt(3) * 1024 - 1,
+                    50 + random.nextInt(2) * 10));
+            }
+            transformers.add(new Transformer("transformer" + i, null, supported));
+        }
+
+        // Each transformer is visible to lookups as soon as it has been registered
+        final TransformCache data = registry.getData();
+        for (Transformer transformer : transformers)
+        {
+            registry.register(transformer, mapOfTransformOptions, getBaseUrl(transformer),
+                getClass().getName());
+            final SupportedSourceAndTarget pair = transformer.getSupportedSourceAndTargetList().iterator().next();
+            assertTrue(data.retrieveTransforms(pair.getSourceMediaType(), pair.getTargetMediaType())
+                .stream()
+                .anyMatch(t -> transformer.getTransformerName().equals(t.getName())));
+        }
+
+        // Each registration publishes a new table, which takes the pairs it did not change from the previous one
+        final TransformTable table = data.getTransformTable();
+        final Transformer extra = new Transformer("extra", null, set(
+            new SupportedSourceAndTarget(MSG, "image/bmp", -1)));
+        registry.register(extra, mapOfTransformOptions, getBaseUrl(extra), getClass().getName());
+        final TransformTable published = data.getTransformTable();
+        assertNotSame(table, published);
+        assertEquals(1, published.retrieveTransforms(MSG, "image/bmp").size());
+        final SupportedSourceAndTarget unchanged = transformers.get(0).getSupportedSourceAndTargetList().iterator().next();
+        final String unchangedSource = unchanged.getSourceMediaType();
+        final String unchangedTarget = unchanged.getTargetMediaType();
+        assertFalse(published.retrieveTransforms(unchangedSource, unchangedTarget).isEmpty());
+        assertSame(table.retrieveTransforms(unchangedSource, unchangedTarget),
+            published.retrieveTransforms(unchangedSource, unchangedTarget));
+
+        // Lookups do not wait for a registration taking place on another thread
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            data.beginRegistration();
+            synchronized (data)
+            {
+                assertSame(published, executor.submit(data::getTransformTable).get(10, TimeUnit.SECONDS));
+                assertEquals(1, executor.submit(() -> data.retrieveTransforms(MSG, "image/bmp").size())
+                    .get(10, TimeUnit.SECONDS).intValue());
+            }
+        }
+        finally
+        {
+            data.endRegistration();
+            executor.shutdown();
+        }
+
+        final AbstractTransformRegistry allRegistry = buildTransformServiceRegistryImpl();
+        allRegistry.registerAll(TransformConfig
+            .builder()
+            .withTransformOptions(mapOfTransformOptions)
+            .withTransformers(transformers)
+            .build(), null, getClass().getName());
+        for (String source : mimetypes)
+        {
+            for (String target : mimetypes)
+            {
+                assertEquals(allRegistry.getData().retrieveTransforms(source, target),
+                    data.retrieveTransforms(source, target));
+            }
+        }
+    }
+
+    @Test
+    public void testRegisterDelta()
+    {
+        final Transformer transformer1 = new Transformer("transformer1", null, set(
+            new SupportedSourceAndTarget(DOC, GIF, -1)));
+        final Transformer transformer2 = new Transformer("transformer2", null, set(
+            new SupportedSourceAndTarget(DOC, PDF, 1024),
+            new SupportedSourceAndTarget(MSG, GIF, -1)));
+        final Transformer transformer3 = new Transformer("transformer3", null, set(
+            new SupportedSourceAndTarget(PPT, GIF, -1)));
+        registry.registerAll(TransformConfig
+            .builder()
+            .withTransformOptions(mapOfTransformOptions)
+            .withTransformers(asList(transformer1, transformer2, transformer3))
+            .build(), null, getClass().getName());
+
+        final TransformCache data = registry.getData();
+        assertEquals(1024L, registry.findMaxSize(DOC, PDF, emptyMap(), "pdf"));
+        assertEquals(-1L, registry.findMaxSize(DOC, GIF, emptyMap(), "doclib"));
+        assertEquals(-1L, registry.findMaxSize(MSG, GIF, emptyMap(), "doclib"));
+        assertEquals(-1L, registry.findMaxSize(PPT, GIF, emptyMap(), "doclib"));
+        final TransformListBySize doclibList = data.retrieveCachedTransformList("doclib", DOC);
+
+        // Change transformer2, remove transformer3 and add transformer4
+        final Transformer changedTransformer2 = new Transformer("transformer2", null, set(
+            new SupportedSourceAndTarget(DOC, PDF, 2048)));
+        final Transformer transformer4 = new Transformer("transformer4", null, set(
+            new SupportedSourceAndTarget(XLS, PDF, -1)));
+        registry.registerDelta(TransformConfig
+            .builder()
+            .withTransformOptions(mapOfTransformOptions)
+            .withTransformers(asList(changedTransformer2, transformer4))
+            .build(), singleton("transformer3"), null, getClass().getName());
+
+        // Only the lists for changed source and target pairs are discarded
+        assertSame(doclibList, data.retrieveCachedTransformList("doclib", DOC));
+        assertNull(data.retrieveCachedTransformList("pdf", DOC));
+        assertNull(data.retrieveCachedTransformList("doclib", MSG));
+        assertNull(data.retrieveCachedTransformList("doclib", PPT));
+
+        assertEquals(-1L, registry.findMaxSize(DOC, GIF, emptyMap(), "doclib"));
+        assertEquals(2048L, registry.findMaxSize(DOC, PDF, emptyMap(), "pdf"));
+        assertEquals(0L, registry.findMaxSize(MSG, GIF, emptyMap(), "doclib"));
+        assertEquals(0L, registry.findMaxSize(PPT, GIF, emptyMap(), "doclib"));
+        assertEquals(-1L, registry.findMaxSize(XLS, PDF, emptyMap(), null));
+        assertEquals(3, data.getTransformerCount());
+        assertEquals(3, data.getTransformCount());
+        assertEquals(set(DOC, XLS), data.getTransforms().keySet());
+    }
+
+    @Test
+    public void testFindRoute()
+    {
+        mapOfTransformOptions.put("options1", set(
+            new TransformOptionValue(true, "page")));
+        registry.registerAll(TransformConfig
+            .builder()
+            .withTransformOptions(mapOfTransformOptions)
+            .withTransformers(asList(
+                new Transformer("transformer1", null, set(
+                    new SupportedSourceAndTarget(DOC, PDF, -1))),
+                new Transformer("transformer2", null, set(
+                    new SupportedSourceAndTarget(PDF, GIF, 1024))),
+                new Transformer("transformer3", null, set(
+                    new SupportedSourceAndTarget(DOC, TXT, -1, 10))),
+                new Transformer("transformer4", null, set(
+                    new SupportedSourceAndTarget(TXT, GIF, -1, 10))),
+                new Transformer("transformer5", singleton("options1"), set(
+                    new SupportedSourceAndTarget(PPT, DOC, -1))),
+                new Transformer("transformer6", null, set(
+                    new SupportedSourceAndTarget(XLS, DOC, -1))),
+                new Transformer("transformer7", null, set(
+                    new SupportedSourceAndTarget(GIF, GIF, -1)))))
+            .build(), null, getClass().getName());
+
+        assertEquals(singletonList(new TransformStep("transformer1", PDF)),
+            registry.findRoute(DOC, 1024, PDF).getSteps());
+
+        // Both routes have two steps, but the one through TXT has higher priority transformers
+        assertEquals(asList("transformer3|" + TXT, "transformer4|" + GIF),
+            registry.findRoute(DOC, 1024, GIF).getTransformsToBeDone());
+        assertEquals(asList("transformer6|" + DOC, "transformer3|" + TXT, "transformer4|" + GIF),
+            registry.findRoute(XLS, 1024, GIF).getTransformsToBeDone());
+
+        // Each step must support the source size
+        assertEquals(singletonList("transformer2|" + GIF),
+            registry.findRoute(PDF, 1024, GIF).getTransformsToBeDone());
+        assertNull(registry.findRoute(PDF, 1025, GIF));
+
+        // Transformers that require options are not used
+        assertNull(registry.findRoute(PPT, 1024, DOC));
+        assertNull(registry.findRoute(PPT, 1024, GIF));
+
+        assertNull(registry.findRoute(GIF, 1024, DOC));
+        assertNull(registry.findRoute(MSG, 1024, GIF));
+
+        // A mimetype is only routed to itself by a single step
+        assertNull(registry.findRoute(DOC, 1024, DOC));
+        assertEquals(singletonList("transformer7|" + GIF),
+            registry.findRoute(GIF, 1024, GIF).getTransformsToBeDone());
+    }
+
+    @Test
+    public void testFindRouteAvoidsStepsTooSmallForTheSource()
+    {
+        registry.registerAll(TransformConfig
+            .builder()
+            .withTransformOptions(mapOfTransformOptions)
+            .withTransformers(asList(
+                new Transformer("small", null, set(
+                    new SupportedSourceAndTarget(DOC, TXT, 1024, 10))),
+                new Transformer("text", null, set(
+                    new SupportedSourceAndTarget(TXT, GIF, -1, 10))),
+                new Transformer("office", null, set(
+                    new SupportedSourceAndTarget(DOC, PDF, -1))),
+                new Transformer("pdf", null, set(
+                    new SupportedSourceAndTarget(PDF, JPEG, -1))),
+                new Transformer("image", null, set(
+                    new SupportedSourceAndTarget(JPEG, GIF, -1)))))
+            .build(), null, getClass().getName());
+
+        final TransformRoute shortRoute = registry.findRoute(DOC, 1024, GIF);
+        assertEquals(asList("small|" + TXT, "text|" + GIF), shortRoute.getTransformsToBeDone());
+        assertTrue(shortRoute.hasHandle());
+
+        // The shortest route has a step that is too small, so a longer one is used
+        final TransformRoute longRoute = registry.findRoute(DOC, 1025, GIF);
+        assertEquals(asList("office|" + PDF, "pdf|" + JPEG, "image|" + GIF), longRoute.getTransformsToBeDone());
+        assertFalse(longRoute.hasHandle());
+        assertEquals(shortRoute, registry.findRoute(DOC, -1, GIF));
+    }
+
+    private TransformConfig buildRouteConfig(final Transformer... extraTransformers)
+    {
+        final List<Transformer> transformers = new ArrayList<>(asList(
+            new Transformer("transformer1", null, set(
+                new SupportedSourceAndTarget(DOC, PDF, -1))),
+            new Transformer("transformer2", null, set(
+                new SupportedSourceAndTarget(PDF, GIF, 1024))),
+            new Transformer("transformer3", null, set(
+                new SupportedSourceAndTarget(DOC, TXT, -1, 10))),
+            new Transformer("transformer4", null, set(
+                new SupportedSourceAndTarget(TXT, GIF, -1, 10))),
+            new Transformer("transformer6", null, set(
+                new SupportedSourceAndTarget(XLS, DOC, -1)))));
+        transformers.addAll(asList(extraTransformers));
+        return TransformConfig
+            .builder()
+            .withTransformOptions(mapOfTransformOptions)
+            .withTransformers(transformers)
+            .build();
+    }
+
+    @Test
+    public void testRouteHandles() throws Exception
+    {
+        registry.registerAll(buildRouteConfig(), null, getClass().getName());
+        final TransformRoute route = registry.findRoute(XLS, 1024, GIF);
+        assertTrue(route.hasHandle());
+
+        // The same transforms registered by another node give the same generation, so the handle may be resolved
+        final AbstractTransformRegistry sameRegistry = buildTransformServiceRegistryImpl();
+        sameRegistry.registerAll(buildRouteConfig(), null, getClass().getName());
+        assertEquals(route, sameRegistry.findRoute(route.getGeneration(), route.getRouteId()));
+        assertEquals(route.getRouteId(), sameRegistry.findRoute(XLS, 1024, GIF).getRouteId());
+
+        final MultiStep multiStep = new MultiStep();
+        route.setOn(multiStep, false);
+        assertTrue(multiStep.getTransformsToBeDone().isEmpty());
+        assertEquals(route.getSteps(), sameRegistry.findRemainingSteps(multiStep));
+        multiStep.setStepIndex(1);
+        assertEquals(route.getSteps().subList(1, 3), sameRegistry.findRemainingSteps(multiStep));
+        multiStep.setStepIndex(3);
+        assertTrue(sameRegistry.findRemainingSteps(multiStep).isEmpty());
+
+        // A registry with different transforms does not resolve the handle, so needs the explicit list
+        final AbstractTransformRegistry otherRegistry = buildTransformServiceRegistryImpl();
+        otherRegistry.registerAll(buildRouteConfig(new Transformer("transformer8", null, set(
+            new SupportedSourceAndTarget(GIF, PDF, -1)))), null, getClass().getName());
+        assertNull(otherRegistry.findRoute(route.getGeneration(), route.getRouteId()));
+        multiStep.setStepIndex(1);
+        assertNull(otherRegistry.findRemainingSteps(multiStep));
+        route.setOn(multiStep, true);
+        multiStep.setStepIndex(1);
+        assertEquals(route.getSteps().subList(1, 3), otherRegistry.findRemainingSteps(multiStep));
+
+        // Lists set by routers that predate handles are still used
+        final MultiStep listOnly = new MultiStep();
+        listOnly.setTransformsToBeDone(new ArrayList<>(route.getTransformsToBeDone()));
+        assertEquals(route.getSteps(), otherRegistry.findRemainingSteps(listOnly));
+
+        assertNull(registry.findRoute(0, route.getRouteId()));
+    }
+
+    @Test
+    public void testImpossibleRequestsAreRejectedBeforeOptions() throws Exception
+    {
+        mapOfTransformOptions.put("options1", set(
+            new TransformOptionValue(false, "page"),
+            new TransformOptionValue(true, "width")));
+        final String[] mimetypes = {GIF, JPEG, PDF, DOC, XLS, PPT, MSG, TXT};
+        final long[] sizes = {-1, 0, 1023, 1024, 1025, 2048, 2049};
+        final List<Map<String, String>> options = asList(emptyMap(), buildActualOptions(set("page")),
+            buildActualOptions(set("width")), buildActualOptions(set("page", "width")));
+        final Random random = new Random(4321);
+        for (int attempt = 0; attempt < 20; attempt++)
+        {
+            registry = buildTransformServiceRegistryImpl();
+            for (int i = random.nextInt(10); i >= 0; i--)
+            {
+                registry.register(new Transformer("transformer" + i,
+                    random.nextBoolean() ? singleton("options1") : null,
+                    set(new SupportedSourceAndTarget(mimetypes[random.nextInt(mimetypes.length)],
+                        mimetypes[random.nextInt(mimetypes.length)], random.nextInt(3) * 1024 - 1,
+                        50 + random.nextInt(2) * 10))),
+                    mapOfTransformOptions, null, getClass().getName());
+            }
+
+            for (String source : mimetypes)
+            {
+                for (String target : mimetypes)
+                {
+                    for (Map<String, String> actualOptions : options)
+                    {
+                        final TransformListBySize transformList = retrieveTransformListBySize(
+                            registry.getData(), source, target, actualOptions, null);
+                        final long maxSize = transformList.getMaxSourceSizeBytes();
+                        assertEquals(maxSize, registry.findMaxSize(source, target, actualOptions, null));
+                        for (long size : sizes)
+                        {
+                            assertEquals(maxSize != 0 && (maxSize == -1 || maxSize >= size),
+                                registry.isSupported(source, size, target, actualOptions, null));
+                            assertEquals(transformList.findTransformerName(size),
+                                registry.findTransformerName(source, size, target, actualOptions, null));
+                        }
+                    }
+                }
+            }
+        }
+
+        // Also with a rendition name, without using the list cached for it, which was built for another target
+        registry = buildTransformServiceRegistryImpl();
+        registry.register(new Transformer("transformer", null, set(new SupportedSourceAndTarget(DOC, GIF, 1024))),
+            mapOfTransformOptions, null, getClass().getName());
+        assertTrue(registry.isSupported(DOC, 1024, GIF, emptyMap(), "doclib"));
+        final CacheStats stats = registry.getData().getCacheStats();
+        assertFalse(registry.isSupported(DOC, 2048, GIF, emptyMap(), "doclib"));
+        assertNull(registry.findTransformerName(DOC, 100, PDF, emptyMap(), "doclib"));
+        assertEquals(0L, registry.findMaxSize(DOC, PDF, emptyMap(), "doclib"));
+        assertEquals(stats.getHitCount(), registry.getData().getCacheStats().getHitCount());
+        assertEquals(stats.getMissCount(), registry.getData().getCacheStats().getMissCount());
+    }
+
+    @Test
+    public void testMetrics()
+    {
+        final List<String> events = new ArrayList<>();
+        registry.setMetrics(new TransformRegistryMetrics()
+        {
+            @Override
+            public void lookupCompleted(long durationNanos)
+            {
+                events.add("lookup");
+            }
+
+            @Override
+            public void cacheHit()
+            {
+                events.add("hit");
+            }
+
+            @Override
+            public void cacheMiss()
+            {
+                events.add("miss");
+            }
+
+            @Override
+            public void unsupported(String sourceMimetype, String targetMimetype)
+            {
+                events.add("unsupported " + sourceMimetype + " " + targetMimetype);
+            }
+
+            @Override
+            public void registrationCompleted(long durationNanos, long transformerCount,
+                long transformCount)
+            {
+                events.add("registration " + transformerCount + " " + transformCount);
+            }
+        });
+
+        final Transformer transformer = new Transformer("transformer1", null, set(
+            new SupportedSourceAndTarget(DOC, GIF, 102400),
+            new SupportedSourceAndTarget(MSG, GIF, -1)));
+        registry.registerAll(TransformConfig
+            .builder()
+            .withTransformOptions(mapOfTransformOptions)
+            .withTransformers(singletonList(transformer))
+            .build(), null, getClass().getName());
+        assertEquals(singletonList("registration 1 2"), events);
+
+        events.clear();
+        assertEquals("transformer1", registry.findTransformerName(DOC, 1024, GIF, emptyMap(), "doclib"));
+        assertEquals("transformer1", registry.findTransformerName(DOC, 1024, GIF, emptyMap(), "doclib"));
+        assertEquals(0L, registry.findMaxSize(PDF, GIF, emptyMap(), null));
+        assertEquals(asList("miss", "lookup", "hit", "lookup", "lookup", "unsupported " + PDF + " " + GIF),
+            events);
+
+        // isSupported records the answer it gives, which depends on the size
+        events.clear();
+        assertTrue(registry.isSupported(DOC, 1024, GIF, emptyMap(), "doclib"));
+        assertFalse(registry.isSupported(DOC, 204800, GIF, emptyMap(), null));
+        assertEquals(asList("hit", "lookup", "lookup", "unsupported " + DOC + " " + GIF), events);
+
+        // A batch looks up the transform list once per group of queries, but records each query
+        events.clear();
+        registry.findTransformers(asList(
+            new TransformQuery(DOC, 1024, GIF, emptyMap(), "doclib"),
+            new TransformQuery(DOC, 204800, GIF, emptyMap(), "doclib"),
+            new TransformQuery(PDF, 1024, GIF, emptyMap(), null)));
+        assertEquals(asList("hit", "lookup", "lookup", "unsupported " + DOC + " " + GIF,
+            "lookup", "unsupported " + PDF + " " + GIF), events);
+
+        events.clear();
+        registry.setMetrics(null);
+        assertSame(TransformRegistryMetrics.NO_OP, registry.getMetrics());
+        registry.findTransformerName(DOC, 1024, GIF, emptyMap(), "doclib");
+        assertTrue(events.isEmpty());
+    }
+
     @Test
     public void testMultipleTransformers() throws Exception
     {